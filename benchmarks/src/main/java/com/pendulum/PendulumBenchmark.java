@@ -0,0 +1,60 @@
+package com.pendulum;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One full time step, Pendulum.update(), for every solver and chain length.
+ *
+ * The chain starts from the same tilted state as the visualizer and keeps
+ * evolving across invocations, so each step sees a fresh, chaotic state rather
+ * than the same angles over and over. The GAUSSIAN solver is O(N^3) per
+ * evaluation; restrict it with -p solver=CHOLESKY,ARTICULATED for quick runs
+ * at large N.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PendulumBenchmark
+{
+    private static final double DELTA_TIME = 0.0025;   // Main.DELTA_TIME
+    private static final double INITIAL_ANGLE = Math.PI / 2;
+
+    @Param({ "2", "3", "10", "20", "100", "500", "1000" })
+    public int segments;
+
+    @Param({ "GAUSSIAN", "CHOLESKY", "ARTICULATED" })
+    public Pendulum.Solver solver;
+
+    @Param({ "yoshida4" })
+    public String integrator;
+
+    private Pendulum pendulum;
+
+    @Setup
+    public void setup()
+    {
+        pendulum = new Pendulum(segments, DELTA_TIME, INITIAL_ANGLE, solver, Integrator.forName(integrator));
+    }
+
+    @Benchmark
+    public Pendulum update()
+    {
+        pendulum.update();
+        return pendulum;
+    }
+}
@@ -0,0 +1,75 @@
+package com.pendulum;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.lwjgl.BufferUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CPU work done per frame before anything reaches OpenGL.
+ *
+ * getEndPointCoordinates is measured in both its allocating and its flat form.
+ * The pack benchmarks run LineStrip.pack, the loop LineStrip.upload uses to
+ * fill mapped buffer memory, against an ordinary direct buffer, so no GL
+ * context or natives are needed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderPrepBenchmark
+{
+    @Param({ "2", "3", "10", "20", "100", "500", "1000" })
+    public int segments;
+
+    private Pendulum pendulum;
+    private double[] flat;
+    private double[][] points;
+    private FloatBuffer vertices;
+
+    @Setup
+    public void setup()
+    {
+        pendulum = new Pendulum(segments, 0.0025, Math.PI / 2, Pendulum.Solver.ARTICULATED, Integrator.YOSHIDA4);
+        for (int i = 0; i < 100; i++)
+            pendulum.update();
+
+        flat = new double[(segments + 1) * 2];
+        points = pendulum.getEndPointCoordinates();
+        vertices = BufferUtils.createFloatBuffer(points.length * 2);
+    }
+
+    @Benchmark
+    public double[][] endPointCoordinates()
+    {
+        return pendulum.getEndPointCoordinates();
+    }
+
+    @Benchmark
+    public double[] endPointCoordinatesFlat()
+    {
+        pendulum.getEndPointCoordinates(flat);
+        return flat;
+    }
+
+    @Benchmark
+    public FloatBuffer pack()
+    {
+        vertices.clear();
+        LineStrip.pack(points, points.length, vertices);
+        return vertices;
+    }
+}
@@ -0,0 +1,125 @@
+package com.pendulum;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The pieces of one acceleration evaluation, measured in isolation.
+ *
+ * The workspace trigonometry cache is filled once from random angles, as
+ * ChainDynamics does at the start of every evaluation. Both solvers work in
+ * place, so each solve first restores its input from a pristine copy; the
+ * copy is O(N^2) against the O(N^3) factorization and is measured alone by
+ * copyMatrix.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolverBenchmark
+{
+    @Param({ "2", "3", "10", "20", "100", "500", "1000" })
+    public int segments;
+
+    private ChainDynamics gaussian;
+    private ChainDynamics cholesky;
+    private SolverWorkspace dense;
+    private SolverWorkspace packed;
+    private double[] velocities;
+
+    // Inputs of the in-place solvers
+    private double[] matrix;
+    private double[] lower;
+    private double[] rhs;
+
+    @Setup
+    public void setup()
+    {
+        gaussian = new ChainDynamics(segments, Pendulum.Solver.GAUSSIAN);
+        cholesky = new ChainDynamics(segments, Pendulum.Solver.CHOLESKY);
+        dense = gaussian.createWorkspace();
+        packed = cholesky.createWorkspace();
+
+        Random random = new Random(42);
+        velocities = new double[segments];
+        for (int i = 0; i < segments; i++)
+        {
+            double angle = (random.nextDouble() * 2 - 1) * Math.PI;
+            dense.sin[i] = packed.sin[i] = Math.sin(angle);
+            dense.cos[i] = packed.cos[i] = Math.cos(angle);
+            velocities[i] = random.nextGaussian();
+        }
+
+        gaussian.buildMatrixA(dense);
+        gaussian.buildVectorB(velocities, dense);
+        cholesky.buildLowerMatrixA(packed);
+        matrix = dense.matrix.clone();
+        lower = packed.lower.clone();
+        rhs = dense.rhs.clone();
+    }
+
+    // --- Assembly --- //
+
+    @Benchmark
+    public double[] buildMatrixA()
+    {
+        gaussian.buildMatrixA(dense);
+        return dense.matrix;
+    }
+
+    @Benchmark
+    public double[] buildLowerMatrixA()
+    {
+        cholesky.buildLowerMatrixA(packed);
+        return packed.lower;
+    }
+
+    @Benchmark
+    public double[] buildVectorB()
+    {
+        gaussian.buildVectorB(velocities, dense);
+        return dense.rhs;
+    }
+
+    // --- Solves --- //
+
+    @Benchmark
+    public double[] copyMatrix()
+    {
+        System.arraycopy(matrix, 0, dense.matrix, 0, matrix.length);
+        System.arraycopy(rhs, 0, dense.rhs, 0, rhs.length);
+        return dense.matrix;
+    }
+
+    @Benchmark
+    public double[] solveLinearSystem()
+    {
+        System.arraycopy(matrix, 0, dense.matrix, 0, matrix.length);
+        System.arraycopy(rhs, 0, dense.rhs, 0, rhs.length);
+        ChainDynamics.solveLinearSystem(dense.matrix, dense.rhs, dense.acceleration, segments);
+        return dense.acceleration;
+    }
+
+    @Benchmark
+    public double[] factorizeAndSolve()
+    {
+        System.arraycopy(lower, 0, packed.lower, 0, lower.length);
+        SymmetricSolver.factorize(packed.lower, segments, packed.factorScratch);
+        SymmetricSolver.solve(packed.lower, segments, rhs, packed.acceleration);
+        return packed.acceleration;
+    }
+}
@@ -0,0 +1,600 @@
+package com.pendulum;
+
+import java.util.Arrays;
+
+/**
+ * Equations of motion of an N-segment chain of point masses on massless rods.
+ *
+ * Segment i is a rod of length l_i with a bob of mass m_i at its end. Everything
+ * the equations need from the masses and lengths is tabulated once here: the
+ * suffix masses M_i = sum_{k>=i} m_k (the mass hanging from joint i), the
+ * products M_i l_i that weigh gravity, and the packed lower triangle of the
+ * mass-matrix weights W_ij = M_max(i,j) l_i l_j. An evaluation then costs the
+ * same for any chain, and for unit masses and lengths every table entry is the
+ * integer N - max(i, j) of the original equations, so results are unchanged bit
+ * for bit.
+ *
+ * The dynamics hold no chain state: every method works on the angle and velocity
+ * arrays it is given, with a SolverWorkspace for scratch memory. This lets a
+ * single Pendulum and every member of a PendulumEnsemble share the same physics.
+ * Instances are immutable and safe to share between threads; workspaces are not.
+ */
+final class ChainDynamics
+{
+    private final int NUM_PENDULUMS;              // Number of segments
+    private final double GRAVITY = -10.0;         // Gravitational acceleration (m/s^2)
+    private final Pendulum.Solver SOLVER;         // Strategy used to compute accelerations
+
+    // --- Chain parameters, fixed at construction --- //
+    private final double[] MASSES;                // m_i, bob at the end of segment i
+    private final double[] LENGTHS;               // l_i
+    private final double[] MASS_LENGTHS;          // M_i l_i
+    private final double[] WEIGHTS;               // W_ij = M_max(i,j) l_i l_j, packed lower triangle
+    private final boolean UNIFORM;                // Unit masses and lengths
+
+    // A chain of unit masses on unit rods
+    ChainDynamics(int numPendulums, Pendulum.Solver solver)
+    {
+        this(filled(numPendulums, 1), filled(numPendulums, 1), solver);
+    }
+
+    /**
+     * @param masses  Mass of the bob at the end of each segment, pivot first.
+     * @param lengths Length of each segment, pivot first.
+     */
+    ChainDynamics(double[] masses, double[] lengths, Pendulum.Solver solver)
+    {
+        if (masses.length == 0 || masses.length != lengths.length)
+            throw new IllegalArgumentException("Need one mass and one length per segment, got "
+                                               + masses.length + " and " + lengths.length);
+        for (int i = 0; i < masses.length; i++)
+        {
+            if (!(masses[i] > 0) || !(lengths[i] > 0) || Double.isInfinite(masses[i]) || Double.isInfinite(lengths[i]))
+                throw new IllegalArgumentException("Masses and lengths must be positive and finite, segment " + i
+                                                   + " has " + masses[i] + " and " + lengths[i]);
+        }
+
+        NUM_PENDULUMS = masses.length;
+        SOLVER = solver;
+        MASSES = masses.clone();
+        LENGTHS = lengths.clone();
+
+        // Suffix masses M_i, summed from the tip
+        final int N = NUM_PENDULUMS;
+        double[] suffixMasses = new double[N];
+        double suffix = 0;
+        for (int i = N - 1; i >= 0; i--)
+        {
+            suffix += MASSES[i];
+            suffixMasses[i] = suffix;
+        }
+
+        MASS_LENGTHS = new double[N];
+        WEIGHTS = new double[SymmetricSolver.packedSize(N)];
+        boolean uniform = true;
+        int index = 0;
+        for (int i = 0; i < N; i++)
+        {
+            MASS_LENGTHS[i] = suffixMasses[i] * LENGTHS[i];
+            for (int j = 0; j <= i; j++)
+                WEIGHTS[index++] = MASS_LENGTHS[i] * LENGTHS[j];
+            uniform &= MASSES[i] == 1 && LENGTHS[i] == 1;
+        }
+        UNIFORM = uniform;
+    }
+
+    private static double[] filled(int length, double value)
+    {
+        double[] values = new double[length];
+        Arrays.fill(values, value);
+        return values;
+    }
+
+    int getNumPendulums()
+    {
+        return NUM_PENDULUMS;
+    }
+
+    Pendulum.Solver getSolver()
+    {
+        return SOLVER;
+    }
+
+    double getGravity()
+    {
+        return GRAVITY;
+    }
+
+    double getMass(int segment)
+    {
+        return MASSES[segment];
+    }
+
+    double getLength(int segment)
+    {
+        return LENGTHS[segment];
+    }
+
+    // Copies of the per-segment masses and lengths
+    double[] getMasses()
+    {
+        return MASSES.clone();
+    }
+
+    double[] getLengths()
+    {
+        return LENGTHS.clone();
+    }
+
+    // Whether every mass and length is 1
+    boolean isUniform()
+    {
+        return UNIFORM;
+    }
+
+    // M_i l_i, the weight of gravity on segment i
+    double[] getMassLengths()
+    {
+        return MASS_LENGTHS;
+    }
+
+    // W_ij = M_max(i,j) l_i l_j in packed lower-triangular order; not to be modified
+    double[] getWeights()
+    {
+        return WEIGHTS;
+    }
+
+    // Largest potential energy of the chain, reached with every segment pointing up
+    double getPotentialScale()
+    {
+        double sum = 0;
+        for (double value : MASS_LENGTHS)
+            sum += value;
+        return Math.abs(GRAVITY) * sum;
+    }
+
+    /**
+     * Writes the joint positions into a flat buffer without allocating:
+     * x and y interleaved, pivot first, (N + 1) * 2 values in total.
+     */
+    void endPointCoordinates(double[] angles, double[] coords)
+    {
+        double x = 0, y = 0;
+
+        coords[0] = x;
+        coords[1] = y;
+        for (int i = 0; i < NUM_PENDULUMS; i++)
+        {
+            x += LENGTHS[i] * Math.sin(angles[i]);
+            y += LENGTHS[i] * Math.cos(angles[i]);
+            coords[2 * i + 2] = x;
+            coords[2 * i + 3] = y;
+        }
+    }
+
+    // Creates scratch memory sized for this chain and solver
+    SolverWorkspace createWorkspace()
+    {
+        return new SolverWorkspace(NUM_PENDULUMS, SOLVER);
+    }
+
+    // --- PHYSICS SIMULATION --- //
+
+    /**
+     * Advances the state by one leapfrog (velocity Verlet) step. Both evaluations
+     * use the velocities from the start of the step, and the forces depend on
+     * them, so the step is only first-order accurate.
+     * Angles and velocities are updated in place; nothing is allocated.
+     */
+    void leapfrogStep(double[] angles, double[] angularVelocities, double deltaTime, SolverWorkspace workspace)
+    {
+        double[] acc = computeAccelerations(angles, angularVelocities, workspace);
+        double[] halfStepVelocity = workspace.halfStepVelocity;
+
+        // Half-step velocity update
+        for (int i = 0; i < NUM_PENDULUMS; i++)
+        {
+            halfStepVelocity[i] = angularVelocities[i] + acc[i] * deltaTime / 2.0;
+        }
+
+        // Full-step angle update
+        for (int i = 0; i < NUM_PENDULUMS; i++)
+        {
+            angles[i] = wrapAngle(angles[i] + halfStepVelocity[i] * deltaTime);
+        }
+
+        // Recalculate acceleration
+        double[] newAcc = computeAccelerations(angles, angularVelocities, workspace);
+
+        // Complete velocity step
+        for (int i = 0; i < NUM_PENDULUMS; i++)
+        {
+            angularVelocities[i] = halfStepVelocity[i] + newAcc[i] * deltaTime / 2.0;
+        }
+    }
+
+    /**
+     * Computes the angular accelerations for the given state.
+     * Returns the workspace acceleration buffer, valid until the next evaluation.
+     */
+    double[] computeAccelerations(double[] angles, double[] angularVelocities, SolverWorkspace workspace)
+    {
+        workspace.evaluations++;
+        cacheTrigonometry(angles, workspace);
+
+        switch (SOLVER)
+        {
+            case ARTICULATED:
+                return computeArticulatedAccelerations(angularVelocities, workspace);
+
+            case CHOLESKY:
+                buildLowerMatrixA(workspace);
+                buildVectorB(angularVelocities, workspace);
+                SymmetricSolver.factorize(workspace.lower, NUM_PENDULUMS, workspace.factorScratch);
+                SymmetricSolver.solve(workspace.lower, NUM_PENDULUMS, workspace.rhs, workspace.acceleration);
+                return workspace.acceleration;
+
+            default:
+                buildMatrixA(workspace);
+                buildVectorB(angularVelocities, workspace);
+                solveLinearSystem(workspace.matrix, workspace.rhs, workspace.acceleration, NUM_PENDULUMS);
+                return workspace.acceleration;
+        }
+    }
+
+    /**
+     * Recomputes the accelerations for new velocities at the same angles as the
+     * previous computeAccelerations call on this workspace. The mass matrix depends
+     * on the angles only, so the CHOLESKY solver keeps its factorization and just
+     * rebuilds and solves the right-hand side; the other solvers evaluate in full.
+     */
+    double[] recomputeAccelerations(double[] angles, double[] angularVelocities, SolverWorkspace workspace)
+    {
+        if (SOLVER != Pendulum.Solver.CHOLESKY)
+            return computeAccelerations(angles, angularVelocities, workspace);
+
+        workspace.evaluations++;
+        buildVectorB(angularVelocities, workspace);
+        SymmetricSolver.solve(workspace.lower, NUM_PENDULUMS, workspace.rhs, workspace.acceleration);
+        return workspace.acceleration;
+    }
+
+    /**
+     * Linearised accelerations for a batch of tangent vectors: da = A^-1 (db - dA a),
+     * the derivative of a = A(q)^-1 b(q, v) in the direction (dq, dv).
+     *
+     * Must directly follow computeAccelerations(angles, angularVelocities, workspace)
+     * with the CHOLESKY solver: the cached sin/cos, the accelerations a and the
+     * factorized mass matrix of that evaluation are reused, so each tangent costs
+     * one O(N^2) right-hand side and one triangular solve.
+     *
+     * With w = W_ij and d = dq_i - dq_j, the right-hand side is
+     *   r_i = -gravity M_i l_i cos(q_i) dq_i
+     *         + sum_j w (sin(q_i - q_j) a_j - cos(q_i - q_j) v_j^2) d
+     *         - 2 sum_j w sin(q_i - q_j) v_j dv_j
+     *
+     * @param tangents tangents[k] = {dq_0 .. dq_N-1, dv_0 .. dv_N-1}.
+     * @param out      out[k] receives da for tangents[k].
+     */
+    void tangentAccelerations(double[] angularVelocities, double[][] tangents, int count, double[][] out,
+                              SolverWorkspace workspace)
+    {
+        final int N = NUM_PENDULUMS;
+        double[] sin = workspace.sin;
+        double[] cos = workspace.cos;
+        double[] acc = workspace.acceleration;
+        double[] W = WEIGHTS;
+
+        for (int k = 0; k < count; k++)
+        {
+            double[] tangent = tangents[k];
+            double[] r = out[k];
+            for (int i = 0; i < N; i++)
+                r[i] = -GRAVITY * MASS_LENGTHS[i] * cos[i] * tangent[i];
+        }
+
+        // Each pair once: the sine is antisymmetric and the cosine symmetric in i and j
+        int index = 0;
+        for (int i = 0; i < N; i++, index++)
+        {
+            double vi = angularVelocities[i];
+            for (int j = 0; j < i; j++, index++)
+            {
+                double weight = W[index];
+                double s = weight * (sin[i] * cos[j] - cos[i] * sin[j]);
+                double c = weight * (cos[i] * cos[j] + sin[i] * sin[j]);
+                double vj = angularVelocities[j];
+                double towardsI = s * acc[j] - c * vj * vj;   // Coefficient of d in r_i
+                double towardsJ = s * acc[i] + c * vi * vi;   // Coefficient of d in r_j
+
+                for (int k = 0; k < count; k++)
+                {
+                    double[] tangent = tangents[k];
+                    double[] r = out[k];
+                    double d = tangent[i] - tangent[j];
+                    r[i] += towardsI * d - 2 * s * vj * tangent[N + j];
+                    r[j] += towardsJ * d + 2 * s * vi * tangent[N + i];
+                }
+            }
+        }
+
+        for (int k = 0; k < count; k++)
+            SymmetricSolver.solve(workspace.lower, N, out[k], out[k]);
+    }
+
+    /**
+     * Total energy T + V of a state, in O(N) from the same sin/cos cache the
+     * acceleration evaluations fill (and refill on their next call).
+     *
+     * Joint k moves with velocity sum_{i<=k} l_i w_i (cos a_i, -sin a_i), so the
+     * kinetic energy 1/2 sum_k m_k |v_k|^2 is a running sum over the chain; it
+     * equals 1/2 sum_ij A_ij w_i w_j with the mass matrix of buildMatrixA. Joint k
+     * sits at height sum_{i<=k} l_i cos a_i, giving V = -gravity * sum_i M_i l_i cos a_i.
+     */
+    double energy(double[] angles, double[] angularVelocities, SolverWorkspace workspace)
+    {
+        cacheTrigonometry(angles, workspace);
+        double[] sin = workspace.sin;
+        double[] cos = workspace.cos;
+
+        double vx = 0, vy = 0;
+        double kinetic = 0, potential = 0;
+        for (int i = 0; i < NUM_PENDULUMS; i++)
+        {
+            double speed = LENGTHS[i] * angularVelocities[i];
+            vx += speed * cos[i];
+            vy -= speed * sin[i];
+            kinetic += MASSES[i] * (vx * vx + vy * vy);
+            potential += MASS_LENGTHS[i] * cos[i];
+        }
+        return 0.5 * kinetic - GRAVITY * potential;
+    }
+
+    // Evaluates sin and cos of every angle once, O(N) transcendental calls per evaluation
+    private void cacheTrigonometry(double[] angles, SolverWorkspace workspace)
+    {
+        double[] sin = workspace.sin;
+        double[] cos = workspace.cos;
+        for (int i = 0; i < NUM_PENDULUMS; i++)
+        {
+            sin[i] = Math.sin(angles[i]);
+            cos[i] = Math.cos(angles[i]);
+        }
+    }
+
+    // --- LINEAR SYSTEM SOLVER --- //
+
+    /**
+     * Fills the mass matrix A[i][j] = W_ij * cos(angle_i - angle_j), with the
+     * weights W_ij = M_max(i,j) l_i l_j tabulated at construction.
+     * The pairwise cosines come from the cached sin/cos through
+     * cos(a - b) = cos a cos b + sin a sin b; A is symmetric, so each pair is
+     * computed once and mirrored.
+     */
+    void buildMatrixA(SolverWorkspace workspace)
+    {
+        final int N = NUM_PENDULUMS;
+        double[] A = workspace.matrix;
+        double[] W = WEIGHTS;
+        double[] sin = workspace.sin;
+        double[] cos = workspace.cos;
+        int index = 0;
+        for (int i = 0; i < N; i++)
+        {
+            for (int j = 0; j < i; j++)
+            {
+                double value = W[index++] * (cos[i] * cos[j] + sin[i] * sin[j]);
+                A[i * N + j] = value;
+                A[j * N + i] = value;
+            }
+            A[i * N + i] = W[index++];
+        }
+    }
+
+    /**
+     * Fills only the lower triangle of the mass matrix, packed row by row,
+     * for the symmetric solver.
+     */
+    void buildLowerMatrixA(SolverWorkspace workspace)
+    {
+        final int N = NUM_PENDULUMS;
+        double[] L = workspace.lower;
+        double[] W = WEIGHTS;
+        double[] sin = workspace.sin;
+        double[] cos = workspace.cos;
+        int index = 0;
+        for (int i = 0; i < N; i++)
+        {
+            for (int j = 0; j < i; j++)
+            {
+                L[index] = W[index] * (cos[i] * cos[j] + sin[i] * sin[j]);
+                index++;
+            }
+            L[index] = W[index];
+            index++;
+        }
+    }
+
+    /**
+     * Fills b[i] = -sum_j W_ij sin(angle_i - angle_j) w_j^2 - gravity * M_i l_i sin(angle_i).
+     * sin(a - b) = sin a cos b - cos a sin b is antisymmetric, so each pair is
+     * computed once and contributes to both b[i] and b[j].
+     */
+    void buildVectorB(double[] angularVelocities, SolverWorkspace workspace)
+    {
+        final int N = NUM_PENDULUMS;
+        double[] b = workspace.rhs;
+        double[] W = WEIGHTS;
+        double[] sin = workspace.sin;
+        double[] cos = workspace.cos;
+
+        for (int i = 0; i < N; i++)
+        {
+            b[i] = -GRAVITY * MASS_LENGTHS[i] * sin[i];
+        }
+
+        int index = 0;
+        for (int i = 0; i < N; i++, index++)
+        {
+            double vi2 = angularVelocities[i] * angularVelocities[i];
+            for (int j = 0; j < i; j++, index++)
+            {
+                double vj2 = angularVelocities[j] * angularVelocities[j];
+                double term = W[index] * (sin[i] * cos[j] - cos[i] * sin[j]);
+                b[i] -= term * vj2;
+                b[j] += term * vi2;
+            }
+        }
+    }
+
+    /**
+     * Solves A x = b by Gaussian elimination with partial pivoting.
+     * A (flat, row-major N x N) and b are overwritten; x receives the solution.
+     */
+    static void solveLinearSystem(double[] A, double[] b, double[] x, int N)
+    {
+        // Gaussian elimination
+        for (int i = 0; i < N; i++)
+        {
+            int maxRow = i;
+            for (int k = i + 1; k < N; k++)
+            {
+                if (Math.abs(A[k * N + i]) > Math.abs(A[maxRow * N + i]))
+                    maxRow = k;
+            }
+
+            if (maxRow != i)
+                swapRows(A, b, i, maxRow, N);
+
+            double pivot = A[i * N + i];
+            if (Math.abs(pivot) < 1e-10)
+                continue;
+
+            for (int k = i + 1; k < N; k++)
+            {
+                double factor = A[k * N + i] / pivot;
+                for (int j = i; j < N; j++)
+                {
+                    A[k * N + j] -= factor * A[i * N + j];
+                }
+                b[k] -= factor * b[i];
+            }
+        }
+
+        for (int i = N - 1; i >= 0; i--)
+        {
+            double sum = 0;
+            for (int j = i + 1; j < N; j++)
+                sum += A[i * N + j] * x[j];
+
+            x[i] = Math.abs(A[i * N + i]) < 1e-10 ? 0 : (b[i] - sum) / A[i * N + i];
+        }
+    }
+
+    private static void swapRows(double[] A, double[] b, int r1, int r2, int N)
+    {
+        for (int j = 0; j < N; j++)
+        {
+            double temp = A[r1 * N + j];
+            A[r1 * N + j] = A[r2 * N + j];
+            A[r2 * N + j] = temp;
+        }
+
+        double temp = b[r1];
+        b[r1] = b[r2];
+        b[r2] = temp;
+    }
+
+    // --- ARTICULATED-BODY SOLVER --- //
+
+    /**
+     * Computes the accelerations in O(N) with a two-pass recursion over the chain,
+     * in the style of Featherstone's articulated-body algorithm.
+     *
+     * Each rod is massless and pinned at both ends, so it can only push or pull along
+     * its own direction e = (sin, cos). The sub-chain hanging from a joint therefore
+     * reacts to the acceleration a of that joint with a force K a + c, where K is its
+     * 2x2 articulated inertia and c its bias force. A rod of length l moves its outer
+     * joint by l (alpha n - w^2 e) relative to the inner one, with n = (cos, -sin).
+     *
+     * The backward pass (tip to pivot) builds K and c for every sub-chain, the forward
+     * pass (pivot to tip) propagates the joint accelerations and reads off each angular
+     * acceleration. The result equals the dense solution up to rounding.
+     */
+    private double[] computeArticulatedAccelerations(double[] angularVelocities, SolverWorkspace workspace)
+    {
+        final int N = NUM_PENDULUMS;
+        double[] acc = workspace.acceleration;
+
+        double[] sin = workspace.sin;
+        double[] cos = workspace.cos;
+        double[] ux = workspace.couplingX;
+        double[] uy = workspace.couplingY;
+        double[] inertia = workspace.inertia;
+        double[] bias = workspace.bias;
+
+        // Articulated inertia and bias force of the sub-chain outside the current rod
+        double kxx = 0, kxy = 0, kyy = 0;
+        double cx = 0, cy = 0;
+
+        // Backward pass: from the tip to the pivot
+        for (int k = N - 1; k >= 0; k--)
+        {
+            double s = sin[k];
+            double c = cos[k];
+            double m = MASSES[k];
+            double lw2 = LENGTHS[k] * (angularVelocities[k] * angularVelocities[k]);
+
+            // Point mass at the end of the rod plus everything hanging from it
+            double jxx = m + kxx;
+            double jxy = kxy;
+            double jyy = m + kyy;
+
+            // Bias: outer bias force, gravity and the centripetal term of this rod
+            double zx = cx - lw2 * (jxx * s + jxy * c);
+            double zy = cy - m * GRAVITY - lw2 * (jxy * s + jyy * c);
+
+            // Project onto the rod normal n = (cos, -sin)
+            double px = jxx * c - jxy * s;
+            double py = jxy * c - jyy * s;
+            double d = px * c - py * s;
+            double nz = zx * c - zy * s;
+
+            ux[k] = px;
+            uy[k] = py;
+            inertia[k] = LENGTHS[k] * d;
+            bias[k] = nz;
+
+            // Only the component along the rod is transmitted to the inner joint
+            kxx = jxx - px * px / d;
+            kxy = jxy - px * py / d;
+            kyy = jyy - py * py / d;
+            cx = zx - px * nz / d;
+            cy = zy - py * nz / d;
+        }
+
+        // Forward pass: from the fixed pivot to the tip
+        double ax = 0, ay = 0;
+        for (int k = 0; k < N; k++)
+        {
+            double alpha = -(ux[k] * ax + uy[k] * ay + bias[k]) / inertia[k];
+            double w2 = angularVelocities[k] * angularVelocities[k];
+            double l = LENGTHS[k];
+
+            acc[k] = alpha;
+
+            ax += l * (alpha * cos[k] - w2 * sin[k]);
+            ay -= l * (alpha * sin[k] + w2 * cos[k]);
+        }
+
+        return acc;
+    }
+
+    // --- UTILITIES --- //
+
+    static double wrapAngle(double angle)
+    {
+        double twoPi = 2 * Math.PI;
+        return ((angle + Math.PI) % twoPi + twoPi) % twoPi - Math.PI;
+    }
+}
@@ -0,0 +1,579 @@
+package com.pendulum;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.CRC32C;
+
+/**
+ * A bit-exact copy of the state of a Pendulum or a PendulumEnsemble, and the
+ * binary file it is stored in.
+ *
+ * capture() copies the state into a single direct buffer laid out exactly like
+ * the file: a bulk memory copy, taken between steps by the thread that owns the
+ * simulation. write() may then run on any other thread while stepping goes on.
+ * It fills in the checksums and writes the whole image through a FileChannel to
+ * a temporary file, which then replaces the target, so an interrupted write
+ * never destroys the previous checkpoint. read() loads a file in one bulk read
+ * and validates it, and restore() continues a simulation exactly where the
+ * captured one stood: the following steps give the same bits as if it had never
+ * stopped.
+ *
+ * All values are little-endian.
+ *
+ *   header   HEADER_BYTES, see the offsets below
+ *   chain    the mass of every segment, then its length, pivot first
+ *   state    PENDULUM: angles, angular velocities and the adaptive stepping
+ *            state, as written by Pendulum.writeState
+ *            ENSEMBLE: every angle, then every angular velocity, in the
+ *            segment-major layout of PendulumEnsemble
+ *   trail    only with FLAG_TRAIL: joints, length, head and count as ints,
+ *            then length * joints * 2 floats, slot-major
+ *
+ * The header ends with the CRC32C of the payload and the CRC32C of the header
+ * bytes before it. Readers reject other versions, unknown flags, sizes that do
+ * not match the header and checksum mismatches.
+ */
+public final class Checkpoint
+{
+    // What a checkpoint holds
+    public enum Kind
+    {
+        PENDULUM,   // One chain, optionally with the trail ring of Main
+        ENSEMBLE    // A batch of chains
+    }
+
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    static final int MAGIC = 0x4B43504E;   // "NPCK"
+    static final int VERSION = 1;
+
+    // Header field offsets
+    static final int HEADER_BYTES = 96;
+    static final int OFFSET_MAGIC = 0;
+    static final int OFFSET_VERSION = 4;
+    static final int OFFSET_KIND = 8;
+    static final int OFFSET_FLAGS = 12;
+    static final int OFFSET_SEGMENTS = 16;
+    static final int OFFSET_CHAINS = 20;
+    static final int OFFSET_DELTA_TIME = 24;
+    static final int OFFSET_SIMULATION_TIME = 32;
+    static final int OFFSET_STEPS = 40;
+    static final int OFFSET_PAYLOAD_BYTES = 48;
+    static final int OFFSET_SOLVER = 56;
+    static final int OFFSET_INTEGRATOR = 72;
+    static final int OFFSET_PAYLOAD_CRC = 88;
+    static final int OFFSET_HEADER_CRC = 92;
+
+    static final int NAME_BYTES = 16;         // Solver and integrator names, zero padded
+    static final int FLAG_TRAIL = 1;
+    static final int TRAIL_HEADER_BYTES = 4 * Integer.BYTES;
+
+    private final ByteBuffer image;   // Header and payload, exactly as in the file
+    private boolean sealed;           // Whether the checksums are filled in
+
+    /**
+     * A copy of a trail ring: the samples of TrailRenderer (one joint) or of
+     * JointTrails (every joint), x and y interleaved, history[(slot * joints + joint) * 2].
+     */
+    public static final class Trail
+    {
+        private final int joints;
+        private final int length;
+        private final int head;
+        private final int count;
+        private final float[] history;
+
+        Trail(int joints, int length, int head, int count, float[] history)
+        {
+            if (history.length != length * joints * 2)
+                throw new IllegalArgumentException("Trail history has " + history.length + " values, expected "
+                                                   + length * joints * 2);
+            this.joints = joints;
+            this.length = length;
+            this.head = head;
+            this.count = count;
+            this.history = history;
+        }
+
+        public int getJoints()
+        {
+            return joints;
+        }
+
+        public int getLength()
+        {
+            return length;
+        }
+
+        public int getHead()
+        {
+            return head;
+        }
+
+        public int getCount()
+        {
+            return count;
+        }
+
+        public float[] getHistory()
+        {
+            return history;
+        }
+
+        private int getBytes()
+        {
+            return TRAIL_HEADER_BYTES + history.length * Float.BYTES;
+        }
+    }
+
+    private Checkpoint(ByteBuffer image, boolean sealed)
+    {
+        this.image = image;
+        this.sealed = sealed;
+    }
+
+    // --- Capture --- //
+
+    // Copies the state of a pendulum that has not been stepped by anyone else
+    public static Checkpoint capture(Pendulum pendulum)
+    {
+        return capture(pendulum, 0, 0, null);
+    }
+
+    /**
+     * Copies the state of a pendulum, with the simulated time and step count it
+     * has reached and optionally the trail ring drawn behind it. Must be called by
+     * the thread that steps the pendulum, or while nothing does.
+     */
+    public static Checkpoint capture(Pendulum pendulum, double simulationTime, long steps, Trail trail)
+    {
+        long payload = chainBytes(pendulum.getNumPendulums()) + pendulum.getStateBytes()
+                       + (trail != null ? trail.getBytes() : 0);
+        ByteBuffer image = allocate(payload, null);
+        putHeader(image, Kind.PENDULUM, trail != null ? FLAG_TRAIL : 0, pendulum.getNumPendulums(), 1,
+                  pendulum.getDeltaTime(), simulationTime, steps, payload, pendulum.getSolver(),
+                  pendulum.getIntegrator());
+
+        image.position(HEADER_BYTES);
+        putDoubles(image, pendulum.getMasses());
+        putDoubles(image, pendulum.getLengths());
+        pendulum.writeState(image);
+        if (trail != null)
+        {
+            image.putInt(trail.joints).putInt(trail.length).putInt(trail.head).putInt(trail.count);
+            image.asFloatBuffer().put(trail.history);
+        }
+        image.clear();
+        return new Checkpoint(image, false);
+    }
+
+    /**
+     * Copies the state of every chain of an ensemble. Must not overlap a call to
+     * step(); the copy is a single bulk transfer per state array.
+     *
+     * @param reuse A previous checkpoint of the same ensemble whose memory is
+     *              overwritten instead of allocating, or null. It must no longer be
+     *              in use, e.g. its write() has returned.
+     */
+    public static Checkpoint capture(PendulumEnsemble ensemble, double simulationTime, long steps, Checkpoint reuse)
+    {
+        long payload = chainBytes(ensemble.getNumPendulums()) + ensemble.getStateBytes();
+        ByteBuffer image = allocate(payload, reuse);
+        putHeader(image, Kind.ENSEMBLE, 0, ensemble.getNumPendulums(), ensemble.getSize(),
+                  ensemble.getDeltaTime(), simulationTime, steps, payload, ensemble.getSolver(),
+                  ensemble.getIntegrator());
+
+        image.position(HEADER_BYTES);
+        putDoubles(image, ensemble.getMasses());
+        putDoubles(image, ensemble.getLengths());
+        ensemble.writeState(image);
+        image.clear();
+        return new Checkpoint(image, false);
+    }
+
+    // Bytes of the chain section
+    private static long chainBytes(int segments)
+    {
+        return 2L * segments * Double.BYTES;
+    }
+
+    private static ByteBuffer allocate(long payloadBytes, Checkpoint reuse)
+    {
+        long total = HEADER_BYTES + payloadBytes;
+        if (total > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("State of " + payloadBytes + " bytes is too large for one checkpoint.");
+
+        if (reuse != null && reuse.image.capacity() == total)
+        {
+            reuse.image.clear();
+            return reuse.image;
+        }
+        return ByteBuffer.allocateDirect((int) total).order(ORDER);
+    }
+
+    private static void putHeader(ByteBuffer image, Kind kind, int flags, int segments, int chains,
+                                  double deltaTime, double simulationTime, long steps, long payloadBytes,
+                                  Pendulum.Solver solver, Integrator integrator)
+    {
+        for (int i = 0; i < HEADER_BYTES; i++)
+            image.put(i, (byte) 0);
+
+        image.putInt(OFFSET_MAGIC, MAGIC);
+        image.putInt(OFFSET_VERSION, VERSION);
+        image.putInt(OFFSET_KIND, kind.ordinal());
+        image.putInt(OFFSET_FLAGS, flags);
+        image.putInt(OFFSET_SEGMENTS, segments);
+        image.putInt(OFFSET_CHAINS, chains);
+        image.putDouble(OFFSET_DELTA_TIME, deltaTime);
+        image.putDouble(OFFSET_SIMULATION_TIME, simulationTime);
+        image.putLong(OFFSET_STEPS, steps);
+        image.putLong(OFFSET_PAYLOAD_BYTES, payloadBytes);
+        putName(image, OFFSET_SOLVER, solver.name().toLowerCase(Locale.ROOT));
+        putName(image, OFFSET_INTEGRATOR, integrator.getName());
+    }
+
+    // --- File I/O --- //
+
+    /**
+     * Writes the checkpoint to a temporary file next to the path, forces it to the
+     * device and moves it over the path. Safe to call from any thread.
+     */
+    public synchronized void write(Path path) throws IOException
+    {
+        seal();
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            ByteBuffer buffer = image.duplicate();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(false);
+        }
+
+        try
+        {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Loads and validates a checkpoint file
+    public static Checkpoint read(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE - 8)
+                throw new IOException("Not a checkpoint: " + path);
+
+            ByteBuffer image = ByteBuffer.allocateDirect((int) size).order(ORDER);
+            while (image.hasRemaining())
+            {
+                if (channel.read(image) < 0)
+                    throw new IOException("Truncated checkpoint " + path);
+            }
+            image.clear();
+
+            validate(image, path);
+            return new Checkpoint(image, true);
+        }
+    }
+
+    private static void validate(ByteBuffer image, Path path) throws IOException
+    {
+        if (image.getInt(OFFSET_MAGIC) != MAGIC)
+            throw new IOException("Not a checkpoint: " + path);
+        if (image.getInt(OFFSET_VERSION) != VERSION)
+            throw new IOException("Unsupported checkpoint version " + image.getInt(OFFSET_VERSION) + " in " + path);
+        if (image.getInt(OFFSET_HEADER_CRC) != crc(image, 0, OFFSET_HEADER_CRC))
+            throw new IOException("Corrupt checkpoint header in " + path);
+
+        int kind = image.getInt(OFFSET_KIND);
+        int flags = image.getInt(OFFSET_FLAGS);
+        int segments = image.getInt(OFFSET_SEGMENTS);
+        int chains = image.getInt(OFFSET_CHAINS);
+        long payload = image.getLong(OFFSET_PAYLOAD_BYTES);
+        if (kind < 0 || kind >= Kind.values().length || (flags & ~FLAG_TRAIL) != 0 || segments < 1 || chains < 1)
+            throw new IOException("Unsupported checkpoint contents in " + path);
+        if (payload != image.capacity() - HEADER_BYTES)
+            throw new IOException("Checkpoint " + path + " holds " + (image.capacity() - HEADER_BYTES)
+                                  + " payload bytes, the header says " + payload);
+        if (image.getInt(OFFSET_PAYLOAD_CRC) != crc(image, HEADER_BYTES, image.capacity()))
+            throw new IOException("Checksum mismatch in checkpoint " + path);
+
+        // The sizes are trusted from here on: the checksums hold and the writer derived them from the state
+        long chain = chainBytes(segments);
+        long state = kind == Kind.PENDULUM.ordinal()
+            ? 2L * segments * Double.BYTES + Pendulum.ADAPTIVE_STATE_BYTES
+            : 2L * chains * segments * Double.BYTES;
+        long trail = 0;
+        if ((flags & FLAG_TRAIL) != 0 && payload >= chain + state + TRAIL_HEADER_BYTES)
+        {
+            int offset = (int) (HEADER_BYTES + chain + state);
+            trail = TRAIL_HEADER_BYTES + (long) image.getInt(offset) * image.getInt(offset + 4) * 2 * Float.BYTES;
+        }
+        if (payload != chain + state + trail)
+            throw new IOException("Checkpoint " + path + " does not match its header.");
+        if (chain > 0 && !isValidChain(image, segments))
+            throw new IOException("Checkpoint " + path + " holds invalid masses or lengths.");
+    }
+
+    private static boolean isValidChain(ByteBuffer image, int segments)
+    {
+        for (int i = 0; i < 2 * segments; i++)
+        {
+            double value = image.getDouble(HEADER_BYTES + i * Double.BYTES);
+            if (!(value > 0) || Double.isInfinite(value))
+                return false;
+        }
+        return true;
+    }
+
+    // Fills in both checksums once, on the first write
+    private void seal()
+    {
+        if (sealed)
+            return;
+
+        image.putInt(OFFSET_PAYLOAD_CRC, crc(image, HEADER_BYTES, image.capacity()));
+        image.putInt(OFFSET_HEADER_CRC, crc(image, 0, OFFSET_HEADER_CRC));
+        sealed = true;
+    }
+
+    private static int crc(ByteBuffer image, int from, int to)
+    {
+        CRC32C crc = new CRC32C();
+        crc.update(image.duplicate().limit(to).position(from));
+        return (int) crc.getValue();
+    }
+
+    // --- Restore --- //
+
+    // A new pendulum continuing from this checkpoint
+    public Pendulum createPendulum()
+    {
+        Pendulum pendulum = new Pendulum(getMasses(), getLengths(), getDeltaTime(), 0, getSolver(), getIntegrator());
+        restore(pendulum);
+        return pendulum;
+    }
+
+    // Overwrites the state of a pendulum created with the same segments, time step, solver and integrator
+    public void restore(Pendulum pendulum)
+    {
+        checkKind(Kind.PENDULUM);
+        checkSettings(pendulum.getNumPendulums(), 1, pendulum.getDeltaTime(), pendulum.getSolver(),
+                      pendulum.getIntegrator());
+        checkChain(pendulum.getMasses(), pendulum.getLengths());
+        pendulum.readState(payload());
+    }
+
+    // A new ensemble continuing from this checkpoint, stepped by the given number of threads
+    public PendulumEnsemble createEnsemble(int parallelism)
+    {
+        PendulumEnsemble ensemble = new PendulumEnsemble(getSize(), getMasses(), getLengths(), getDeltaTime(), 0,
+                                                         getSolver(), getIntegrator(), parallelism);
+        restore(ensemble);
+        return ensemble;
+    }
+
+    // Overwrites the state of an ensemble of the same shape, time step, solver and integrator
+    public void restore(PendulumEnsemble ensemble)
+    {
+        checkKind(Kind.ENSEMBLE);
+        checkSettings(ensemble.getNumPendulums(), ensemble.getSize(), ensemble.getDeltaTime(), ensemble.getSolver(),
+                      ensemble.getIntegrator());
+        checkChain(ensemble.getMasses(), ensemble.getLengths());
+        ensemble.readState(payload());
+    }
+
+    private void checkKind(Kind kind)
+    {
+        if (getKind() != kind)
+            throw new IllegalArgumentException("Checkpoint holds a " + getKind().name().toLowerCase(Locale.ROOT)
+                                               + ", not a " + kind.name().toLowerCase(Locale.ROOT));
+    }
+
+    // A bit-exact continuation needs the very same step
+    private void checkSettings(int segments, int chains, double deltaTime, Pendulum.Solver solver, Integrator integrator)
+    {
+        if (segments != getNumPendulums() || chains != getSize()
+            || Double.doubleToLongBits(deltaTime) != Double.doubleToLongBits(getDeltaTime())
+            || solver != getSolver() || integrator != getIntegrator())
+            throw new IllegalArgumentException(String.format(Locale.ROOT,
+                "Checkpoint of %d x %d segments, dt=%s, %s, %s does not match %d x %d segments, dt=%s, %s, %s",
+                getSize(), getNumPendulums(), getDeltaTime(), getSolverName(), getIntegratorName(),
+                chains, segments, deltaTime, solver.name().toLowerCase(Locale.ROOT), integrator.getName()));
+    }
+
+    private void checkChain(double[] masses, double[] lengths)
+    {
+        if (!Arrays.equals(masses, getMasses()) || !Arrays.equals(lengths, getLengths()))
+            throw new IllegalArgumentException("Checkpoint of masses " + Arrays.toString(getMasses()) + ", lengths "
+                                               + Arrays.toString(getLengths()) + " does not match masses "
+                                               + Arrays.toString(masses) + ", lengths " + Arrays.toString(lengths));
+    }
+
+    // The state section, positioned at its start
+    private ByteBuffer payload()
+    {
+        return image.duplicate().order(ORDER).position(stateOffset());
+    }
+
+    private int stateOffset()
+    {
+        return HEADER_BYTES + (int) chainBytes(getNumPendulums());
+    }
+
+    // One of the two halves of the chain section
+    private double[] getChain(int half)
+    {
+        double[] values = new double[getNumPendulums()];
+        getDoubles(image.duplicate().order(ORDER).position(HEADER_BYTES + half * values.length * Double.BYTES), values);
+        return values;
+    }
+
+    // --- Contents --- //
+
+    public Kind getKind()
+    {
+        return Kind.values()[image.getInt(OFFSET_KIND)];
+    }
+
+    public int getNumPendulums()
+    {
+        return image.getInt(OFFSET_SEGMENTS);
+    }
+
+    // Number of chains, 1 for a pendulum
+    public int getSize()
+    {
+        return image.getInt(OFFSET_CHAINS);
+    }
+
+    public double getDeltaTime()
+    {
+        return image.getDouble(OFFSET_DELTA_TIME);
+    }
+
+    public double getSimulationTime()
+    {
+        return image.getDouble(OFFSET_SIMULATION_TIME);
+    }
+
+    public long getSteps()
+    {
+        return image.getLong(OFFSET_STEPS);
+    }
+
+    // Mass of the bob at the end of each segment, pivot first
+    public double[] getMasses()
+    {
+        return getChain(0);
+    }
+
+    // Length of each segment, pivot first
+    public double[] getLengths()
+    {
+        return getChain(1);
+    }
+
+    public Pendulum.Solver getSolver()
+    {
+        String name = getSolverName();
+        for (Pendulum.Solver solver : Pendulum.Solver.values())
+        {
+            if (solver.name().equalsIgnoreCase(name))
+                return solver;
+        }
+        throw new IllegalStateException("Unknown solver in checkpoint: " + name);
+    }
+
+    public Integrator getIntegrator()
+    {
+        return Integrator.forName(getIntegratorName());
+    }
+
+    // The trail ring saved with a pendulum, or null
+    public Trail getTrail()
+    {
+        if ((image.getInt(OFFSET_FLAGS) & FLAG_TRAIL) == 0)
+            return null;
+
+        int offset = stateOffset() + 2 * getNumPendulums() * Double.BYTES + Pendulum.ADAPTIVE_STATE_BYTES;
+        ByteBuffer buffer = image.duplicate().order(ORDER).position(offset);
+        int joints = buffer.getInt();
+        int length = buffer.getInt();
+        int head = buffer.getInt();
+        int count = buffer.getInt();
+        float[] history = new float[length * joints * 2];
+        buffer.asFloatBuffer().get(history);
+        return new Trail(joints, length, head, count, history);
+    }
+
+    // Size of the file write() produces
+    public long getBytes()
+    {
+        return image.capacity();
+    }
+
+    private String getSolverName()
+    {
+        return getName(image, OFFSET_SOLVER);
+    }
+
+    private String getIntegratorName()
+    {
+        return getName(image, OFFSET_INTEGRATOR);
+    }
+
+    // --- Helpers --- //
+
+    private static void putName(ByteBuffer image, int offset, String name)
+    {
+        byte[] bytes = name.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length > NAME_BYTES)
+            throw new IllegalArgumentException("Name too long for a checkpoint: " + name);
+        for (int i = 0; i < bytes.length; i++)
+            image.put(offset + i, bytes[i]);
+    }
+
+    private static String getName(ByteBuffer image, int offset)
+    {
+        byte[] bytes = new byte[NAME_BYTES];
+        int length = 0;
+        while (length < NAME_BYTES && image.get(offset + length) != 0)
+        {
+            bytes[length] = image.get(offset + length);
+            length++;
+        }
+        return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    // Bulk copies in the buffer's byte order, advancing its position
+    static void putDoubles(ByteBuffer out, double[] values)
+    {
+        out.asDoubleBuffer().put(values);
+        out.position(out.position() + values.length * Double.BYTES);
+    }
+
+    static void getDoubles(ByteBuffer in, double[] values)
+    {
+        in.asDoubleBuffer().get(values);
+        in.position(in.position() + values.length * Double.BYTES);
+    }
+}
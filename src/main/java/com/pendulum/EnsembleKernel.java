@@ -0,0 +1,21 @@
+package com.pendulum;
+
+/**
+ * A specialised stepping routine for a range of ensemble chains.
+ *
+ * Kernels work directly on the segment-major buffers of a PendulumEnsemble and
+ * may only handle part of the range they are given, for example whole groups of
+ * SIMD lanes. The ensemble steps whatever is left with the scalar path.
+ */
+interface EnsembleKernel
+{
+    /**
+     * Advances chains [first, last) by the given number of steps.
+     *
+     * @param angles            Segment-major angle buffer of the ensemble.
+     * @param angularVelocities Segment-major velocity buffer of the ensemble.
+     * @param size              Number of chains in the ensemble (the segment stride).
+     * @return The first chain that was not stepped; chains from there to last remain.
+     */
+    int step(double[] angles, double[] angularVelocities, int size, int first, int last, int steps);
+}
@@ -0,0 +1,570 @@
+package com.pendulum;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * The time-to-first-flip map of a chain released from rest.
+ *
+ * Pixel (x, y) starts the first two segments at angles (phi1, phi2) measured
+ * from hanging straight down, phi1 growing to the right and phi2 upwards, both
+ * over [-range, range]; any further segments start hanging. Its value is the
+ * simulated time until any segment first passes through pointing straight up.
+ *
+ * Pixels whose energy is below that of the cheapest flipped configuration (the
+ * tip pointing up, everything else hanging) can never flip and are not
+ * integrated at all; every other pixel stops at its first flip. Cost still
+ * varies by orders of magnitude between pixels, so the grid is cut into square
+ * tiles that worker threads take one at a time from a shared counter, and a
+ * thread that drew cheap tiles simply takes more of them.
+ *
+ * With a checkpoint file, every finished tile is written there at once and a
+ * later run with the same parameters skips it, so an interrupted map resumes
+ * where it stopped. Grid values: the flip time in seconds, NaN if the pixel
+ * can never flip, +Infinity if it did not flip within maxTime.
+ */
+public class FlipMap
+{
+    private static final int CHECKPOINT_MAGIC = 0x50464C50;   // "PFLP"
+    private static final int CHECKPOINT_VERSION = 1;
+    private static final int FINGERPRINT_BYTES = 256;
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+        "Usage: com.pendulum.FlipMap [options]",
+        "  --size WxH          Map size in pixels (default 1000x1000)",
+        "  --range RADIANS     Initial angles span [-range, range] (default pi)",
+        "  --segments N        Number of segments, at least 2 (default 2)",
+        "  --dt SECONDS        Time step (default 0.01)",
+        "  --max-time SECONDS  Give up on a pixel after this long (default 100)",
+        "  --solver NAME       gaussian | cholesky | articulated (default articulated)",
+        "  --integrator NAME   leapfrog | yoshida4 | yoshida6 | forest-ruth (default yoshida4)",
+        "  --tile N            Tile side in pixels (default 32)",
+        "  --threads N         Worker threads (default: all cores)",
+        "  --image PATH        PNG output (default flip.png)",
+        "  --grid PATH         Raw little-endian float32 grid, top row first (default flip.f32)",
+        "  --checkpoint PATH   Tile checkpoint, resumed if present (default GRID.ckpt)",
+        "  --help              Print this message");
+
+    private final int WIDTH;
+    private final int HEIGHT;
+    private final int TILE_SIZE;
+    private final int TILES_X;
+    private final int TILES_Y;
+    private final int NUM_PENDULUMS;
+    private final double RANGE;
+    private final double DELTA_TIME;
+    private final double MAX_TIME;
+
+    private final ChainDynamics dynamics;
+    private final Integrator integrator;
+    private final double flipEnergy;          // Energy of the cheapest configuration with a segment up
+
+    private final float[] grid;               // grid[y * WIDTH + x], top row first
+    private final boolean[] done;             // Tiles finished in this or an earlier run
+    private final AtomicInteger completedTiles = new AtomicInteger();
+
+    // Per-thread state of one chain
+    private static final class Worker
+    {
+        final double[] angles;
+        final double[] angularVelocities;
+        final double[] previous;          // Angles before the last step
+        final SolverWorkspace workspace;
+
+        Worker(ChainDynamics dynamics)
+        {
+            angles = new double[dynamics.getNumPendulums()];
+            angularVelocities = new double[dynamics.getNumPendulums()];
+            previous = new double[dynamics.getNumPendulums()];
+            workspace = dynamics.createWorkspace();
+        }
+    }
+
+    public FlipMap(int width, int height, int numPendulums, double range, double deltaTime, double maxTime,
+                   Pendulum.Solver solver, Integrator integrator, int tileSize)
+    {
+        if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Invalid map size: " + width + " x " + height);
+        if (numPendulums < 2)
+            throw new IllegalArgumentException("A flip map needs at least two segments.");
+        if (!(deltaTime > 0) || !(maxTime > 0) || tileSize <= 0)
+            throw new IllegalArgumentException("Time step, time limit and tile size must be positive.");
+
+        WIDTH = width;
+        HEIGHT = height;
+        TILE_SIZE = tileSize;
+        TILES_X = (width + tileSize - 1) / tileSize;
+        TILES_Y = (height + tileSize - 1) / tileSize;
+        NUM_PENDULUMS = numPendulums;
+        RANGE = range;
+        DELTA_TIME = deltaTime;
+        MAX_TIME = maxTime;
+
+        dynamics = new ChainDynamics(numPendulums, solver);
+        this.integrator = integrator;
+
+        // V = -gravity * sum_i (N - i) cos(angle_i) with angle 0 pointing up; the tip has weight 1
+        int weights = numPendulums * (numPendulums + 1) / 2;
+        flipEnergy = -dynamics.getGravity() * (2 - weights);
+
+        grid = new float[width * height];
+        done = new boolean[TILES_X * TILES_Y];
+    }
+
+    // --- Command line --- //
+
+    public static void main(String[] args)
+    {
+        int width = 1000, height = 1000, segments = 2, tileSize = 32;
+        int threads = Runtime.getRuntime().availableProcessors();
+        double range = Math.PI, deltaTime = 0.01, maxTime = 100;
+        Pendulum.Solver solver = Pendulum.Solver.ARTICULATED;
+        Integrator integrator = Integrator.YOSHIDA4;
+        Path image = Paths.get("flip.png");
+        Path gridPath = Paths.get("flip.f32");
+        Path checkpoint = null;
+
+        FlipMap map;
+        try
+        {
+            for (int i = 0; i < args.length; i++)
+            {
+                String option = args[i];
+                if (option.equals("--help"))
+                {
+                    System.out.println(USAGE);
+                    return;
+                }
+                if (i + 1 >= args.length)
+                    throw new IllegalArgumentException("Missing value for " + option);
+
+                String value = args[++i];
+                switch (option)
+                {
+                    case "--size":
+                        String[] parts = value.toLowerCase(Locale.ROOT).split("x");
+                        if (parts.length != 2)
+                            throw new IllegalArgumentException(option + " expects WIDTHxHEIGHT: " + value);
+                        width = Headless.parsePositiveInt(option, parts[0].trim());
+                        height = Headless.parsePositiveInt(option, parts[1].trim());
+                        break;
+                    case "--range":      range = Headless.parseDouble(option, value); break;
+                    case "--segments":   segments = Headless.parsePositiveInt(option, value); break;
+                    case "--dt":         deltaTime = Headless.parseDouble(option, value); break;
+                    case "--max-time":   maxTime = Headless.parseDouble(option, value); break;
+                    case "--solver":     solver = Headless.parseSolver(value); break;
+                    case "--integrator": integrator = Integrator.forName(value); break;
+                    case "--tile":       tileSize = Headless.parsePositiveInt(option, value); break;
+                    case "--threads":    threads = Headless.parsePositiveInt(option, value); break;
+                    case "--image":      image = Paths.get(value); break;
+                    case "--grid":       gridPath = Paths.get(value); break;
+                    case "--checkpoint": checkpoint = Paths.get(value); break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + option);
+                }
+            }
+            map = new FlipMap(width, height, segments, range, deltaTime, maxTime, solver, integrator, tileSize);
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        if (checkpoint == null)
+            checkpoint = Paths.get(gridPath + ".ckpt");
+
+        try
+        {
+            long start = System.nanoTime();
+            Thread progress = map.startProgressReport(System.err);
+            try
+            {
+                map.generate(threads, checkpoint);
+            }
+            finally
+            {
+                progress.interrupt();
+            }
+            double seconds = (System.nanoTime() - start) * 1e-9;
+
+            map.writeGrid(gridPath);
+            map.writePng(image);
+            Files.deleteIfExists(checkpoint);
+            System.out.printf(Locale.ROOT, "%dx%d map in %.1f s (%.0f pixels/s) -> %s, %s%n", width, height,
+                              seconds, (double) width * height / seconds, image, gridPath);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Prints the fraction of finished tiles every few seconds until interrupted
+    private Thread startProgressReport(PrintStream out)
+    {
+        Thread thread = new Thread(() ->
+        {
+            try
+            {
+                while (true)
+                {
+                    Thread.sleep(5000);
+                    out.printf(Locale.ROOT, "%d / %d tiles%n", getCompletedTiles(), getTileCount());
+                }
+            }
+            catch (InterruptedException e)
+            {
+                // Done
+            }
+        }, "flip-map-progress");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    // --- Generation --- //
+
+    /**
+     * Computes every tile not already in the checkpoint, on the given number of
+     * threads. Blocks until the map is complete.
+     *
+     * @param checkpoint File to resume from and record finished tiles in, or null.
+     */
+    public void generate(int parallelism, Path checkpoint) throws IOException
+    {
+        try (FileChannel channel = checkpoint != null ? openCheckpoint(checkpoint) : null)
+        {
+            List<Integer> pending = new ArrayList<>();
+            for (int tile = 0; tile < done.length; tile++)
+            {
+                if (!done[tile])
+                    pending.add(tile);
+            }
+            completedTiles.set(done.length - pending.size());
+
+            // Workers pull the next pending tile until none are left
+            AtomicInteger next = new AtomicInteger();
+            ThreadLocal<Worker> workers = ThreadLocal.withInitial(() -> new Worker(dynamics));
+            Callable<Void> drain = () ->
+            {
+                Worker worker = workers.get();
+                for (int i = next.getAndIncrement(); i < pending.size(); i = next.getAndIncrement())
+                {
+                    int tile = pending.get(i);
+                    computeTile(tile, worker);
+                    if (channel != null)
+                        saveTile(channel, tile);
+                    done[tile] = true;
+                    completedTiles.incrementAndGet();
+                }
+                return null;
+            };
+
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < parallelism; i++)
+                tasks.add(drain);
+
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try
+            {
+                for (Future<Void> result : pool.invokeAll(tasks))
+                    result.get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted; finished tiles are in the checkpoint.", e);
+            }
+            catch (ExecutionException e)
+            {
+                if (e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+                throw new IllegalStateException("Flip map worker failed.", e.getCause());
+            }
+            finally
+            {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private void computeTile(int tile, Worker worker)
+    {
+        int firstX = (tile % TILES_X) * TILE_SIZE;
+        int firstY = (tile / TILES_X) * TILE_SIZE;
+        int lastX = Math.min(firstX + TILE_SIZE, WIDTH);
+        int lastY = Math.min(firstY + TILE_SIZE, HEIGHT);
+
+        for (int y = firstY; y < lastY; y++)
+        {
+            double phi2 = RANGE * (1.0 - 2.0 * (y + 0.5) / HEIGHT);
+            for (int x = firstX; x < lastX; x++)
+            {
+                double phi1 = RANGE * (2.0 * (x + 0.5) / WIDTH - 1.0);
+                grid[y * WIDTH + x] = flipTime(phi1, phi2, worker);
+            }
+        }
+    }
+
+    /**
+     * Integrates one chain released from rest until a segment flips.
+     * Angles are wrapped into [-pi, pi) with 0 pointing up, so a flip is a sign
+     * change near 0, while the wrap at +-pi is hanging down and is ignored.
+     */
+    private float flipTime(double phi1, double phi2, Worker worker)
+    {
+        double[] angles = worker.angles;
+        double[] velocities = worker.angularVelocities;
+        for (int i = 0; i < NUM_PENDULUMS; i++)
+        {
+            double phi = i == 0 ? phi1 : i == 1 ? phi2 : 0.0;
+            angles[i] = ChainDynamics.wrapAngle(phi + Math.PI);
+            velocities[i] = 0.0;
+        }
+
+        // Released from rest: the energy is all potential and cannot reach a flipped state
+        if (dynamics.energy(angles, velocities, worker.workspace) < flipEnergy)
+            return Float.NaN;
+
+        double[] previous = worker.previous;
+        long maxSteps = (long) Math.ceil(MAX_TIME / DELTA_TIME);
+        for (long step = 1; step <= maxSteps; step++)
+        {
+            System.arraycopy(angles, 0, previous, 0, NUM_PENDULUMS);
+            integrator.step(dynamics, angles, velocities, DELTA_TIME, worker.workspace);
+
+            for (int i = 0; i < NUM_PENDULUMS; i++)
+            {
+                double before = previous[i];
+                double after = angles[i];
+                boolean nearUp = Math.abs(before) < Math.PI / 2 && Math.abs(after) < Math.PI / 2;
+                if (nearUp && (before < 0) != (after < 0))
+                    return (float) (step * DELTA_TIME);
+            }
+        }
+        return Float.POSITIVE_INFINITY;
+    }
+
+    // --- Checkpoint --- //
+
+    // Opens or creates the checkpoint, loading the tiles it already holds
+    private FileChannel openCheckpoint(Path path) throws IOException
+    {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE);
+        try
+        {
+            byte[] fingerprint = fingerprint().getBytes(StandardCharsets.UTF_8);
+            if (fingerprint.length > FINGERPRINT_BYTES)
+                throw new IllegalStateException("Checkpoint fingerprint too long: " + fingerprint.length);
+            ByteBuffer header = ByteBuffer.allocate(headerBytes()).order(ByteOrder.LITTLE_ENDIAN);
+
+            if (channel.size() == 0)
+            {
+                header.putInt(CHECKPOINT_MAGIC).putInt(CHECKPOINT_VERSION).putInt(fingerprint.length).put(fingerprint);
+                header.position(headerBytes()).flip();
+                writeFully(channel, header, 0);
+
+                // Full length up front, so a resumed run can read the grid of any interrupted map
+                writeFully(channel, ByteBuffer.allocate(1), headerBytes() + (long) grid.length * Float.BYTES - 1);
+                return channel;
+            }
+
+            readFully(channel, header, 0);
+            header.flip();
+            byte[] stored = new byte[Math.max(0, Math.min(header.getInt(8), header.capacity() - 12))];
+            header.position(12);
+            header.get(stored);
+            if (header.getInt(0) != CHECKPOINT_MAGIC || header.getInt(4) != CHECKPOINT_VERSION
+                || !fingerprint().equals(new String(stored, StandardCharsets.UTF_8)))
+                throw new IOException("Checkpoint " + path + " belongs to a different map; delete it to start over.");
+
+            // Tile flags, then the grid
+            for (int tile = 0; tile < done.length; tile++)
+                done[tile] = header.get(flagsOffset() + tile) != 0;
+
+            ByteBuffer values = ByteBuffer.allocate(grid.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, values, headerBytes());
+            values.flip();
+            values.asFloatBuffer().get(grid);
+            return channel;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Writes a finished tile's rows, then its flag, so a flagged tile is always complete
+    private void saveTile(FileChannel channel, int tile) throws IOException
+    {
+        int firstX = (tile % TILES_X) * TILE_SIZE;
+        int firstY = (tile / TILES_X) * TILE_SIZE;
+        int lastX = Math.min(firstX + TILE_SIZE, WIDTH);
+        int lastY = Math.min(firstY + TILE_SIZE, HEIGHT);
+
+        ByteBuffer row = ByteBuffer.allocate((lastX - firstX) * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int y = firstY; y < lastY; y++)
+        {
+            row.clear();
+            for (int x = firstX; x < lastX; x++)
+                row.putFloat(grid[y * WIDTH + x]);
+            row.flip();
+            writeFully(channel, row, headerBytes() + ((long) y * WIDTH + firstX) * Float.BYTES);
+        }
+
+        writeFully(channel, ByteBuffer.wrap(new byte[] { 1 }), flagsOffset() + tile);
+    }
+
+    // Every parameter that changes the grid
+    private String fingerprint()
+    {
+        return String.format(Locale.ROOT, "%dx%d tile=%d segments=%d range=%s dt=%s max=%s solver=%s integrator=%s",
+                             WIDTH, HEIGHT, TILE_SIZE, NUM_PENDULUMS, Double.toString(RANGE),
+                             Double.toString(DELTA_TIME), Double.toString(MAX_TIME), dynamics.getSolver(),
+                             integrator.getName());
+    }
+
+    // Magic, version, fingerprint length and a fingerprint of up to 256 bytes
+    private int flagsOffset()
+    {
+        return 3 * Integer.BYTES + FINGERPRINT_BYTES;
+    }
+
+    private int headerBytes()
+    {
+        return flagsOffset() + done.length;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Truncated checkpoint.");
+            position += read;
+        }
+    }
+
+    // --- Output --- //
+
+    // Writes the grid as little-endian float32, row-major, top row first
+    public void writeGrid(Path path) throws IOException
+    {
+        ByteBuffer bytes = ByteBuffer.allocate(grid.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asFloatBuffer().put(grid);
+        Files.write(path, bytes.array());
+    }
+
+    /**
+     * Writes the map as a PNG: flip times on a logarithmic hue ramp from red
+     * (fast) to violet (maxTime), black where a flip is impossible and dark blue
+     * where none happened in time.
+     */
+    public void writePng(Path path) throws IOException
+    {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[WIDTH];
+        for (int y = 0; y < HEIGHT; y++)
+        {
+            for (int x = 0; x < WIDTH; x++)
+                row[x] = color(grid[y * WIDTH + x], MAX_TIME);
+            image.setRGB(0, y, WIDTH, 1, row, 0, WIDTH);
+        }
+
+        if (!ImageIO.write(image, "png", path.toFile()))
+            throw new IOException("No PNG writer available.");
+    }
+
+    static int color(float time, double maxTime)
+    {
+        if (Float.isNaN(time))
+            return 0x000000;
+        if (Float.isInfinite(time))
+            return 0x101030;
+
+        double t = Math.log1p(time) / Math.log1p(maxTime);
+        double hue = 0.8 * Math.max(0.0, Math.min(1.0, t));
+        return hsv(hue, 0.85, 1.0);
+    }
+
+    // HSV with all components in [0, 1] to packed RGB
+    private static int hsv(double h, double s, double v)
+    {
+        double sector = h * 6.0;
+        int i = (int) sector % 6;
+        double f = sector - Math.floor(sector);
+        double p = v * (1 - s), q = v * (1 - s * f), t = v * (1 - s * (1 - f));
+        double r, g, b;
+        switch (i)
+        {
+            case 0:  r = v; g = t; b = p; break;
+            case 1:  r = q; g = v; b = p; break;
+            case 2:  r = p; g = v; b = t; break;
+            case 3:  r = p; g = q; b = v; break;
+            case 4:  r = t; g = p; b = v; break;
+            default: r = v; g = p; b = q; break;
+        }
+        return (int) Math.round(r * 255) << 16 | (int) Math.round(g * 255) << 8 | (int) Math.round(b * 255);
+    }
+
+    // --- Getters --- //
+
+    public int getWidth()
+    {
+        return WIDTH;
+    }
+
+    public int getHeight()
+    {
+        return HEIGHT;
+    }
+
+    // Flip time of a pixel, see the class comment for NaN and infinity
+    public float getValue(int x, int y)
+    {
+        return grid[y * WIDTH + x];
+    }
+
+    public int getTileCount()
+    {
+        return done.length;
+    }
+
+    // Tiles finished so far, including those loaded from a checkpoint
+    public int getCompletedTiles()
+    {
+        return completedTiles.get();
+    }
+}
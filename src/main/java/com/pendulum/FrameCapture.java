@@ -0,0 +1,321 @@
+package com.pendulum;
+
+import static org.lwjgl.opengl.GL11.GL_RGBA;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_BYTE;
+import static org.lwjgl.opengl.GL11.glReadPixels;
+import static org.lwjgl.opengl.GL15.GL_STREAM_READ;
+import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL15.glUnmapBuffer;
+import static org.lwjgl.opengl.GL21.GL_PIXEL_PACK_BUFFER;
+import static org.lwjgl.opengl.GL30.GL_MAP_READ_BIT;
+import static org.lwjgl.opengl.GL30.glMapBufferRange;
+import static org.lwjgl.opengl.GL32.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.lwjgl.stb.STBImageWrite;
+
+/**
+ * Records the window contents without stalling the render loop.
+ *
+ * capture() issues glReadPixels into the next pixel buffer object of a small
+ * ring and places a fence behind it, so the copy runs on the GPU while the next
+ * frame renders. Later calls poll the fences without waiting; a finished buffer
+ * is mapped, copied into a pooled direct buffer and handed to encoder threads,
+ * which write it out as:
+ *
+ *   RAW     one frame_NNNNNN.rgba file per frame
+ *   PNG     one frame_NNNNNN.png file per frame
+ *   STREAM  all frames back to back in capture.rgba, written at their own
+ *           offsets so encoders may finish out of order
+ *
+ * Raw frames are RGBA, bottom row first as glReadPixels returns them, e.g.
+ *   ffmpeg -f rawvideo -pix_fmt rgba -s WxH -r 60 -i capture.rgba -vf vflip out.mp4
+ *
+ * The pool of copy buffers bounds the frames waiting for an encoder. When it
+ * runs dry, capture() waits for an encoder rather than dropping frames; see
+ * getStalls(). All methods except the getters must be called on the GL thread.
+ */
+public class FrameCapture implements AutoCloseable
+{
+    public enum Format
+    {
+        RAW,
+        PNG,
+        STREAM
+    }
+
+    private static final int RING_SIZE = 3;          // Frames in flight on the GPU
+    private static final int QUEUED_FRAMES = 8;      // Frames waiting for or in an encoder
+
+    private final int WIDTH;
+    private final int HEIGHT;
+    private final int FRAME_BYTES;
+    private final Path directory;
+    private final Format format;
+
+    // GPU side: one pixel buffer and fence per ring slot
+    private final int[] pixelBuffers = new int[RING_SIZE];
+    private final long[] fences = new long[RING_SIZE];
+    private final long[] slotFrames = new long[RING_SIZE];
+    private long issued = 0;      // Frames read into a pixel buffer
+    private long collected = 0;   // Frames copied out of their pixel buffer
+
+    // CPU side
+    private final BlockingQueue<ByteBuffer> freeBuffers;
+    private final ExecutorService encoders;
+    private final FileChannel stream;
+
+    private final AtomicLong written = new AtomicLong();
+    private long stalls = 0;
+    private volatile Throwable failure = null;   // First encoder error, reported by capture() and close()
+
+    public FrameCapture(int width, int height, Path directory, Format format) throws IOException
+    {
+        this(width, height, directory, format, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    public FrameCapture(int width, int height, Path directory, Format format, int encoderThreads) throws IOException
+    {
+        WIDTH = width;
+        HEIGHT = height;
+        FRAME_BYTES = width * height * 4;
+        this.directory = directory;
+        this.format = format;
+
+        Files.createDirectories(directory);
+        stream = format == Format.STREAM
+            ? FileChannel.open(directory.resolve("capture.rgba"), StandardOpenOption.CREATE,
+                               StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+            : null;
+        if (format == Format.PNG)
+            STBImageWrite.stbi_flip_vertically_on_write(true);
+
+        freeBuffers = new ArrayBlockingQueue<>(QUEUED_FRAMES);
+        for (int i = 0; i < QUEUED_FRAMES; i++)
+            freeBuffers.add(ByteBuffer.allocateDirect(FRAME_BYTES));
+
+        encoders = Executors.newFixedThreadPool(encoderThreads, task ->
+        {
+            Thread thread = new Thread(task, "frame-encoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        glGenBuffers(pixelBuffers);
+        for (int buffer : pixelBuffers)
+        {
+            glBindBuffer(GL_PIXEL_PACK_BUFFER, buffer);
+            glBufferData(GL_PIXEL_PACK_BUFFER, FRAME_BYTES, GL_STREAM_READ);
+        }
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+    }
+
+    // --- Capture --- //
+
+    /**
+     * Starts the read-back of the current draw framebuffer and collects every
+     * earlier frame whose copy has finished. Call after drawing, before swapping.
+     *
+     * @throws IllegalStateException If an encoder has failed.
+     */
+    public void capture()
+    {
+        if (failure != null)
+            throw new IllegalStateException("Frame encoding failed.", failure);
+
+        // The slot we are about to reuse must be collected first, waiting if needed
+        if (issued - collected == RING_SIZE)
+            collect(true);
+
+        int slot = (int) (issued % RING_SIZE);
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, pixelBuffers[slot]);
+        glReadPixels(0, 0, WIDTH, HEIGHT, GL_RGBA, GL_UNSIGNED_BYTE, 0);
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+        fences[slot] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        slotFrames[slot] = issued++;
+
+        // Hand over whatever the GPU has finished, oldest first, without blocking
+        while (collected < issued && collect(false))
+            ;
+    }
+
+    // Copies the oldest frame in flight out of its pixel buffer; returns false if it is not ready
+    private boolean collect(boolean wait)
+    {
+        int slot = (int) (collected % RING_SIZE);
+        int flags = wait ? GL_SYNC_FLUSH_COMMANDS_BIT : 0;
+        long timeout = wait ? TimeUnit.SECONDS.toNanos(1) : 0;
+
+        int status;
+        do
+        {
+            status = glClientWaitSync(fences[slot], flags, timeout);
+            if (status == GL_WAIT_FAILED)
+                throw new IllegalStateException("Waiting for a capture fence failed.");
+        }
+        while (wait && status == GL_TIMEOUT_EXPIRED);
+
+        if (status == GL_TIMEOUT_EXPIRED)
+            return false;
+
+        glDeleteSync(fences[slot]);
+        fences[slot] = 0;
+
+        ByteBuffer frame = freeBuffers.poll();
+        if (frame == null)
+        {
+            // Encoders are behind: apply back-pressure instead of dropping the frame
+            stalls++;
+            try
+            {
+                frame = freeBuffers.take();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for an encoder.", e);
+            }
+        }
+
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, pixelBuffers[slot]);
+        ByteBuffer mapped = glMapBufferRange(GL_PIXEL_PACK_BUFFER, 0, FRAME_BYTES, GL_MAP_READ_BIT);
+        if (mapped == null)
+            throw new IllegalStateException("Unable to map a capture buffer.");
+        frame.clear();
+        frame.put(mapped).flip();
+        glUnmapBuffer(GL_PIXEL_PACK_BUFFER);
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+
+        long number = slotFrames[slot];
+        ByteBuffer pixels = frame;
+        encoders.execute(() -> encode(number, pixels));
+        collected++;
+        return true;
+    }
+
+    // --- Encoding --- //
+
+    // Runs on an encoder thread; returns the buffer to the pool when done
+    private void encode(long number, ByteBuffer pixels)
+    {
+        try
+        {
+            switch (format)
+            {
+                case RAW:
+                    try (FileChannel channel = FileChannel.open(framePath(number, "rgba"), StandardOpenOption.CREATE,
+                                                                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+                    {
+                        writeFully(channel, pixels, 0);
+                    }
+                    break;
+
+                case PNG:
+                    if (!STBImageWrite.stbi_write_png(framePath(number, "png").toString(), WIDTH, HEIGHT, 4, pixels, WIDTH * 4))
+                        throw new IOException("Unable to write " + framePath(number, "png"));
+                    break;
+
+                case STREAM:
+                    writeFully(stream, pixels, number * FRAME_BYTES);
+                    break;
+            }
+            written.incrementAndGet();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // Anything thrown here would vanish into the executor, so keep it for the render thread
+            if (failure == null)
+                failure = e;
+        }
+        finally
+        {
+            freeBuffers.add(pixels);
+        }
+    }
+
+    private Path framePath(long number, String extension)
+    {
+        return directory.resolve(String.format("frame_%06d.%s", number, extension));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        long offset = position;
+        while (buffer.hasRemaining())
+            offset += channel.write(buffer, offset);
+    }
+
+    // --- Getters --- //
+
+    // Frames read back from the GPU so far
+    public long getCapturedFrames()
+    {
+        return issued;
+    }
+
+    // Frames fully written to disk
+    public long getWrittenFrames()
+    {
+        return written.get();
+    }
+
+    // Times capture() had to wait for an encoder to free a buffer
+    public long getStalls()
+    {
+        return stalls;
+    }
+
+    // --- Cleanup --- //
+
+    /**
+     * Collects the frames still on the GPU, waits for the encoders and releases
+     * the pixel buffers.
+     *
+     * @throws IOException If any frame could not be written.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            while (collected < issued)
+                collect(true);
+
+            encoders.shutdown();
+            if (!encoders.awaitTermination(1, TimeUnit.MINUTES))
+                throw new IOException("Frame encoders did not finish.");
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while finishing the capture.", e);
+        }
+        finally
+        {
+            encoders.shutdownNow();
+            glDeleteBuffers(pixelBuffers);
+            if (stream != null)
+                stream.close();
+        }
+
+        if (failure instanceof IOException)
+            throw (IOException) failure;
+        if (failure != null)
+            throw new IOException("Frame encoding failed.", failure);
+    }
+}
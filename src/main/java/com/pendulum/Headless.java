@@ -0,0 +1,521 @@
+package com.pendulum;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Batch simulation without a window or OpenGL context.
+ *
+ * Drives a Pendulum at full speed from the command line and reports the step
+ * rate and wall time. Only the simulation classes are referenced here, so LWJGL
+ * and its native libraries are never loaded and the runner works on machines
+ * without a display.
+ *
+ * Example:
+ *   java -cp pendulum.jar com.pendulum.Headless --segments 20 --steps 1000000 --output run.csv --every 100
+ */
+public class Headless
+{
+    private static final String USAGE = String.join(System.lineSeparator(),
+        "Usage: com.pendulum.Headless [options]",
+        "  --segments N        Number of segments (default 20)",
+        "  --dt SECONDS        Time step (default 0.0025)",
+        "  --steps COUNT       Number of steps to run (default 100000)",
+        "  --angle RADIANS     Initial angle of every segment (default pi/2)",
+        "  --angles A,B,...    Initial angle of each segment, one per segment",
+        "  --masses A,B,...    Mass of the bob at the end of each segment (default all 1)",
+        "  --lengths A,B,...   Length of each segment (default all 1)",
+        "  --solver NAME       gaussian | cholesky | articulated (default cholesky)",
+        "  --integrator NAME   leapfrog | yoshida4 | yoshida6 | forest-ruth (default yoshida4)",
+        "  --tolerance TOL     Adaptive substeps within each step, sized for a relative energy",
+        "                      error near TOL (default 0, fixed steps)",
+        "  --output SINK       none | stdout | path of a CSV file (default none)",
+        "  --every K           Write every K-th step to the output and recording (default 1)",
+        "  --record PATH       Record the trajectory to a binary file",
+        "  --encoding NAME     raw | quantized | delta, for --record (default delta)",
+        "  --endpoints         Also record the joint positions",
+        "  --julia PATH        Render the Julia set of the final state to a PNG",
+        "  --julia-size WxH    Image size for --julia (default 1280x720)",
+        "  --checkpoint PATH   Save the final state to a checkpoint file",
+        "  --restore PATH      Continue from a checkpoint; its segments, masses, lengths, time",
+        "                      step, solver, integrator and tolerance replace the options",
+        "  --lyapunov K        Also estimate the K largest Lyapunov exponents, 1 to 2 * segments;",
+        "                      the estimator then advances the run itself, which needs",
+        "                      --integrator leapfrog, the cholesky solver and fixed steps",
+        "  --help              Print this message");
+
+    // --- Options --- //
+
+    private int segments = 20;
+    private double deltaTime = 0.0025;
+    private long steps = 100_000;
+    private double initialAngle = Math.PI / 2;
+    private double[] initialAngles = null;
+    private double[] masses = null;
+    private double[] lengths = null;
+    private Pendulum.Solver solver = Pendulum.Solver.CHOLESKY;
+    private Integrator integrator = Integrator.YOSHIDA4;
+    private double tolerance = 0;
+    private String output = "none";
+    private long every = 1;
+    private String record = null;
+    private TrajectoryWriter.Encoding encoding = TrajectoryWriter.Encoding.DELTA;
+    private boolean endPoints = false;
+    private String julia = null;
+    private int juliaWidth = 1280;
+    private int juliaHeight = 720;
+    private int lyapunov = 0;
+    private String checkpoint = null;
+    private String restore = null;
+
+    public static void main(String[] args)
+    {
+        Headless runner = new Headless();
+        try
+        {
+            runner.parse(args);
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        try
+        {
+            runner.run();
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private void parse(String[] args)
+    {
+        for (int i = 0; i < args.length; i++)
+        {
+            String option = args[i];
+            if (option.equals("--help"))
+            {
+                System.out.println(USAGE);
+                System.exit(0);
+            }
+            if (option.equals("--endpoints"))
+            {
+                endPoints = true;
+                continue;
+            }
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException("Missing value for " + option);
+
+            String value = args[++i];
+            switch (option)
+            {
+                case "--segments":   segments = parsePositiveInt(option, value); break;
+                case "--dt":         deltaTime = parseDouble(option, value); break;
+                case "--steps":      steps = parsePositiveLong(option, value); break;
+                case "--angle":      initialAngle = parseDouble(option, value); break;
+                case "--angles":     initialAngles = parseList(option, value); break;
+                case "--masses":     masses = parseList(option, value); break;
+                case "--lengths":    lengths = parseList(option, value); break;
+                case "--solver":     solver = parseSolver(value); break;
+                case "--integrator": integrator = Integrator.forName(value); break;
+                case "--tolerance":  tolerance = parseDouble(option, value); break;
+                case "--output":     output = value; break;
+                case "--every":      every = parsePositiveLong(option, value); break;
+                case "--record":     record = value; break;
+                case "--encoding":   encoding = parseEncoding(value); break;
+                case "--julia":      julia = value; break;
+                case "--julia-size": parseSize(option, value); break;
+                case "--lyapunov":   lyapunov = parsePositiveInt(option, value); break;
+                case "--checkpoint": checkpoint = value; break;
+                case "--restore":    restore = value; break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+
+        if (initialAngles != null && initialAngles.length != segments)
+            throw new IllegalArgumentException("--angles needs " + segments + " values, got " + initialAngles.length);
+        masses = checkChain("--masses", masses);
+        lengths = checkChain("--lengths", lengths);
+        if (!(deltaTime > 0))
+            throw new IllegalArgumentException("--dt must be positive");
+        if (!(tolerance >= 0))
+            throw new IllegalArgumentException("--tolerance must not be negative");
+        if (restore == null && lyapunov > 2 * segments)
+            throw new IllegalArgumentException("--lyapunov must be at most " + 2 * segments);
+
+        if (restore == null && lyapunov > 0)
+            checkLyapunovRun();
+    }
+
+    /**
+     * The estimator steps the chain exactly like Pendulum with these settings and
+     * nothing else. The leapfrog integrator is not picked silently: at the default
+     * step it drifts far more than yoshida4, so a run has to ask for it and choose
+     * its --dt with that in mind.
+     */
+    private void checkLyapunovRun()
+    {
+        if (integrator != Integrator.LEAPFROG || solver != Pendulum.Solver.CHOLESKY || tolerance > 0)
+            throw new IllegalArgumentException("--lyapunov advances the run with --integrator leapfrog and the "
+                                               + "cholesky solver at fixed steps; got " + integrator.getName() + ", "
+                                               + solver.name().toLowerCase(Locale.ROOT)
+                                               + (tolerance > 0 ? ", --tolerance " + tolerance : ""));
+    }
+
+    // --- Simulation --- //
+
+    private void run() throws IOException
+    {
+        Pendulum pendulum;
+        long firstStep = 0;
+        double firstTime = 0;
+        if (restore != null)
+        {
+            Checkpoint restored = Checkpoint.read(Paths.get(restore));
+            if (restored.getKind() != Checkpoint.Kind.PENDULUM)
+                throw new IOException("Checkpoint " + restore + " does not hold a single pendulum");
+            pendulum = restored.createPendulum();
+            firstStep = restored.getSteps();
+            firstTime = restored.getSimulationTime();
+
+            // The checkpoint decides what runs; keep the report and the output in line with it
+            segments = pendulum.getNumPendulums();
+            deltaTime = pendulum.getDeltaTime();
+            solver = pendulum.getSolver();
+            integrator = pendulum.getIntegrator();
+            tolerance = pendulum.getEnergyTolerance();
+            masses = pendulum.getMasses();
+            lengths = pendulum.getLengths();
+        }
+        else
+        {
+            pendulum = new Pendulum(masses, lengths, deltaTime, initialAngle, solver, integrator);
+            if (initialAngles != null)
+                pendulum.setAngles(initialAngles);
+            pendulum.setEnergyTolerance(tolerance);
+        }
+        if (lyapunov > 2 * segments)
+            throw new IOException("--lyapunov must be at most " + 2 * segments + " for the restored pendulum");
+
+        double[] angles = new double[segments];
+        double[] velocities = new double[segments];
+
+        // With --lyapunov the estimator carries the state and its tangents through every step once
+        LyapunovEstimator estimator = null;
+        if (lyapunov > 0)
+        {
+            if (restore != null)
+            {
+                try
+                {
+                    checkLyapunovRun();
+                }
+                catch (IllegalArgumentException e)
+                {
+                    throw new IOException(e.getMessage() + " from the restored pendulum");
+                }
+            }
+            estimator = new LyapunovEstimator(masses, lengths, deltaTime, 0, lyapunov, 10);
+            pendulum.getAngles(angles);
+            pendulum.getAngularVelocities(velocities);
+            estimator.setAngles(angles);
+            estimator.setAngularVelocities(velocities);
+        }
+
+        try (Writer writer = openOutput(); TrajectoryWriter recorder = openRecorder())
+        {
+            if (writer != null)
+                writeHeader(writer);
+            if (recorder != null)
+                recorder.append(pendulum);
+
+            double peakDrift = 0;   // Largest |drift| at the output steps
+            long start = System.nanoTime();
+            for (long step = 1; step <= steps; step++)
+            {
+                if (estimator != null)
+                    estimator.step(1);
+                else
+                    pendulum.update();
+
+                if (step % every != 0)
+                    continue;
+
+                if (estimator != null)
+                    syncPendulum(estimator, pendulum, angles, velocities);
+                peakDrift = Math.max(peakDrift, Math.abs(pendulum.getEnergyDrift()));
+                if (writer != null)
+                {
+                    pendulum.getAngles(angles);
+                    pendulum.getAngularVelocities(velocities);
+                    writeRow(writer, firstStep + step, firstTime + step * deltaTime, angles, velocities);
+                }
+                if (recorder != null)
+                    recorder.append(pendulum);
+            }
+            if (estimator != null)
+                syncPendulum(estimator, pendulum, angles, velocities);
+            long elapsed = System.nanoTime() - start;
+
+            if (writer != null)
+                writer.flush();
+
+            report(pendulum, elapsed, peakDrift);
+        }
+
+        if (checkpoint != null)
+            writeCheckpoint(pendulum, firstStep + steps, firstTime + steps * deltaTime);
+        if (julia != null)
+            renderJulia(pendulum);
+        if (estimator != null)
+            reportLyapunov(estimator);
+    }
+
+    // Hands the estimator's state to the pendulum for output, checkpoints and the report
+    private static void syncPendulum(LyapunovEstimator estimator, Pendulum pendulum, double[] angles,
+                                     double[] velocities)
+    {
+        estimator.getAngles(angles);
+        estimator.getAngularVelocities(velocities);
+        pendulum.continueFrom(angles, velocities);
+    }
+
+    private void writeCheckpoint(Pendulum pendulum, long totalSteps, double simulationTime) throws IOException
+    {
+        long start = System.nanoTime();
+        Checkpoint saved = Checkpoint.capture(pendulum, simulationTime, totalSteps, null);
+        saved.write(Paths.get(checkpoint));
+        long elapsed = System.nanoTime() - start;
+
+        PrintStream out = output.equals("stdout") ? System.err : System.out;
+        out.printf(Locale.ROOT, "checkpoint: %d bytes at step %d in %.2f ms%n", saved.getBytes(), totalSteps,
+                   elapsed * 1e-6);
+    }
+
+    // The exponents of the trajectory the run just produced; the wall time above includes the tangents
+    private void reportLyapunov(LyapunovEstimator estimator)
+    {
+        double[] exponents = new double[lyapunov];
+        estimator.getExponents(exponents);
+
+        PrintStream out = output.equals("stdout") ? System.err : System.out;
+        out.printf(Locale.ROOT, "lyapunov: exponents (1/s):");
+        for (double exponent : exponents)
+            out.printf(Locale.ROOT, " %.5f", exponent);
+        out.println();
+    }
+
+    // Renders the background Main would draw for the final state
+    private void renderJulia(Pendulum pendulum) throws IOException
+    {
+        double[][] coordinates = pendulum.getEndPointCoordinates();
+        double[] tip = coordinates[coordinates.length - 1];
+
+        JuliaRenderer renderer = new JuliaRenderer(juliaWidth, juliaHeight);
+        try
+        {
+            renderer.setVectorized(true);
+            long start = System.nanoTime();
+            double length = 0;
+            for (double l : lengths)
+                length += l;
+            renderer.renderForTip(tip[0], tip[1], length);
+            long elapsed = System.nanoTime() - start;
+            renderer.writePng(Paths.get(julia));
+
+            PrintStream out = output.equals("stdout") ? System.err : System.out;
+            out.printf(Locale.ROOT, "julia: %dx%d in %.1f ms%s%n", juliaWidth, juliaHeight, elapsed * 1e-6,
+                       renderer.isVectorized() ? " (simd)" : "");
+        }
+        finally
+        {
+            renderer.shutdown();
+        }
+    }
+
+    private void report(Pendulum pendulum, long elapsedNanos, double peakDrift)
+    {
+        double seconds = elapsedNanos * 1e-9;
+        // Keep stdout clean when it carries the trajectory
+        PrintStream out = output.equals("stdout") ? System.err : System.out;
+        out.printf(Locale.ROOT, "segments=%d solver=%s integrator=%s dt=%g steps=%d%n",
+                   segments, solver.name().toLowerCase(Locale.ROOT), integrator.getName(), deltaTime, steps);
+        out.printf(Locale.ROOT, "wall time: %.3f s, %.1f steps/s, simulated %.3f s%n",
+                   seconds, steps / seconds, steps * deltaTime);
+        if (tolerance > 0)
+            out.printf(Locale.ROOT, "substeps: %d accepted, %d rejected, last %g s%n",
+                       pendulum.getAcceptedSteps(), pendulum.getRejectedSteps(), pendulum.getStepSize());
+        if (lyapunov == 0)   // Otherwise the estimator steps the chain, not the pendulum
+            out.printf(Locale.ROOT, "solver calls: %d, %.1f per simulated second%n", pendulum.getSolverCalls(),
+                       pendulum.getSolverCalls() / (steps * deltaTime));
+        out.printf(Locale.ROOT, "energy drift: %.3e, peak %.3e%n", pendulum.getEnergyDrift(),
+                   Math.max(peakDrift, Math.abs(pendulum.getEnergyDrift())));
+        if (pendulum.getUnconvergedStages() > 0)
+            out.printf(Locale.ROOT, "warning: %d integrator stages did not converge; reduce --dt%n",
+                       pendulum.getUnconvergedStages());
+    }
+
+    // --- Output --- //
+
+    private Writer openOutput() throws IOException
+    {
+        switch (output)
+        {
+            case "none":
+                return null;
+            case "stdout":
+                return new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16)
+                {
+                    // Leave System.out open for the report
+                    @Override
+                    public void close() throws IOException
+                    {
+                        flush();
+                    }
+                };
+            default:
+                return Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8);
+        }
+    }
+
+    private TrajectoryWriter openRecorder() throws IOException
+    {
+        if (record == null)
+            return null;
+        return new TrajectoryWriter(Paths.get(record), lengths, every * deltaTime, encoding, endPoints);
+    }
+
+    private void writeHeader(Writer writer) throws IOException
+    {
+        StringBuilder line = new StringBuilder("step,time");
+        for (int i = 0; i < segments; i++)
+            line.append(",angle").append(i);
+        for (int i = 0; i < segments; i++)
+            line.append(",velocity").append(i);
+        writer.write(line.append('\n').toString());
+    }
+
+    private void writeRow(Writer writer, long step, double time, double[] angles, double[] velocities)
+        throws IOException
+    {
+        StringBuilder line = new StringBuilder();
+        line.append(step).append(',').append(time);
+        for (double a : angles)
+            line.append(',').append(a);
+        for (double v : velocities)
+            line.append(',').append(v);
+        writer.write(line.append('\n').toString());
+    }
+
+    // --- Parsing helpers --- //
+
+    static int parsePositiveInt(String option, String value)
+    {
+        long parsed = parsePositiveLong(option, value);
+        if (parsed > Integer.MAX_VALUE)
+            throw new IllegalArgumentException(option + " is too large: " + value);
+        return (int) parsed;
+    }
+
+    static long parsePositiveLong(String option, String value)
+    {
+        try
+        {
+            long parsed = Long.parseLong(value);
+            if (parsed <= 0)
+                throw new IllegalArgumentException(option + " must be positive: " + value);
+            return parsed;
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException(option + " expects an integer: " + value);
+        }
+    }
+
+    static double parseDouble(String option, String value)
+    {
+        try
+        {
+            return Double.parseDouble(value);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException(option + " expects a number: " + value);
+        }
+    }
+
+    // Checks a per-segment list against the segment count; all ones when not given
+    private double[] checkChain(String option, double[] values)
+    {
+        if (values == null)
+        {
+            values = new double[segments];
+            Arrays.fill(values, 1);
+            return values;
+        }
+        if (values.length != segments)
+            throw new IllegalArgumentException(option + " needs " + segments + " values, got " + values.length);
+        for (double value : values)
+        {
+            if (!(value > 0) || Double.isInfinite(value))
+                throw new IllegalArgumentException(option + " values must be positive and finite");
+        }
+        return values;
+    }
+
+    private static double[] parseList(String option, String value)
+    {
+        String[] parts = value.split(",");
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++)
+            values[i] = parseDouble(option, parts[i].trim());
+        return values;
+    }
+
+    private void parseSize(String option, String value)
+    {
+        String[] parts = value.toLowerCase(Locale.ROOT).split("x");
+        if (parts.length != 2)
+            throw new IllegalArgumentException(option + " expects WIDTHxHEIGHT: " + value);
+        juliaWidth = parsePositiveInt(option, parts[0].trim());
+        juliaHeight = parsePositiveInt(option, parts[1].trim());
+    }
+
+    private static TrajectoryWriter.Encoding parseEncoding(String value)
+    {
+        try
+        {
+            return TrajectoryWriter.Encoding.valueOf(value.toUpperCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException("Unknown encoding: " + value);
+        }
+    }
+
+    static Pendulum.Solver parseSolver(String value)
+    {
+        try
+        {
+            return Pendulum.Solver.valueOf(value.toUpperCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException("Unknown solver: " + value);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.pendulum;
+
+/**
+ * Time-stepping scheme used to advance a chain by one step.
+ *
+ * Integrators are stateless and may be shared between chains and threads; all
+ * scratch memory comes from the SolverWorkspace passed to step().
+ */
+public interface Integrator
+{
+    // The original leapfrog, unchanged; first order, as the forces depend on the velocities
+    Integrator LEAPFROG = new LeapfrogIntegrator();
+
+    // Yoshida's 4th-order triple jump, 3 velocity-form stages
+    Integrator YOSHIDA4 = ReversibleComposition.yoshida4();
+
+    // Yoshida's 6th-order composition (solution A), 7 velocity-form stages
+    Integrator YOSHIDA6 = ReversibleComposition.yoshida6();
+
+    // Forest and Ruth's 4th-order scheme, 3 position-form stages
+    Integrator FOREST_RUTH = ReversibleComposition.forestRuth();
+
+    // Looks up one of the built-in schemes by its getName()
+    static Integrator forName(String name)
+    {
+        for (Integrator integrator : new Integrator[] { LEAPFROG, YOSHIDA4, YOSHIDA6, FOREST_RUTH })
+        {
+            if (integrator.getName().equalsIgnoreCase(name))
+                return integrator;
+        }
+        throw new IllegalArgumentException("Unknown integrator: " + name);
+    }
+
+    // Human-readable name of the scheme
+    String getName();
+
+    // Order of accuracy of the scheme
+    int getOrder();
+
+    /**
+     * Advances angles and angular velocities in place by one step of deltaTime.
+     */
+    void step(ChainDynamics dynamics, double[] angles, double[] angularVelocities, double deltaTime,
+              SolverWorkspace workspace);
+}
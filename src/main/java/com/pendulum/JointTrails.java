@@ -0,0 +1,173 @@
+package com.pendulum;
+
+import static org.lwjgl.opengl.GL11.GL_LINE_STRIP;
+import static org.lwjgl.opengl.GL11.glBindTexture;
+import static org.lwjgl.opengl.GL11.glDeleteTextures;
+import static org.lwjgl.opengl.GL11.glGenTextures;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL15.GL_DYNAMIC_DRAW;
+import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glBufferSubData;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL30.GL_RG32F;
+import static org.lwjgl.opengl.GL30.glBindVertexArray;
+import static org.lwjgl.opengl.GL30.glDeleteVertexArrays;
+import static org.lwjgl.opengl.GL30.glGenVertexArrays;
+import static org.lwjgl.opengl.GL31.GL_TEXTURE_BUFFER;
+import static org.lwjgl.opengl.GL31.glDrawArraysInstanced;
+import static org.lwjgl.opengl.GL31.glTexBuffer;
+
+/**
+ * Fading trails for every moving joint of the chain, each in its own colour.
+ *
+ * All trails share one history buffer holding the last LENGTH samples of every
+ * joint, slot-major (history[slot * joints + joint]), exposed to trail.vert as
+ * a buffer texture. push() uploads one slot per frame. render() issues a single
+ * instanced line-strip draw: instance j is joint j, and vertex i fetches the
+ * i-th oldest sample of that joint, so the ring wraps inside the shader and the
+ * draw call count does not depend on the number of joints or samples.
+ */
+public class JointTrails
+{
+    private final int JOINTS;   // Joints with a trail, the pivot excluded
+    private final int LENGTH;   // Samples per trail
+
+    private final Shader shader;
+    private final int vaoId;        // Empty, core profile needs one bound to draw
+    private final int bufferId;
+    private final int textureId;
+    private final float[] slot;     // Scratch for one slot
+    private final float[] history;  // Copy of the history buffer for checkpoints
+
+    private final Uniform.Int1 headUniform;
+    private final Uniform.Int1 countUniform;
+    private final Uniform.Float1 alphaUniform;
+
+    private int head = -1;
+    private int count = 0;
+
+    /**
+     * @param joints Joints to trail, i.e. the number of segments.
+     * @param length Samples kept per joint.
+     */
+    public JointTrails(int joints, int length)
+    {
+        if (joints < 1 || length < 2)
+            throw new IllegalArgumentException("Trails need at least one joint and two samples.");
+
+        JOINTS = joints;
+        LENGTH = length;
+        slot = new float[joints * 2];
+        history = new float[length * joints * 2];
+
+        shader = new Shader("trail");
+        shader.compile();
+
+        // Constant uniforms are set once; u_projection comes from the Frame block
+        shader.bind();
+        shader.getUniform1i("u_history").set(0);
+        shader.getUniform1i("u_joints").set(joints);
+        shader.getUniform1i("u_length").set(length);
+        shader.unbind();
+        headUniform = shader.getUniform1i("u_head");
+        countUniform = shader.getUniform1i("u_count");
+        alphaUniform = shader.getUniform1f("u_alpha");
+
+        vaoId = glGenVertexArrays();
+
+        bufferId = glGenBuffers();
+        glBindBuffer(GL_TEXTURE_BUFFER, bufferId);
+        glBufferData(GL_TEXTURE_BUFFER, (long) length * joints * 2 * Float.BYTES, GL_DYNAMIC_DRAW);
+        glBindBuffer(GL_TEXTURE_BUFFER, 0);
+
+        textureId = glGenTextures();
+        glBindTexture(GL_TEXTURE_BUFFER, textureId);
+        glTexBuffer(GL_TEXTURE_BUFFER, GL_RG32F, bufferId);
+        glBindTexture(GL_TEXTURE_BUFFER, 0);
+    }
+
+    /**
+     * Appends the current joint positions, overwriting the oldest slot once full.
+     *
+     * @param coords coords[i] = {x, y} with the fixed pivot at index 0, as
+     *               filled by PhysicsThread.readInterpolated.
+     */
+    public void push(double[][] coords)
+    {
+        head = (head + 1) % LENGTH;
+        count = Math.min(count + 1, LENGTH);
+
+        for (int j = 0; j < JOINTS; j++)
+        {
+            slot[2 * j] = (float) coords[j + 1][0];
+            slot[2 * j + 1] = (float) coords[j + 1][1];
+        }
+
+        System.arraycopy(slot, 0, history, head * slot.length, slot.length);
+
+        glBindBuffer(GL_TEXTURE_BUFFER, bufferId);
+        glBufferSubData(GL_TEXTURE_BUFFER, (long) head * JOINTS * 2 * Float.BYTES, slot);
+        glBindBuffer(GL_TEXTURE_BUFFER, 0);
+    }
+
+    // Draws every trail in one instanced draw call
+    public void render(float alpha)
+    {
+        if (count < 2)
+            return;
+
+        shader.bind();
+        headUniform.set(head);
+        countUniform.set(count);
+        alphaUniform.set(alpha);
+
+        glActiveTexture(GL_TEXTURE0);
+        glBindTexture(GL_TEXTURE_BUFFER, textureId);
+        glBindVertexArray(vaoId);
+        glDrawArraysInstanced(GL_LINE_STRIP, 0, count, JOINTS);
+        glBindVertexArray(0);
+        glBindTexture(GL_TEXTURE_BUFFER, 0);
+
+        shader.unbind();
+    }
+
+    // Forgets every sample
+    public void clear()
+    {
+        head = -1;
+        count = 0;
+    }
+
+    // Copies the history for a checkpoint
+    public Checkpoint.Trail saveTrail()
+    {
+        return new Checkpoint.Trail(JOINTS, LENGTH, head, count, history.clone());
+    }
+
+    // Replaces the history with a saved one of the same shape, re-uploading every slot
+    public void restoreTrail(Checkpoint.Trail trail)
+    {
+        if (trail.getJoints() != JOINTS || trail.getLength() != LENGTH)
+            throw new IllegalArgumentException("Trail of " + trail.getJoints() + " x " + trail.getLength()
+                                               + " samples does not fit " + JOINTS + " x " + LENGTH);
+
+        System.arraycopy(trail.getHistory(), 0, history, 0, history.length);
+        head = trail.getHead();
+        count = trail.getCount();
+
+        glBindBuffer(GL_TEXTURE_BUFFER, bufferId);
+        glBufferSubData(GL_TEXTURE_BUFFER, 0, history);
+        glBindBuffer(GL_TEXTURE_BUFFER, 0);
+    }
+
+    public void cleanup()
+    {
+        glDeleteTextures(textureId);
+        glDeleteBuffers(bufferId);
+        glDeleteVertexArrays(vaoId);
+        shader.delete();
+    }
+}
@@ -0,0 +1,21 @@
+package com.pendulum;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A specialised routine that shades a horizontal run of Julia set pixels.
+ *
+ * Kernels write into the pixel buffer of a JuliaRenderer and may only handle
+ * part of the run they are given, for example whole groups of SIMD lanes. The
+ * renderer shades whatever is left with the scalar path.
+ */
+interface JuliaKernel
+{
+    /**
+     * Shades pixels [first, last) of row y.
+     *
+     * @param pixels Pixel buffer of the renderer, RGBA, bottom row first.
+     * @return The first pixel that was not shaded; pixels from there to last remain.
+     */
+    int shade(ByteBuffer pixels, int width, int height, int y, int first, int last, float cReal, float cImag);
+}
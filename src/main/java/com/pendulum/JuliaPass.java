@@ -0,0 +1,294 @@
+package com.pendulum;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.glBeginQuery;
+import static org.lwjgl.opengl.GL15.glDeleteQueries;
+import static org.lwjgl.opengl.GL15.glEndQuery;
+import static org.lwjgl.opengl.GL15.glGenQueries;
+import static org.lwjgl.opengl.GL15.glGetQueryObjecti;
+import static org.lwjgl.opengl.GL15.GL_QUERY_RESULT;
+import static org.lwjgl.opengl.GL15.GL_QUERY_RESULT_AVAILABLE;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL33.GL_TIME_ELAPSED;
+import static org.lwjgl.opengl.GL33.glGetQueryObjecti64;
+
+/**
+ * Renders the Julia background, optionally at a reduced resolution and
+ * iteration cap chosen to hold a GPU time budget.
+ *
+ * In adaptive mode the fractal is drawn into the lower-left part of an
+ * offscreen framebuffer the size of the window and stretched onto the screen
+ * with a linear blit, so the pendulum drawn afterwards keeps native resolution.
+ * A single quality level between 0 and 1 sets both the scale and u_max_iter. It
+ * is driven by GL_TIME_ELAPSED queries on the whole pass, blit included, read
+ * back a frame late so the CPU never waits for the GPU: quality drops quickly
+ * when the pass exceeds its GPU time budget and recovers slowly while there is
+ * headroom. The budget is a share of the frame rather than the frame time itself,
+ * which vsync pins to the refresh interval whatever the pass costs.
+ *
+ * While u_c is nearly still, each frame re-renders one refinement step closer
+ * to full resolution and 300 iterations; once there, the cached image is only
+ * blitted until u_c moves again.
+ */
+public class JuliaPass
+{
+    private static final int MAX_ITERATIONS = 300;   // max_iter in julia.frag
+    private static final int MIN_ITERATIONS = 64;
+    private static final float MIN_SCALE = 0.25f;
+
+    // Quality control
+    private static final double DEFAULT_BUDGET_MILLIS = 6.0;   // GPU time of the pass, about a third of a 60 Hz frame
+    private static final float QUALITY_UP = 0.02f;       // Per frame with headroom
+    private static final float QUALITY_DOWN = 0.25f;     // Per relative overshoot
+    private static final double HEADROOM = 0.75;         // Fraction of the budget below which quality rises
+
+    // Refinement while u_c is still
+    private static final float STILL_EPSILON = 1e-4f;
+    private static final float REFINE_STEP = 0.25f;      // Quality added per refinement frame
+
+    private final Shader shader;
+    private final Uniform.Float2 cUniform;
+    private final Uniform.Float2 resolutionUniform;
+    private final Uniform.Int1 maxIterUniform;
+    private final Quad quad;
+    private final int WIDTH;
+    private final int HEIGHT;
+
+    // Offscreen target, allocated once at window size
+    private final int framebuffer;
+    private final int texture;
+
+    // Two timer queries used alternately, so last frame's result is ready
+    private final int[] queries = new int[2];
+    private final boolean[] pending = new boolean[2];
+    private final boolean[] adaptiveQuery = new boolean[2];
+    private int frame = 0;
+
+    private boolean adaptive = true;
+    private double budgetMillis = DEFAULT_BUDGET_MILLIS;
+    private double lastPassMillis = 0;
+    private Metrics metrics;              // Receives every measured pass, or null
+
+    private float quality = 1.0f;         // Level chosen by the GPU-time controller
+    private float renderedQuality = -1;   // Level of the cached image, -1 if none
+    private float lastReal = Float.NaN;
+    private float lastImag = Float.NaN;
+    private int renderedWidth;
+    private int renderedHeight;
+    private int renderedIterations;
+
+    public JuliaPass(int width, int height)
+    {
+        WIDTH = width;
+        HEIGHT = height;
+
+        shader = new Shader("julia");
+        shader.compile();
+        cUniform = shader.getUniform2f("u_c");
+        resolutionUniform = shader.getUniform2f("u_resolution");
+        maxIterUniform = shader.getUniform1i("u_max_iter");
+        quad = new Quad();
+
+        texture = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, texture);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, 0);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glBindTexture(GL_TEXTURE_2D, 0);
+
+        framebuffer = glGenFramebuffers();
+        glBindFramebuffer(GL_FRAMEBUFFER, framebuffer);
+        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, texture, 0);
+        int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        if (status != GL_FRAMEBUFFER_COMPLETE)
+            throw new IllegalStateException("Julia framebuffer incomplete: 0x" + Integer.toHexString(status));
+
+        glGenQueries(queries);
+    }
+
+    // --- Rendering --- //
+
+    /**
+     * Draws the Julia set for c = (cReal, cImag) over the whole window.
+     * Leaves the default framebuffer bound with the full-window viewport.
+     */
+    public void render(float cReal, float cImag)
+    {
+        readTimers();
+
+        glDisable(GL_DEPTH_TEST);
+        glDisable(GL_BLEND);
+
+        if (!adaptive)
+        {
+            int slot = beginTimer(false);
+            draw(WIDTH, HEIGHT, MAX_ITERATIONS, cReal, cImag);
+            endTimer(slot);
+            glEnable(GL_BLEND);
+            renderedQuality = -1;
+            return;
+        }
+
+        boolean still = renderedQuality >= 0
+            && Math.abs(cReal - lastReal) < STILL_EPSILON
+            && Math.abs(cImag - lastImag) < STILL_EPSILON;
+
+        // Only frames rendered at the controller's level steer it; refinement may exceed the budget
+        int slot = beginTimer(!still);
+        if (!still)
+        {
+            // Moving: render at the level the controller chose
+            renderOffscreen(quality, cReal, cImag);
+            lastReal = cReal;
+            lastImag = cImag;
+        }
+        else if (renderedQuality < 1.0f)
+        {
+            // Still: refine one step, keeping u_c of the cached image so it does not creep
+            renderOffscreen(Math.min(1.0f, renderedQuality + REFINE_STEP), lastReal, lastImag);
+        }
+
+        // Stretch the cached image over the window
+        glBindFramebuffer(GL_READ_FRAMEBUFFER, framebuffer);
+        glBindFramebuffer(GL_DRAW_FRAMEBUFFER, 0);
+        glBlitFramebuffer(0, 0, renderedWidth, renderedHeight, 0, 0, WIDTH, HEIGHT, GL_COLOR_BUFFER_BIT, GL_LINEAR);
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        endTimer(slot);
+
+        glEnable(GL_BLEND);
+    }
+
+    private void renderOffscreen(float level, float cReal, float cImag)
+    {
+        float scale = MIN_SCALE + (1.0f - MIN_SCALE) * level;
+        renderedWidth = Math.max(1, Math.round(WIDTH * scale));
+        renderedHeight = Math.max(1, Math.round(HEIGHT * scale));
+        renderedIterations = Math.round(MIN_ITERATIONS + (MAX_ITERATIONS - MIN_ITERATIONS) * level);
+        renderedQuality = level;
+
+        glBindFramebuffer(GL_FRAMEBUFFER, framebuffer);
+        draw(renderedWidth, renderedHeight, renderedIterations, cReal, cImag);
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        glViewport(0, 0, WIDTH, HEIGHT);
+    }
+
+    private void draw(int width, int height, int iterations, float cReal, float cImag)
+    {
+        glViewport(0, 0, width, height);
+        shader.bind();
+        cUniform.set(cReal, cImag);
+        resolutionUniform.set(width, height);
+        maxIterUniform.set(iterations);
+
+        quad.render();
+
+        shader.unbind();
+    }
+
+    // --- GPU-time control --- //
+
+    // Starts timing a pass; returns the query slot, or -1 if none is free
+    private int beginTimer(boolean controlled)
+    {
+        int slot = frame++ & 1;
+        if (pending[slot])
+        {
+            // The GPU is more than a frame behind; skip this measurement
+            return -1;
+        }
+
+        glBeginQuery(GL_TIME_ELAPSED, queries[slot]);
+        pending[slot] = true;
+        adaptiveQuery[slot] = controlled;
+        return slot;
+    }
+
+    private void endTimer(int slot)
+    {
+        if (slot >= 0)
+            glEndQuery(GL_TIME_ELAPSED);
+    }
+
+    // Collects finished timer queries without waiting and adjusts the quality level
+    private void readTimers()
+    {
+        for (int slot = 0; slot < queries.length; slot++)
+        {
+            if (!pending[slot] || glGetQueryObjecti(queries[slot], GL_QUERY_RESULT_AVAILABLE) == GL_FALSE)
+                continue;
+
+            pending[slot] = false;
+            long passNanos = glGetQueryObjecti64(queries[slot], GL_QUERY_RESULT);
+            lastPassMillis = passNanos * 1e-6;
+            if (metrics != null)
+                metrics.recordDuration(Metrics.Phase.JULIA, passNanos);
+
+            // Refinement frames are allowed to exceed the budget
+            if (!adaptiveQuery[slot])
+                continue;
+
+            if (lastPassMillis > budgetMillis)
+                quality -= QUALITY_DOWN * (float) (lastPassMillis / budgetMillis - 1.0);
+            else if (lastPassMillis < HEADROOM * budgetMillis)
+                quality += QUALITY_UP;
+            quality = Math.max(0.0f, Math.min(1.0f, quality));
+        }
+    }
+
+    // --- Settings --- //
+
+    // Full resolution and iterations every frame, drawn straight to the window
+    public void setAdaptive(boolean adaptive)
+    {
+        this.adaptive = adaptive;
+    }
+
+    public boolean isAdaptive()
+    {
+        return adaptive;
+    }
+
+    // Records the GPU time of every measured pass as the JULIA phase; null to stop
+    public void setMetrics(Metrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    // GPU time the adaptive pass aims to stay under
+    public void setBudgetMillis(double budgetMillis)
+    {
+        this.budgetMillis = budgetMillis;
+    }
+
+    // --- Getters --- //
+
+    // GPU time of the most recently measured pass
+    public double getLastPassMillis()
+    {
+        return lastPassMillis;
+    }
+
+    // Resolution scale of the image currently on screen
+    public float getScale()
+    {
+        return adaptive && renderedQuality >= 0 ? (float) renderedWidth / WIDTH : 1.0f;
+    }
+
+    // Iteration cap of the image currently on screen
+    public int getIterations()
+    {
+        return adaptive && renderedQuality >= 0 ? renderedIterations : MAX_ITERATIONS;
+    }
+
+    // --- Cleanup --- //
+
+    public void delete()
+    {
+        glDeleteQueries(queries);
+        glDeleteFramebuffers(framebuffer);
+        glDeleteTextures(texture);
+        quad.delete();
+        shader.delete();
+    }
+}
@@ -0,0 +1,272 @@
+package com.pendulum;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * CPU version of julia.frag for rendering without an OpenGL context.
+ *
+ * Every pixel goes through the same float operations as the shader: the uv
+ * mapping of gl_FragCoord (pixel centres), the escape loop at u_max_iter = 300, the
+ * smooth log2(log2(|z|^2)) colouring and the colour ramp. Results match a GPU
+ * to within its float rounding (fused multiply-adds, log2 precision), which
+ * makes this a reference for validating the shader as well.
+ *
+ * The image is split into square tiles scheduled on a fork/join pool, so
+ * threads that finish cheap tiles outside the set steal the expensive ones
+ * inside it. Pixels are written into a direct buffer that is reused by every
+ * render, laid out like glReadPixels with GL_RGBA and GL_UNSIGNED_BYTE: four
+ * bytes per pixel, bottom row first.
+ *
+ * With setVectorized(true) full groups of SIMD lanes are shaded by
+ * VectorJuliaKernel, which needs the "simd" build profile and --add-modules
+ * jdk.incubator.vector at run time. Both paths produce identical pixels.
+ */
+public class JuliaRenderer
+{
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_KERNEL = "com.pendulum.VectorJuliaKernel";
+
+    public static final int MAX_ITERATIONS = 300;   // max_iter in julia.frag
+    private static final int TILE_SIZE = 32;        // Pixels per tile side
+
+    // Colour ramp of julia.frag: mix(colorA, colorB, sqrt(norm))
+    private static final float[] COLOR_A = { 0.0f, 0.0f, 0.1f };
+    private static final float[] COLOR_B = { 1.0f, 0.8f, 0.5f };
+
+    private static final double LN_2 = Math.log(2);
+
+    private final int WIDTH;
+    private final int HEIGHT;
+    private final int TILES_X;
+    private final int TILES_Y;
+
+    private final ByteBuffer pixels;   // RGBA, bottom row first
+    private final ForkJoinPool pool;
+    private final ThreadLocal<JuliaKernel> vectorKernels;
+
+    private volatile boolean vectorized = false;
+    private float cReal;
+    private float cImag;
+
+    public JuliaRenderer(int width, int height)
+    {
+        this(width, height, Runtime.getRuntime().availableProcessors());
+    }
+
+    public JuliaRenderer(int width, int height, int parallelism)
+    {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Invalid image size: " + width + " x " + height);
+        if ((long) width * height * 4 > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Image does not fit in a single buffer: " + width + " x " + height);
+
+        WIDTH = width;
+        HEIGHT = height;
+        TILES_X = (width + TILE_SIZE - 1) / TILE_SIZE;
+        TILES_Y = (height + TILE_SIZE - 1) / TILE_SIZE;
+
+        // Little-endian so that putInt(r | g << 8 | b << 16 | a << 24) stores R, G, B, A
+        pixels = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.LITTLE_ENDIAN);
+        pool = new ForkJoinPool(parallelism);
+        vectorKernels = ThreadLocal.withInitial(JuliaRenderer::createVectorKernel);
+    }
+
+    // --- RENDERING --- //
+
+    /**
+     * Renders the Julia set for c = (tipX + i tipY) / length, the mapping Main
+     * uses for the shader's u_c with the pendulum tip and the chain length.
+     */
+    public void renderForTip(double tipX, double tipY, double length)
+    {
+        render((float) (tipX / length), (float) (tipY / length));
+    }
+
+    /**
+     * Renders the Julia set for the constant c into the pixel buffer.
+     * Blocks until all tiles are done.
+     */
+    public void render(float cReal, float cImag)
+    {
+        this.cReal = cReal;
+        this.cImag = cImag;
+
+        int tiles = TILES_X * TILES_Y;
+        pool.submit(() -> IntStream.range(0, tiles).parallel().forEach(this::renderTile)).join();
+    }
+
+    private void renderTile(int tile)
+    {
+        int firstX = (tile % TILES_X) * TILE_SIZE;
+        int firstY = (tile / TILES_X) * TILE_SIZE;
+        int lastX = Math.min(firstX + TILE_SIZE, WIDTH);
+        int lastY = Math.min(firstY + TILE_SIZE, HEIGHT);
+
+        JuliaKernel kernel = vectorized ? vectorKernels.get() : null;
+        for (int y = firstY; y < lastY; y++)
+        {
+            int x = firstX;
+            if (kernel != null)
+                x = kernel.shade(pixels, WIDTH, HEIGHT, y, firstX, lastX, cReal, cImag);
+
+            // Scalar path for everything the vector kernel did not cover
+            float v = (y + 0.5f) / HEIGHT * 2.0f - 1.0f;
+            for (; x < lastX; x++)
+            {
+                float u = ((x + 0.5f) / WIDTH * 2.0f - 1.0f) * ((float) WIDTH / (float) HEIGHT);
+                pixels.putInt((y * WIDTH + x) * 4, shade(u, v, cReal, cImag));
+            }
+        }
+    }
+
+    // Escape loop of julia.frag for the point z = (u, v), returning the packed colour
+    private static int shade(float u, float v, float cReal, float cImag)
+    {
+        float zx = u;
+        float zy = v;
+        int i;
+        for (i = 0; i < MAX_ITERATIONS; i++)
+        {
+            float x = (zx * zx - zy * zy) + cReal;
+            float y = (2.0f * zx * zy) + cImag;
+            zx = x;
+            zy = y;
+            if (zx * zx + zy * zy > 4.0f)
+                break;
+        }
+        return color(i, zx * zx + zy * zy);
+    }
+
+    /**
+     * Smooth colouring of julia.frag for a pixel that stopped after the given
+     * number of iterations with |z|^2 = m. Shared with the vector kernel.
+     */
+    static int color(int iterations, float m)
+    {
+        float logIter = iterations < MAX_ITERATIONS
+            ? (float) iterations - log2(log2(m)) + 4.0f
+            : (float) MAX_ITERATIONS;
+        float norm = Math.max(0.0f, Math.min(1.0f, logIter / (float) MAX_ITERATIONS));
+        float t = (float) Math.sqrt(norm);
+
+        int r = toByte(COLOR_A[0] * (1.0f - t) + COLOR_B[0] * t);
+        int g = toByte(COLOR_A[1] * (1.0f - t) + COLOR_B[1] * t);
+        int b = toByte(COLOR_A[2] * (1.0f - t) + COLOR_B[2] * t);
+        // The shader writes alpha 2.0, which the framebuffer clamps to 1.0
+        return r | g << 8 | b << 16 | 0xFF << 24;
+    }
+
+    private static float log2(float value)
+    {
+        return (float) (Math.log(value) / LN_2);
+    }
+
+    // Normalized float to unsigned byte conversion, as for a GL_RGBA8 framebuffer
+    private static int toByte(float value)
+    {
+        return Math.round(Math.max(0.0f, Math.min(1.0f, value)) * 255.0f);
+    }
+
+    // --- SIMD KERNEL --- //
+
+    /**
+     * Requests the SIMD kernel for shading. It is only used when the Vector API
+     * kernel can be loaded; otherwise the scalar path stays active. Must not be
+     * called while render() is running.
+     *
+     * @return Whether the SIMD kernel is now active.
+     */
+    public boolean setVectorized(boolean enabled)
+    {
+        vectorized = enabled && isVectorKernelAvailable();
+        return vectorized;
+    }
+
+    public boolean isVectorized()
+    {
+        return vectorized;
+    }
+
+    // True when the incubator module is resolved and the kernel class was compiled in
+    public static boolean isVectorKernelAvailable()
+    {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty())
+            return false;
+
+        try
+        {
+            Class.forName(VECTOR_KERNEL, false, JuliaRenderer.class.getClassLoader());
+            return true;
+        }
+        catch (ClassNotFoundException | LinkageError e)
+        {
+            return false;
+        }
+    }
+
+    // Loaded reflectively so that this class links without the incubator module
+    private static JuliaKernel createVectorKernel()
+    {
+        try
+        {
+            return (JuliaKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new IllegalStateException("Unable to create the SIMD Julia kernel.", e);
+        }
+    }
+
+    // --- OUTPUT --- //
+
+    public int getWidth()
+    {
+        return WIDTH;
+    }
+
+    public int getHeight()
+    {
+        return HEIGHT;
+    }
+
+    /**
+     * The pixel buffer: RGBA bytes, bottom row first, as glTexImage2D expects.
+     * It is overwritten by the next render().
+     */
+    public ByteBuffer getPixels()
+    {
+        return pixels.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Writes the last rendered image as a PNG, top row first
+    public void writePng(Path path) throws IOException
+    {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[WIDTH];
+        for (int y = 0; y < HEIGHT; y++)
+        {
+            for (int x = 0; x < WIDTH; x++)
+            {
+                int rgba = pixels.getInt((y * WIDTH + x) * 4);
+                row[x] = (rgba & 0xFF) << 16 | (rgba & 0xFF00) | (rgba >> 16 & 0xFF);
+            }
+            image.setRGB(0, HEIGHT - 1 - y, WIDTH, 1, row, 0, WIDTH);
+        }
+
+        if (!ImageIO.write(image, "png", path.toFile()))
+            throw new IOException("No PNG writer available.");
+    }
+
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+}
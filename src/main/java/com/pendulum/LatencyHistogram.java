@@ -0,0 +1,122 @@
+package com.pendulum;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size, log-linear histogram of durations in nanoseconds.
+ *
+ * Each power of two is split into SUB_BUCKETS equal buckets, so any recorded
+ * value is known to within 1 / SUB_BUCKETS (12.5%) over the whole range of a
+ * long, in under 4 KB. record() is a few arithmetic operations and one atomic
+ * increment with no allocation, so it can run every frame on the render and
+ * physics threads while another thread reads.
+ *
+ * Readers copy the counts with snapshot() and evaluate quantiles on the copy;
+ * the difference of two snapshots is the histogram of the interval between
+ * them.
+ */
+public final class LatencyHistogram
+{
+    static final int SUB_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+    public static final int BUCKETS = (Long.SIZE - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+
+    // --- Recording --- //
+
+    public void record(long nanos)
+    {
+        long value = Math.max(0, nanos);
+        counts.getAndIncrement(bucket(value));
+        count.getAndIncrement();
+        sum.getAndAdd(value);
+    }
+
+    // Bucket holding a non-negative value
+    static int bucket(long value)
+    {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // Smallest value in a bucket
+    static long lowerBound(int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+    }
+
+    // One past the largest value in a bucket
+    static long upperBound(int bucket)
+    {
+        return bucket + 1 < BUCKETS ? lowerBound(bucket + 1) : Long.MAX_VALUE;
+    }
+
+    // --- Reading --- //
+
+    /**
+     * Copies the bucket counts into counts, which must hold BUCKETS values.
+     * Concurrent records may or may not be included.
+     */
+    public void snapshot(long[] into)
+    {
+        for (int i = 0; i < BUCKETS; i++)
+            into[i] = counts.get(i);
+    }
+
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    public long getSumNanos()
+    {
+        return sum.get();
+    }
+
+    // Recorded values below upperBound, which should be a bucket boundary such as a power of two
+    public long countBelow(long upperBound)
+    {
+        long below = 0;
+        for (int i = 0; i < BUCKETS && upperBound(i) <= upperBound; i++)
+            below += counts.get(i);
+        return below;
+    }
+
+    /**
+     * Estimates a quantile of a snapshot, or of the difference of two.
+     *
+     * @param counts   Bucket counts as filled by snapshot().
+     * @param quantile Between 0 and 1.
+     * @return The midpoint of the bucket holding the quantile, or 0 if counts is empty.
+     */
+    public static long quantile(long[] counts, double quantile)
+    {
+        long total = 0;
+        for (long c : counts)
+            total += c;
+        if (total == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            seen += counts[i];
+            if (seen >= rank)
+                return lowerBound(i) + (upperBound(i) - lowerBound(i)) / 2;
+        }
+        return lowerBound(counts.length - 1);
+    }
+}
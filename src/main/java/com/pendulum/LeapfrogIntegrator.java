@@ -0,0 +1,32 @@
+package com.pendulum;
+
+/**
+ * The original leapfrog step of the simulation, see ChainDynamics.leapfrogStep.
+ *
+ * Both force evaluations use the velocities from the start of the step, which is
+ * cheap and bit-compatible with earlier versions. Because the chain's forces
+ * depend on the velocities, the step is not time-symmetric and its error only
+ * falls linearly with the step size: it is first order, not second. It is
+ * therefore not used as the base of the higher-order compositions.
+ */
+final class LeapfrogIntegrator implements Integrator
+{
+    @Override
+    public String getName()
+    {
+        return "leapfrog";
+    }
+
+    @Override
+    public int getOrder()
+    {
+        return 1;
+    }
+
+    @Override
+    public void step(ChainDynamics dynamics, double[] angles, double[] angularVelocities, double deltaTime,
+                     SolverWorkspace workspace)
+    {
+        dynamics.leapfrogStep(angles, angularVelocities, deltaTime, workspace);
+    }
+}
@@ -4,62 +4,263 @@ import static org.lwjgl.opengl.GL11.GL_FLOAT;
 import static org.lwjgl.opengl.GL11.GL_LINE_STRIP;
 import static org.lwjgl.opengl.GL11.glDrawArrays;
 import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
-import static org.lwjgl.opengl.GL15.GL_DYNAMIC_DRAW;
+import static org.lwjgl.opengl.GL15.GL_STREAM_DRAW;
 import static org.lwjgl.opengl.GL15.glBindBuffer;
 import static org.lwjgl.opengl.GL15.glBufferData;
-import static org.lwjgl.opengl.GL15.glBufferSubData;
 import static org.lwjgl.opengl.GL15.glDeleteBuffers;
 import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL15.glUnmapBuffer;
 import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
 import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
 import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL32.*;
+import static org.lwjgl.opengl.GL44.GL_MAP_COHERENT_BIT;
+import static org.lwjgl.opengl.GL44.GL_MAP_PERSISTENT_BIT;
+import static org.lwjgl.opengl.GL44.glBufferStorage;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 
-import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
 
+/**
+ * Streams line strip vertices to the GPU without stalling on draws in flight.
+ *
+ * Every upload goes to fresh space in a ring of SECTIONS regions of maxPoints
+ * vertices each, so it never overwrites vertices an earlier draw may still be
+ * reading. upload() returns the first vertex of the uploaded range; several
+ * strips can share one LineStrip by uploading each and drawing with
+ * render(first, count). updatePoints() and render(count) do the same for a
+ * single strip.
+ *
+ * The strategy is chosen at runtime:
+ *   PERSISTENT  With OpenGL 4.4 or GL_ARB_buffer_storage, the buffer is mapped
+ *               once, persistent and coherent, and written directly. A fence
+ *               after the last draw from each region is waited on before the
+ *               ring comes back to it.
+ *   ORPHAN      Otherwise each upload is mapped unsynchronized into unused space,
+ *               and the buffer is orphaned with glBufferData when the ring wraps,
+ *               so the driver hands out new storage instead of waiting.
+ */
 public class LineStrip {
+    public enum Strategy { PERSISTENT, ORPHAN }
+
+    private static final int SECTIONS = 3;
+    private static final int VERTEX_BYTES = 2 * Float.BYTES;
+
     private final int vaoId;
     private final int vboId;
-    private final FloatBuffer vertexBuffer;
+    private final int sectionPoints;
+    private final int totalPoints;
+    private final Strategy strategy;
+
+    // PERSISTENT: the whole ring, mapped once, and one fence per section
+    private FloatBuffer mapped;
+    private final long[] fences = new long[SECTIONS];
+
+    private int cursor = 0;       // Next free vertex of the ring
+    private int lastFirst = 0;    // First vertex of the latest updatePoints()
+
+    // Upload statistics
+    private long uploads = 0;
+    private long uploadedBytes = 0;
+    private long fenceWaits = 0;
+    private long fenceWaitNanos = 0;
+    private long orphans = 0;
 
     public LineStrip(int maxPoints) {
-        vertexBuffer = BufferUtils.createFloatBuffer(maxPoints * 2);
+        this(maxPoints, preferredStrategy());
+    }
+
+    /**
+     * @param maxPoints Vertices that may be uploaded between two draws of the
+     *                  same data, i.e. per frame when strips share the buffer.
+     */
+    public LineStrip(int maxPoints, Strategy strategy) {
+        this.sectionPoints = maxPoints;
+        this.totalPoints = maxPoints * SECTIONS;
+        this.strategy = strategy;
+        long totalBytes = (long) totalPoints * VERTEX_BYTES;
 
         vaoId = glGenVertexArrays();
         glBindVertexArray(vaoId);
 
         vboId = glGenBuffers();
         glBindBuffer(GL_ARRAY_BUFFER, vboId);
-        glBufferData(GL_ARRAY_BUFFER, maxPoints * 2 * Float.BYTES, GL_DYNAMIC_DRAW);
+        if (strategy == Strategy.PERSISTENT) {
+            int flags = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+            glBufferStorage(GL_ARRAY_BUFFER, totalBytes, flags);
+            mapped = glMapBufferRange(GL_ARRAY_BUFFER, 0, totalBytes, flags).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        } else {
+            glBufferData(GL_ARRAY_BUFFER, totalBytes, GL_STREAM_DRAW);
+        }
 
         glEnableVertexAttribArray(0); // location = 0
-        glVertexAttribPointer(0, 2, GL_FLOAT, false, 2 * Float.BYTES, 0);
+        glVertexAttribPointer(0, 2, GL_FLOAT, false, VERTEX_BYTES, 0);
 
         glBindBuffer(GL_ARRAY_BUFFER, 0);
         glBindVertexArray(0);
     }
 
+    // Persistent mapping when the context supports buffer storage, orphaning otherwise
+    public static Strategy preferredStrategy() {
+        GLCapabilities caps = GL.getCapabilities();
+        return caps.OpenGL44 || caps.GL_ARB_buffer_storage ? Strategy.PERSISTENT : Strategy.ORPHAN;
+    }
+
+    // --- Uploads --- //
+
     public void updatePoints(double[][] points) {
-        vertexBuffer.clear();
-        for (double[] p : points) {
-            vertexBuffer.put((float) p[0]);
-            vertexBuffer.put((float) p[1]);
+        lastFirst = upload(points, points.length);
+    }
+
+    /**
+     * Streams the first count points into fresh space.
+     *
+     * @return The first vertex of the range, for render(first, count).
+     */
+    public int upload(double[][] points, int count) {
+        if (count > sectionPoints) {
+            throw new IllegalArgumentException("Strip of " + count + " points exceeds " + sectionPoints);
         }
-        vertexBuffer.flip();
 
-        glBindBuffer(GL_ARRAY_BUFFER, vboId);
-        glBufferSubData(GL_ARRAY_BUFFER, 0, vertexBuffer);
+        int first = allocate(count);
+        if (strategy == Strategy.PERSISTENT) {
+            mapped.position(first * 2);
+            pack(points, count, mapped);
+        } else {
+            glBindBuffer(GL_ARRAY_BUFFER, vboId);
+            int access = GL_MAP_WRITE_BIT | GL_MAP_INVALIDATE_RANGE_BIT | GL_MAP_UNSYNCHRONIZED_BIT;
+            ByteBuffer range = glMapBufferRange(GL_ARRAY_BUFFER, (long) first * VERTEX_BYTES,
+                                                (long) count * VERTEX_BYTES, access).order(ByteOrder.nativeOrder());
+            pack(points, count, range.asFloatBuffer());
+            glUnmapBuffer(GL_ARRAY_BUFFER);
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+        }
+
+        uploads++;
+        uploadedBytes += (long) count * VERTEX_BYTES;
+        return first;
+    }
+
+    // Writes x, y of the first count points as floats at the buffer's position; the CPU side of an upload
+    static void pack(double[][] points, int count, FloatBuffer target) {
+        for (int i = 0; i < count; i++) {
+            target.put((float) points[i][0]).put((float) points[i][1]);
+        }
+    }
+
+    // Reserves count vertices within one section, preparing the section on entry
+    private int allocate(int count) {
+        int section = cursor / sectionPoints;
+        int sectionEnd = (section + 1) * sectionPoints;
+        boolean entering = cursor % sectionPoints == 0;
+
+        if (cursor + count > sectionEnd) {
+            // Does not fit in the rest of this section: move to the next one
+            cursor = sectionEnd % totalPoints;
+            entering = true;
+        }
+
+        if (entering) {
+            if (strategy == Strategy.PERSISTENT) {
+                waitForSection(cursor / sectionPoints);
+            } else if (cursor == 0) {
+                glBindBuffer(GL_ARRAY_BUFFER, vboId);
+                glBufferData(GL_ARRAY_BUFFER, (long) totalPoints * VERTEX_BYTES, GL_STREAM_DRAW);
+                glBindBuffer(GL_ARRAY_BUFFER, 0);
+                orphans++;
+            }
+        }
+
+        int first = cursor;
+        cursor = (cursor + count) % totalPoints;
+        return first;
     }
 
+    // Blocks until the GPU has finished every draw from the section
+    private void waitForSection(int section) {
+        long fence = fences[section];
+        if (fence == 0) {
+            return;
+        }
 
+        if (glClientWaitSync(fence, 0, 0) == GL_TIMEOUT_EXPIRED) {
+            long start = System.nanoTime();
+            while (glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, 1_000_000) == GL_TIMEOUT_EXPIRED) {
+                // The GPU is more than SECTIONS - 1 uploads behind
+            }
+            fenceWaits++;
+            fenceWaitNanos += System.nanoTime() - start;
+        }
+        glDeleteSync(fence);
+        fences[section] = 0;
+    }
+
+    // --- Rendering --- //
+
+    // Draws the points of the latest updatePoints()
     public void render(int pointCount) {
+        render(lastFirst, pointCount);
+    }
+
+    // Draws count vertices starting at a vertex returned by upload()
+    public void render(int first, int pointCount) {
         glBindVertexArray(vaoId);
-        glDrawArrays(GL_LINE_STRIP, 0, pointCount);
+        glDrawArrays(GL_LINE_STRIP, first, pointCount);
         glBindVertexArray(0);
+
+        if (strategy == Strategy.PERSISTENT) {
+            // Only the newest draw from a section needs to be waited on
+            int section = first / sectionPoints;
+            if (fences[section] != 0) {
+                glDeleteSync(fences[section]);
+            }
+            fences[section] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        }
+    }
+
+    // --- Statistics --- //
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    public long getUploadCount() {
+        return uploads;
+    }
+
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    // Uploads that had to wait for the GPU to release a section
+    public long getFenceWaits() {
+        return fenceWaits;
+    }
+
+    public long getFenceWaitNanos() {
+        return fenceWaitNanos;
+    }
+
+    // Times the buffer storage was orphaned (ORPHAN strategy only)
+    public long getOrphanCount() {
+        return orphans;
     }
 
     public void cleanup() {
+        for (int i = 0; i < SECTIONS; i++) {
+            if (fences[i] != 0) {
+                glDeleteSync(fences[i]);
+            }
+        }
+        if (mapped != null) {
+            glBindBuffer(GL_ARRAY_BUFFER, vboId);
+            glUnmapBuffer(GL_ARRAY_BUFFER);
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+        }
         glDeleteBuffers(vboId);
         glDeleteVertexArrays(vaoId);
     }
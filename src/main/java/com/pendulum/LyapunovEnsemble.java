@@ -0,0 +1,95 @@
+package com.pendulum;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Lyapunov estimates for a batch of independent chains, stepped in parallel.
+ *
+ * Each chain carries its own LyapunovEstimator, so its tangent vectors and
+ * solver workspace stay with it; the chains are scheduled on a fork/join pool
+ * like PendulumEnsemble. Initial states are set per chain, or copied from a
+ * PendulumEnsemble to measure how chaotic each of its members is.
+ */
+public class LyapunovEnsemble
+{
+    private final int SIZE;                  // Number of chains
+    private final int NUM_PENDULUMS;         // Segments per chain
+
+    private final LyapunovEstimator[] estimators;
+    private final ForkJoinPool pool;
+
+    public LyapunovEnsemble(int size, int numPendulums, double deltaTime, double initialAngle, int exponents,
+                            int renormalizeInterval, int parallelism)
+    {
+        if (size <= 0)
+            throw new IllegalArgumentException("Ensemble needs at least one chain.");
+
+        SIZE = size;
+        NUM_PENDULUMS = numPendulums;
+
+        estimators = new LyapunovEstimator[size];
+        for (int c = 0; c < size; c++)
+            estimators[c] = new LyapunovEstimator(numPendulums, deltaTime, initialAngle, exponents, renormalizeInterval);
+
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    // --- STATE ACCESS --- //
+
+    public LyapunovEstimator getEstimator(int chain)
+    {
+        return estimators[chain];
+    }
+
+    // Copies every chain's state from an ensemble of the same shape and restarts the estimates
+    public void copyState(PendulumEnsemble ensemble)
+    {
+        if (ensemble.getSize() != SIZE || ensemble.getNumPendulums() != NUM_PENDULUMS)
+            throw new IllegalArgumentException("Ensemble shape differs: " + ensemble.getSize() + " x " + ensemble.getNumPendulums());
+
+        double[] chainAngles = new double[NUM_PENDULUMS];
+        double[] chainVelocities = new double[NUM_PENDULUMS];
+        for (int c = 0; c < SIZE; c++)
+        {
+            ensemble.gather(c, chainAngles, chainVelocities);
+            estimators[c].setAngles(chainAngles);
+            estimators[c].setAngularVelocities(chainVelocities);
+        }
+    }
+
+    // --- PHYSICS SIMULATION --- //
+
+    // Advances every chain and its tangent vectors; blocks until all are done
+    public void step(int steps)
+    {
+        pool.submit(() -> IntStream.range(0, SIZE).parallel().forEach(c -> estimators[c].step(steps))).join();
+    }
+
+    // --- ESTIMATES --- //
+
+    // Largest exponent of every chain, in inverse seconds
+    public void getLargestExponents(double[] out)
+    {
+        for (int c = 0; c < SIZE; c++)
+            out[c] = estimators[c].getLargestExponent();
+    }
+
+    public int getSize()
+    {
+        return SIZE;
+    }
+
+    public int getNumPendulums()
+    {
+        return NUM_PENDULUMS;
+    }
+
+    // --- CLEANUP --- //
+
+    // Stops the worker threads; the ensemble must not be stepped afterwards
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+}
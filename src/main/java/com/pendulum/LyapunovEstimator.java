@@ -0,0 +1,284 @@
+package com.pendulum;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Running estimate of the Lyapunov exponents of one chain.
+ *
+ * The chain is advanced with the leapfrog step of ChainDynamics, and alongside
+ * it a set of tangent vectors (dq, dv) with the exact linearisation of that
+ * step. Both accelerations of a step use the CHOLESKY solver, and the tangent
+ * accelerations reuse the sin/cos cache and the factorized mass matrix of the
+ * evaluation they follow, so each tangent vector adds only O(N^2) per step on
+ * top of the O(N^3 / 3) factorization.
+ *
+ * Every renormalizeInterval steps the tangent vectors are orthonormalized by a
+ * QR decomposition (modified Gram-Schmidt); the logarithms of the diagonal of R
+ * accumulate into the exponents (Benettin et al. 1980). With one tangent vector
+ * this is the largest exponent; with 2N it is the full spectrum, whose values
+ * come in pairs of opposite sign for a conservative chain.
+ */
+public class LyapunovEstimator
+{
+    private final int NUM_PENDULUMS;
+    private final double DELTA_TIME;
+    private final int COUNT;                   // Tangent vectors, i.e. exponents estimated
+    private final int RENORMALIZE_INTERVAL;    // Steps between QR renormalizations
+
+    private final ChainDynamics dynamics;
+    private final SolverWorkspace workspace;
+
+    private final double[] angles;
+    private final double[] angularVelocities;
+
+    private final double[][] tangents;          // tangents[k] = {dq, dv}
+    private final double[][] tangentAccelerations;
+    private final double[][] halfTangents;      // dv after the first half kick
+
+    private final double[] logSums;             // Accumulated log stretch per exponent
+    private double renormalizedTime = 0;        // Simulated time covered by logSums
+    private long steps = 0;
+
+    /**
+     * @param exponents           Number of exponents to estimate, 1 to 2 * numPendulums.
+     * @param renormalizeInterval Steps between renormalizations; around 10 keeps the
+     *                            tangent vectors well conditioned.
+     */
+    public LyapunovEstimator(int numPendulums, double deltaTime, double initialAngle, int exponents,
+                             int renormalizeInterval)
+    {
+        this(new ChainDynamics(numPendulums, Pendulum.Solver.CHOLESKY), deltaTime, initialAngle, exponents,
+             renormalizeInterval);
+    }
+
+    /**
+     * An estimator for a chain of non-uniform segments.
+     *
+     * @param masses  Mass of the bob at the end of each segment, pivot first.
+     * @param lengths Length of each segment, pivot first.
+     */
+    public LyapunovEstimator(double[] masses, double[] lengths, double deltaTime, double initialAngle, int exponents,
+                             int renormalizeInterval)
+    {
+        this(new ChainDynamics(masses, lengths, Pendulum.Solver.CHOLESKY), deltaTime, initialAngle, exponents,
+             renormalizeInterval);
+    }
+
+    private LyapunovEstimator(ChainDynamics dynamics, double deltaTime, double initialAngle, int exponents,
+                              int renormalizeInterval)
+    {
+        final int numPendulums = dynamics.getNumPendulums();
+        if (exponents < 1 || exponents > 2 * numPendulums)
+            throw new IllegalArgumentException("Between 1 and " + 2 * numPendulums + " exponents: " + exponents);
+        if (renormalizeInterval < 1)
+            throw new IllegalArgumentException("Renormalization interval must be positive: " + renormalizeInterval);
+
+        NUM_PENDULUMS = numPendulums;
+        DELTA_TIME = deltaTime;
+        COUNT = exponents;
+        RENORMALIZE_INTERVAL = renormalizeInterval;
+
+        this.dynamics = dynamics;
+        workspace = dynamics.createWorkspace();
+
+        angles = new double[numPendulums];
+        angularVelocities = new double[numPendulums];
+        Arrays.fill(angles, initialAngle);
+
+        tangents = new double[exponents][2 * numPendulums];
+        tangentAccelerations = new double[exponents][numPendulums];
+        halfTangents = new double[exponents][numPendulums];
+        logSums = new double[exponents];
+
+        reset();
+    }
+
+    // --- STATE ACCESS --- //
+
+    // Overwrites the angles and restarts the estimate
+    public void setAngles(double[] values)
+    {
+        checkLength(values);
+        for (int i = 0; i < NUM_PENDULUMS; i++)
+            angles[i] = ChainDynamics.wrapAngle(values[i]);
+        reset();
+    }
+
+    // Overwrites the angular velocities and restarts the estimate
+    public void setAngularVelocities(double[] values)
+    {
+        checkLength(values);
+        System.arraycopy(values, 0, angularVelocities, 0, NUM_PENDULUMS);
+        reset();
+    }
+
+    public void getAngles(double[] out)
+    {
+        System.arraycopy(angles, 0, out, 0, NUM_PENDULUMS);
+    }
+
+    public void getAngularVelocities(double[] out)
+    {
+        System.arraycopy(angularVelocities, 0, out, 0, NUM_PENDULUMS);
+    }
+
+    // Copies tangent vector k, {dq, dv}; Verify checks it against finite differences
+    void getTangent(int k, double[] out)
+    {
+        System.arraycopy(tangents[k], 0, out, 0, 2 * NUM_PENDULUMS);
+    }
+
+    private void checkLength(double[] values)
+    {
+        if (values.length != NUM_PENDULUMS)
+            throw new IllegalArgumentException("Expected " + NUM_PENDULUMS + " values, got " + values.length);
+    }
+
+    // Fresh orthonormal tangent vectors in fixed pseudo-random directions, so runs are repeatable
+    private void reset()
+    {
+        Random random = new Random(1);
+        for (double[] tangent : tangents)
+        {
+            for (int i = 0; i < tangent.length; i++)
+                tangent[i] = random.nextGaussian();
+        }
+        orthonormalize(false);
+
+        Arrays.fill(logSums, 0);
+        renormalizedTime = 0;
+        steps = 0;
+    }
+
+    // --- PHYSICS SIMULATION --- //
+
+    // Advances the chain and its tangent vectors by the given number of steps
+    public void step(int count)
+    {
+        for (int s = 0; s < count; s++)
+        {
+            leapfrogStep();
+            steps++;
+            if (steps % RENORMALIZE_INTERVAL == 0)
+            {
+                orthonormalize(true);
+                renormalizedTime = steps * DELTA_TIME;
+            }
+        }
+    }
+
+    /**
+     * ChainDynamics.leapfrogStep, operation for operation, with its derivative:
+     *   a0 = a(q, v),   h = v + a0 dt/2,   q1 = q + h dt,   a1 = a(q1, v),   v1 = h + a1 dt/2
+     */
+    private void leapfrogStep()
+    {
+        final int N = NUM_PENDULUMS;
+        final double dt = DELTA_TIME;
+        double[] halfStepVelocity = workspace.halfStepVelocity;
+
+        double[] acc = dynamics.computeAccelerations(angles, angularVelocities, workspace);
+        dynamics.tangentAccelerations(angularVelocities, tangents, COUNT, tangentAccelerations, workspace);
+
+        for (int i = 0; i < N; i++)
+            halfStepVelocity[i] = angularVelocities[i] + acc[i] * dt / 2.0;
+
+        for (int k = 0; k < COUNT; k++)
+        {
+            double[] tangent = tangents[k];
+            double[] da = tangentAccelerations[k];
+            double[] half = halfTangents[k];
+            for (int i = 0; i < N; i++)
+            {
+                half[i] = tangent[N + i] + da[i] * dt / 2.0;
+                tangent[i] += half[i] * dt;
+            }
+        }
+
+        for (int i = 0; i < N; i++)
+            angles[i] = ChainDynamics.wrapAngle(angles[i] + halfStepVelocity[i] * dt);
+
+        // The second evaluation still sees the old velocities, and so do the tangents
+        acc = dynamics.computeAccelerations(angles, angularVelocities, workspace);
+        dynamics.tangentAccelerations(angularVelocities, tangents, COUNT, tangentAccelerations, workspace);
+
+        for (int i = 0; i < N; i++)
+            angularVelocities[i] = halfStepVelocity[i] + acc[i] * dt / 2.0;
+
+        for (int k = 0; k < COUNT; k++)
+        {
+            double[] tangent = tangents[k];
+            double[] da = tangentAccelerations[k];
+            double[] half = halfTangents[k];
+            for (int i = 0; i < N; i++)
+                tangent[N + i] = half[i] + da[i] * dt / 2.0;
+        }
+    }
+
+    // QR by modified Gram-Schmidt; with accumulate, the log of each R diagonal entry joins its sum
+    private void orthonormalize(boolean accumulate)
+    {
+        for (int k = 0; k < COUNT; k++)
+        {
+            double[] tangent = tangents[k];
+            for (int j = 0; j < k; j++)
+            {
+                double[] basis = tangents[j];
+                double dot = 0;
+                for (int i = 0; i < tangent.length; i++)
+                    dot += tangent[i] * basis[i];
+                for (int i = 0; i < tangent.length; i++)
+                    tangent[i] -= dot * basis[i];
+            }
+
+            double norm = 0;
+            for (double value : tangent)
+                norm += value * value;
+            norm = Math.sqrt(norm);
+
+            if (accumulate)
+                logSums[k] += Math.log(norm);
+            for (int i = 0; i < tangent.length; i++)
+                tangent[i] /= norm;
+        }
+    }
+
+    // --- ESTIMATES --- //
+
+    /**
+     * Copies the current estimates, largest first, in inverse seconds. They cover
+     * the simulated time up to the last renormalization and are 0 before it.
+     */
+    public void getExponents(double[] out)
+    {
+        for (int k = 0; k < COUNT; k++)
+            out[k] = renormalizedTime > 0 ? logSums[k] / renormalizedTime : 0;
+    }
+
+    public double getLargestExponent()
+    {
+        return renormalizedTime > 0 ? logSums[0] / renormalizedTime : 0;
+    }
+
+    public int getExponentCount()
+    {
+        return COUNT;
+    }
+
+    public int getNumPendulums()
+    {
+        return NUM_PENDULUMS;
+    }
+
+    public double getDeltaTime()
+    {
+        return DELTA_TIME;
+    }
+
+    // Simulated time since the estimate started
+    public double getTime()
+    {
+        return steps * DELTA_TIME;
+    }
+}
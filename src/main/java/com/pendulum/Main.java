@@ -1,29 +1,89 @@
 package com.pendulum;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 import org.joml.Matrix4f;
-import org.joml.Vector3f;
+import org.lwjgl.glfw.GLFW;
 import org.lwjgl.opengl.GL11;
 
 public class Main {
     private Window window;
 
     private Shader pendulumShader;
+    private Uniform.Float3 pendulumColor;
+    private Uniform.Float1 pendulumAlpha;
+    private UniformBuffer frameUniforms;   // Shared per-frame block, holds the projection
     private LineStrip lineStrip;
     private Pendulum pendulum;
+    private PhysicsThread physics;
+    private double[][] coords;
+
+    private JuliaPass juliaPass;
+
+    private FrameCapture capture;   // null unless recording
 
-    private Shader juliaShader;
-    private Quad juliaSet;
+    private final Metrics metrics = new Metrics();
+    private MetricsOverlay overlay;   // null unless shown
+    private MetricsServer metricsServer;   // null unless serving
+
+    private Path checkpointPath;            // null unless checkpointing
+    private long checkpointIntervalNanos;   // 0 for checkpoints on F5 and exit only
+    private long lastCheckpointNanos;
+    private boolean checkpointKeyDown = false;
+    private ExecutorService checkpointWriter;   // Writes checkpoints off the render and physics threads
 
     private Matrix4f projection;
+    private double chainLength;   // Sum of the segment lengths: the view's half-height and the scale of c
 
     private static final int TRAIL_LENGTH = 200;
-    private static final int PENDULUM_LENGTH = 20;
-    private double[][][] trailBuffer;
-    private int trailIndex = 0;
+    private static final int NUM_PENDULUMS = 20;
+    private static final double DELTA_TIME = 0.0025;
+    private static final double SIMULATION_SPEED = 0.6; // 0.01 simulated seconds per 60 Hz frame
+    private TrailRenderer trail;
+    private JointTrails jointTrails;   // null unless every joint gets a trail
 
     public Main() {
+        this(null, FrameCapture.Format.PNG, false, false, 0, null, 0, null);
+    }
+
+    /**
+     * @param captureDirectory Where to record every frame, or null to not record.
+     * @param allJointTrails   Draw a trail for every joint instead of the tip only.
+     * @param showMetrics      Draw frame timings and throughput over the scene.
+     * @param metricsPort      Local port to serve Prometheus metrics on, or 0 for none.
+     * @param checkpointPath   Where to save checkpoints on F5 and on exit, or null for none.
+     * @param checkpointEvery  Seconds between automatic checkpoints, or 0 for none.
+     * @param restorePath      Checkpoint to continue from, or null to start afresh.
+     */
+    public Main(Path captureDirectory, FrameCapture.Format captureFormat, boolean allJointTrails,
+                boolean showMetrics, int metricsPort, Path checkpointPath, double checkpointEvery,
+                Path restorePath) {
         window = new Window("n-pendulum");
         window.create();
+        metrics.trackThread(Thread.currentThread());
+
+        if (metricsPort > 0) {
+            try {
+                metricsServer = new MetricsServer(metrics, metricsPort);
+            } catch (IOException e) {
+                throw new RuntimeException("Error: Couldn't serve metrics on port " + metricsPort, e);
+            }
+        }
+
+        if (captureDirectory != null) {
+            try {
+                capture = new FrameCapture(window.getWidth(), window.getHeight(), captureDirectory, captureFormat);
+            } catch (IOException e) {
+                throw new RuntimeException("Error: Couldn't create capture directory " + captureDirectory, e);
+            }
+        }
 
         // Enable blending for transparency
         GL11.glEnable(GL11.GL_BLEND);
@@ -31,123 +91,293 @@ public class Main {
 
         pendulumShader = new Shader("pendulum");
         pendulumShader.compile();
+        pendulumColor = pendulumShader.getUniform3f("u_color");
+        pendulumAlpha = pendulumShader.getUniform1f("u_alpha");
+
+        // Per-frame uniforms shared by the pendulum and trail shaders
+        frameUniforms = new UniformBuffer();
+
+        // Initialize Pendulum, or continue a saved one
+        Checkpoint restored = null;
+        if (restorePath != null) {
+            try {
+                restored = Checkpoint.read(restorePath);
+            } catch (IOException e) {
+                throw new RuntimeException("Error: Couldn't read checkpoint " + restorePath, e);
+            }
+            pendulum = restored.createPendulum();
+        } else {
+            pendulum = new Pendulum(NUM_PENDULUMS, DELTA_TIME, Math.PI / 2,
+                                    Pendulum.Solver.CHOLESKY, Integrator.YOSHIDA4);
+        }
 
-        juliaShader = new Shader("julia");
-        juliaShader.compile();
+        // The fully stretched chain just reaches the edge of the view, whatever its segments
+        chainLength = 0;
+        for (double length : pendulum.getLengths()) {
+            chainLength += length;
+        }
 
         float aspectRatio = (float) window.getWidth() / (float) window.getHeight();
 
         // Projection matrix
         projection = new Matrix4f().ortho2D(
-            (float) -PENDULUM_LENGTH * aspectRatio, (float) PENDULUM_LENGTH * aspectRatio,
-            (float) -PENDULUM_LENGTH, (float) PENDULUM_LENGTH
+            (float) -chainLength * aspectRatio, (float) chainLength * aspectRatio,
+            (float) -chainLength, (float) chainLength
         );
 
-        // Initialize Pendulum
-        pendulum = new Pendulum(PENDULUM_LENGTH, 0.0001, Math.PI / 2);
-
         int pointsCount = pendulum.getNumPendulums() + 1;
         lineStrip = new LineStrip(pointsCount);
+        coords = new double[pointsCount][2];
+
+        // Initialize trail ring buffer
+        if (allJointTrails) {
+            jointTrails = new JointTrails(pendulum.getNumPendulums(), TRAIL_LENGTH);
+        } else {
+            trail = new TrailRenderer(TRAIL_LENGTH, pendulumShader);
+        }
 
-        // Initialize trail buffer
-        trailBuffer = new double[TRAIL_LENGTH][pointsCount][2];
+        // The saved trail, if it was drawn the same way
+        Checkpoint.Trail savedTrail = restored != null ? restored.getTrail() : null;
+        if (savedTrail != null && savedTrail.getLength() == TRAIL_LENGTH) {
+            if (jointTrails != null && savedTrail.getJoints() == pendulum.getNumPendulums()) {
+                jointTrails.restoreTrail(savedTrail);
+            } else if (trail != null && savedTrail.getJoints() == 1) {
+                trail.restoreTrail(savedTrail);
+            }
+        }
+
+        // Julia background at an adaptive resolution, the pendulum stays native
+        juliaPass = new JuliaPass(window.getWidth(), window.getHeight());
+        juliaPass.setMetrics(metrics);
+
+        if (showMetrics) {
+            overlay = new MetricsOverlay(metrics, window.getWidth(), window.getHeight());
+        }
+
+        // Run the physics on its own thread, independent of the frame rate
+        if (restored != null) {
+            physics = new PhysicsThread(pendulum, SIMULATION_SPEED, metrics,
+                                        restored.getSimulationTime(), restored.getSteps());
+        } else {
+            physics = new PhysicsThread(pendulum, SIMULATION_SPEED, metrics);
+        }
+
+        if (checkpointPath != null) {
+            this.checkpointPath = checkpointPath;
+            checkpointIntervalNanos = (long) (checkpointEvery * 1e9);
+            checkpointWriter = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "checkpoint-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
 
-        juliaSet = new Quad();
+        physics.start();
+        lastCheckpointNanos = System.nanoTime();
 
         loop();
 
+        physics.stop();
+
+        // Let pending checkpoints finish, then save the final state
+        if (checkpointWriter != null) {
+            checkpointWriter.shutdown();
+            try {
+                checkpointWriter.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writeCheckpoint(physics.checkpoint(saveTrail()));
+        }
+
+        if (metricsServer != null) {
+            metricsServer.close();
+        }
+
+        if (capture != null) {
+            try {
+                capture.close();
+            } catch (IOException e) {
+                System.err.println("Error: Couldn't write captured frames: " + e.getMessage());
+            }
+            System.out.println("Captured " + capture.getWrittenFrames() + " frames, "
+                               + capture.getStalls() + " encoder stalls");
+        }
+
         pendulumShader.delete();
-        juliaShader.delete();
-        juliaSet.delete();
+        frameUniforms.delete();
+        juliaPass.delete();
+        if (overlay != null) {
+            overlay.cleanup();
+        }
         lineStrip.cleanup();
+        if (jointTrails != null) {
+            jointTrails.cleanup();
+        } else {
+            trail.cleanup();
+        }
         window.destroy();
     }
 
     private void loop() {
         while (!window.shouldClose()) {
+            long frameStart = Metrics.now();
             window.clear();
 
-            // Update simulation multiple times for smoothness
-            for (int i = 0; i < 100; i++) {
-                pendulum.update();
-            }
-
-            // Get current pendulum endpoint
-            double[][] coords = pendulum.getEndPointCoordinates();
+            // Get the latest pendulum state, interpolated for this frame
+            physics.readInterpolated(coords);
             int pointsCount = coords.length;
 
-            // Store only the last point coords in the trail buffer
-            trailBuffer[trailIndex][0][0] = coords[pointsCount - 1][0];
-            trailBuffer[trailIndex][0][1] = coords[pointsCount - 1][1];
-            trailIndex = (trailIndex + 1) % TRAIL_LENGTH;
+            // Store the last point, or every joint, in the trail ring
+            if (jointTrails != null) {
+                jointTrails.push(coords);
+            } else {
+                trail.push(coords[pointsCount - 1][0], coords[pointsCount - 1][1]);
+            }
 
             // --- Julia Set Rendering --- //
-            juliaShader.bind();
 
             // Compute final pendulum point and use as complex number c
-            double real = coords[pointsCount - 1][0] / (double) (PENDULUM_LENGTH);
-            double imag = coords[pointsCount - 1][1] / (double) (PENDULUM_LENGTH);
-            juliaShader.setUniform2f("u_c", (float) real, (float) imag);
-
-            // Send screen resolution
-            juliaShader.setUniform2f("u_resolution", window.getWidth(), window.getHeight());
-
-            // Render the full-screen quad
-            GL11.glEnable(GL11.GL_BLEND);
-            GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
-            GL11.glDisable(GL11.GL_DEPTH_TEST);
-            juliaSet.render();
-            juliaShader.unbind();
+            double real = coords[pointsCount - 1][0] / chainLength;
+            double imag = coords[pointsCount - 1][1] / chainLength;
+            long phaseStart = Metrics.now();
+            juliaPass.render((float) real, (float) imag);
+            metrics.record(Metrics.Phase.JULIA_SUBMIT, phaseStart);   // The GPU time arrives a frame later
 
             // --- Pendulum Rendering --- //
+            phaseStart = Metrics.now();
+            frameUniforms.setProjection(projection);   // Skipped while unchanged
             pendulumShader.bind();
 
-            pendulumShader.setUniformMatrix4f("u_projection", projection);
-
             // Render the main pendulum line with current points
             GL11.glLineWidth(2.0f);
-            pendulumShader.setUniform3f("u_color", new Vector3f(1.0f, 1.0f, 1.0f));
-            pendulumShader.setUniform1f("u_alpha", 1.0f);
+            pendulumColor.set(1.0f, 1.0f, 1.0f);
+            pendulumAlpha.set(1.0f);
             lineStrip.updatePoints(coords);
             lineStrip.render(pointsCount);
 
             // Render the trail for the last point only as a fading line strip
-            pendulumShader.setUniform3f("u_color", new Vector3f(0.4f, 1.0f, 0.8f));
-
-            for (int i = 0; i < TRAIL_LENGTH - 1; i++) {
-                int idx1 = (trailIndex + i) % TRAIL_LENGTH;
-                int idx2 = (trailIndex + i + 1) % TRAIL_LENGTH;
-
-                double x1 = trailBuffer[idx1][0][0];
-                double y1 = trailBuffer[idx1][0][1];
-                double x2 = trailBuffer[idx2][0][0];
-                double y2 = trailBuffer[idx2][0][1];
+            if (trail != null) {
+                pendulumColor.set(0.4f, 1.0f, 0.8f);
+                pendulumAlpha.set(1.0f);
+                trail.render();
+            }
 
-                // Skip segments where either point is at origin (0,0)
-                if ((x1 == 0 && y1 == 0) || (x2 == 0 && y2 == 0)) {
-                    continue;
-                }
+            pendulumShader.unbind();
 
-                double[][] segment = new double[2][2];
-                segment[0][0] = x1;
-                segment[0][1] = y1;
-                segment[1][0] = x2;
-                segment[1][1] = y2;
+            // Or one trail per joint, all in a single instanced draw
+            if (jointTrails != null) {
+                jointTrails.render(1.0f);
+            }
+            metrics.record(Metrics.Phase.PENDULUM, phaseStart);
 
-                float alpha = (float) i / TRAIL_LENGTH;
-                pendulumShader.setUniform1f("u_alpha", alpha);
+            // Read back asynchronously before the swap; the copy finishes while the next frame renders
+            if (capture != null) {
+                capture.capture();
+            }
 
-                lineStrip.updatePoints(segment);
-                lineStrip.render(2);
+            // Drawn after the capture so recordings stay clean
+            if (overlay != null) {
+                overlay.render();
             }
 
-            pendulumShader.unbind();
+            checkpointIfDue();
 
+            phaseStart = Metrics.now();
             window.refresh();
+            metrics.record(Metrics.Phase.SWAP, phaseStart);
+            metrics.record(Metrics.Phase.FRAME, frameStart);
         }
     }
 
+    // --- Checkpoints --- //
+
+    // Asks the physics thread for a checkpoint on F5 or when the interval is over; written in the background
+    private void checkpointIfDue() {
+        if (checkpointPath == null) {
+            return;
+        }
+
+        boolean keyDown = window.isKeyPressed(GLFW.GLFW_KEY_F5);
+        boolean pressed = keyDown && !checkpointKeyDown;
+        checkpointKeyDown = keyDown;
+
+        long now = System.nanoTime();
+        boolean due = checkpointIntervalNanos > 0 && now - lastCheckpointNanos >= checkpointIntervalNanos;
+        if (!pressed && !due) {
+            return;
+        }
+
+        lastCheckpointNanos = now;
+        CompletableFuture<Checkpoint> request = physics.requestCheckpoint(saveTrail());
+        if (request != null) {   // Otherwise the pending request's write covers this one
+            request.thenAcceptAsync(this::writeCheckpoint, checkpointWriter);
+        }
+    }
+
+    private Checkpoint.Trail saveTrail() {
+        return jointTrails != null ? jointTrails.saveTrail() : trail.saveTrail();
+    }
+
+    private void writeCheckpoint(Checkpoint checkpoint) {
+        try {
+            checkpoint.write(checkpointPath);
+        } catch (IOException e) {
+            System.err.println("Error: Couldn't write checkpoint " + checkpointPath + ": " + e.getMessage());
+        }
+    }
+
+    // Usage: Main [--capture DIR] [--capture-format png|raw|stream] [--joint-trails] [--metrics] [--metrics-port PORT]
+    //             [--checkpoint PATH] [--checkpoint-every SECONDS] [--restore PATH]
     public static void main(String[] args) {
-        new Main();
+        Path captureDirectory = null;
+        FrameCapture.Format captureFormat = FrameCapture.Format.PNG;
+        boolean allJointTrails = false;
+        boolean showMetrics = false;
+        int metricsPort = 0;
+        Path checkpointPath = null;
+        double checkpointEvery = 0;
+        Path restorePath = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--capture":
+                    captureDirectory = Paths.get(value(args, i++));
+                    break;
+                case "--capture-format":
+                    captureFormat = FrameCapture.Format.valueOf(value(args, i++).toUpperCase(Locale.ROOT));
+                    break;
+                case "--joint-trails":
+                    allJointTrails = true;
+                    break;
+                case "--metrics":
+                    showMetrics = true;
+                    break;
+                case "--metrics-port":
+                    metricsPort = Integer.parseInt(value(args, i++));
+                    break;
+                case "--checkpoint":
+                    checkpointPath = Paths.get(value(args, i++));
+                    break;
+                case "--checkpoint-every":
+                    checkpointEvery = Double.parseDouble(value(args, i++));
+                    break;
+                case "--restore":
+                    restorePath = Paths.get(value(args, i++));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        new Main(captureDirectory, captureFormat, allJointTrails, showMetrics, metricsPort,
+                 checkpointPath, checkpointEvery, restorePath);
+    }
+
+    private static String value(String[] args, int option) {
+        if (option + 1 >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[option]);
+        }
+        return args[option + 1];
     }
 }
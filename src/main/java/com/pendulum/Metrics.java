@@ -0,0 +1,214 @@
+package com.pendulum;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Runtime measurements of the visualizer: where frame time goes and how fast
+ * the simulation runs.
+ *
+ * Each Phase has a LatencyHistogram, fed by record() with the phase's start
+ * time or by recordDuration() with a duration measured elsewhere (the GPU time
+ * of the Julia pass). Every record also emits a com.pendulum.Phase JFR event
+ * carrying the duration, so a flight recording (-XX:StartFlightRecording)
+ * lines stalls up with GC and safepoints. Events cost nothing while no recording is running.
+ *
+ * Physics steps and the bytes allocated by the tracked threads are counters;
+ * writePrometheus() renders all of it in the Prometheus text format for
+ * MetricsServer. Recording is allocation-free and safe from several threads,
+ * as long as each phase is recorded by one thread at a time.
+ */
+public final class Metrics
+{
+    // Timed sections of a frame, plus the physics thread's batches
+    public enum Phase
+    {
+        PHYSICS_BATCH("physics_batch"),   // One batch of steps on the physics thread
+        JULIA("julia_gpu"),               // GPU time of the Julia pass, from its timer queries
+        JULIA_SUBMIT("julia_submit"),     // CPU time of JuliaPass.render, i.e. issuing the pass
+        PENDULUM("pendulum"),             // Pendulum line and trails
+        SWAP("swap"),                     // Window.refresh: buffer swap, vsync wait and event polling
+        FRAME("frame");                   // One whole iteration of the render loop
+
+        private final String label;
+
+        Phase(String label)
+        {
+            this.label = label;
+        }
+
+        public String getLabel()
+        {
+            return label;
+        }
+    }
+
+    // Histogram buckets exported to Prometheus: 2^k and 1.5 * 2^k ns, from 16 us to about 1.6 s
+    private static final int MIN_EXPORTED_POWER = 14;
+    private static final int MAX_EXPORTED_POWER = 30;
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+    private final AtomicLong steps = new AtomicLong();
+
+    // Threads whose allocations are counted, replaced on every addition
+    private volatile long[] trackedThreads = new long[0];
+    private final com.sun.management.ThreadMXBean threadBean;
+
+    public Metrics()
+    {
+        for (int i = 0; i < histograms.length; i++)
+            histograms[i] = new LatencyHistogram();
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        threadBean = bean instanceof com.sun.management.ThreadMXBean
+            ? (com.sun.management.ThreadMXBean) bean
+            : null;
+    }
+
+    // --- Recording --- //
+
+    // Start time for record()
+    public static long now()
+    {
+        return System.nanoTime();
+    }
+
+    // Records a phase that started at startNanos (from now()) and ends now
+    public void record(Phase phase, long startNanos)
+    {
+        recordDuration(phase, System.nanoTime() - startNanos);
+    }
+
+    // Records a phase whose duration was measured elsewhere, e.g. by a GPU timer query
+    public void recordDuration(Phase phase, long duration)
+    {
+        histograms[phase.ordinal()].record(duration);
+
+        PhaseEvent event = new PhaseEvent();
+        if (event.shouldCommit())
+        {
+            event.phase = phase.getLabel();
+            event.elapsed = duration;
+            event.commit();
+        }
+    }
+
+    // Records a physics batch of the given number of steps that started at startNanos
+    public void recordSteps(int count, long startNanos)
+    {
+        steps.getAndAdd(count);
+        record(Phase.PHYSICS_BATCH, startNanos);
+    }
+
+    // Counts the allocations of a thread from now on, if the JVM can measure them
+    public synchronized void trackThread(Thread thread)
+    {
+        if (threadBean == null || !threadBean.isThreadAllocatedMemorySupported())
+            return;
+
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long[] ids = Arrays.copyOf(trackedThreads, trackedThreads.length + 1);
+        ids[ids.length - 1] = thread.getId();
+        trackedThreads = ids;
+    }
+
+    // --- Reading --- //
+
+    public LatencyHistogram getHistogram(Phase phase)
+    {
+        return histograms[phase.ordinal()];
+    }
+
+    public long getSteps()
+    {
+        return steps.get();
+    }
+
+    // Bytes allocated so far by the live tracked threads, or -1 if unsupported
+    public long getAllocatedBytes()
+    {
+        long[] ids = trackedThreads;
+        if (ids.length == 0)
+            return -1;
+
+        long total = 0;
+        for (long id : ids)
+            total += Math.max(0, threadBean.getThreadAllocatedBytes(id));
+        return total;
+    }
+
+    /**
+     * Appends every metric in the Prometheus text exposition format (0.0.4):
+     * a histogram in seconds per phase and counters for steps and allocations.
+     */
+    public void writePrometheus(StringBuilder out)
+    {
+        out.append("# HELP pendulum_phase_seconds Duration of the timed sections of a frame.\n");
+        out.append("# TYPE pendulum_phase_seconds histogram\n");
+        for (Phase phase : Phase.values())
+        {
+            LatencyHistogram histogram = getHistogram(phase);
+            String label = "phase=\"" + phase.getLabel() + "\"";
+            for (int power = MIN_EXPORTED_POWER; power <= MAX_EXPORTED_POWER; power++)
+            {
+                bucket(out, label, 1L << power, histogram);
+                bucket(out, label, 3L << (power - 1), histogram);
+            }
+            long count = histogram.getCount();
+            out.append("pendulum_phase_seconds_bucket{").append(label).append(",le=\"+Inf\"} ").append(count).append('\n');
+            out.append("pendulum_phase_seconds_sum{").append(label).append("} ")
+               .append(seconds(histogram.getSumNanos())).append('\n');
+            out.append("pendulum_phase_seconds_count{").append(label).append("} ").append(count).append('\n');
+        }
+
+        out.append("# HELP pendulum_physics_steps_total Integration steps taken by the physics thread.\n");
+        out.append("# TYPE pendulum_physics_steps_total counter\n");
+        out.append("pendulum_physics_steps_total ").append(getSteps()).append('\n');
+
+        long allocated = getAllocatedBytes();
+        if (allocated >= 0)
+        {
+            out.append("# HELP pendulum_allocated_bytes_total Heap bytes allocated by the render and physics threads.\n");
+            out.append("# TYPE pendulum_allocated_bytes_total counter\n");
+            out.append("pendulum_allocated_bytes_total ").append(allocated).append('\n');
+        }
+    }
+
+    private static void bucket(StringBuilder out, String label, long boundNanos, LatencyHistogram histogram)
+    {
+        out.append("pendulum_phase_seconds_bucket{").append(label).append(",le=\"").append(seconds(boundNanos))
+           .append("\"} ").append(histogram.countBelow(boundNanos)).append('\n');
+    }
+
+    private static String seconds(long nanos)
+    {
+        return String.format(Locale.ROOT, "%.9f", nanos * 1e-9);
+    }
+
+    // --- Flight recorder --- //
+
+    @Name("com.pendulum.Phase")
+    @Label("Pendulum Phase")
+    @Category("Pendulum")
+    @Description("A timed section of a frame or a physics batch; the duration is measured by Metrics.")
+    @StackTrace(false)
+    static final class PhaseEvent extends Event
+    {
+        @Label("Phase")
+        String phase;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+}
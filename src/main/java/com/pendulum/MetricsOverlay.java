@@ -0,0 +1,189 @@
+package com.pendulum;
+
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11.glDrawElements;
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_DYNAMIC_DRAW;
+import static org.lwjgl.opengl.GL15.GL_ELEMENT_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_STATIC_DRAW;
+import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glBufferSubData;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
+import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
+import static org.lwjgl.opengl.GL30.glBindVertexArray;
+import static org.lwjgl.opengl.GL30.glDeleteVertexArrays;
+import static org.lwjgl.opengl.GL30.glGenVertexArrays;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Locale;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.stb.STBEasyFont;
+
+/**
+ * Draws Metrics as text in the top-left corner of the window.
+ *
+ * Twice a second the text is rebuilt from the counters and from the difference
+ * between the current and the previous histogram snapshots, so percentiles
+ * describe the last interval rather than the whole run. stb_easy_font turns the
+ * text into quads, which are uploaded once and drawn as indexed triangles every
+ * frame: one draw for a drop shadow and one for the text.
+ */
+public class MetricsOverlay
+{
+    private static final long UPDATE_NANOS = 500_000_000L;
+    private static final float SCALE = 2.0f;
+    private static final float MARGIN = 8.0f;   // Pixels, before scaling
+
+    // stb_easy_font emits 4 vertices of x, y, z and an RGBA colour per quad
+    private static final int VERTEX_BYTES = 16;
+    private static final int QUAD_BYTES = 4 * VERTEX_BYTES;
+    private static final int MAX_QUADS = 4096;
+
+    private static final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+
+    private final Metrics metrics;
+    private final Shader shader;
+    private final Uniform.Float2 offsetUniform;
+    private final Uniform.Float4 colorUniform;
+
+    private final int vaoId;
+    private final int vboId;
+    private final int eboId;
+    private final ByteBuffer vertices = BufferUtils.createByteBuffer(MAX_QUADS * QUAD_BYTES);
+    private int quads = 0;
+
+    // Interval state
+    private final long[][] previousCounts = new long[Metrics.Phase.values().length][LatencyHistogram.BUCKETS];
+    private final long[] counts = new long[LatencyHistogram.BUCKETS];
+    private final StringBuilder text = new StringBuilder();
+    private long lastUpdate;
+    private long lastSteps;
+    private long lastAllocated;
+
+    public MetricsOverlay(Metrics metrics, int width, int height)
+    {
+        this.metrics = metrics;
+
+        shader = new Shader("overlay");
+        shader.compile();
+        shader.bind();
+        shader.getUniform2f("u_screen").set(width, height);
+        shader.getUniform1f("u_scale").set(SCALE);
+        shader.unbind();
+        offsetUniform = shader.getUniform2f("u_offset");
+        colorUniform = shader.getUniform4f("u_color");
+
+        vaoId = glGenVertexArrays();
+        glBindVertexArray(vaoId);
+
+        vboId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        glBufferData(GL_ARRAY_BUFFER, vertices.capacity(), GL_DYNAMIC_DRAW);
+        glEnableVertexAttribArray(0); // location = 0
+        glVertexAttribPointer(0, 2, GL_FLOAT, false, VERTEX_BYTES, 0);
+
+        // Two triangles per quad, shared by every upload
+        IntBuffer indices = BufferUtils.createIntBuffer(MAX_QUADS * 6);
+        for (int q = 0; q < MAX_QUADS; q++)
+        {
+            int v = q * 4;
+            indices.put(v).put(v + 1).put(v + 2).put(v).put(v + 2).put(v + 3);
+        }
+        indices.flip();
+        eboId = glGenBuffers();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, eboId);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+
+        glBindVertexArray(0);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+        lastUpdate = System.nanoTime();
+        lastSteps = metrics.getSteps();
+        lastAllocated = metrics.getAllocatedBytes();
+    }
+
+    // Draws the overlay, refreshing its text when the interval is over
+    public void render()
+    {
+        long now = System.nanoTime();
+        if (now - lastUpdate >= UPDATE_NANOS)
+        {
+            update(now - lastUpdate);
+            lastUpdate = now;
+        }
+
+        if (quads == 0)
+            return;
+
+        shader.bind();
+        glBindVertexArray(vaoId);
+
+        offsetUniform.set(SCALE, SCALE);
+        colorUniform.set(0.0f, 0.0f, 0.0f, 0.8f);
+        glDrawElements(GL_TRIANGLES, quads * 6, GL_UNSIGNED_INT, 0);
+
+        offsetUniform.set(0.0f, 0.0f);
+        colorUniform.set(1.0f, 1.0f, 0.6f, 1.0f);
+        glDrawElements(GL_TRIANGLES, quads * 6, GL_UNSIGNED_INT, 0);
+
+        glBindVertexArray(0);
+        shader.unbind();
+    }
+
+    // Rebuilds the text from the interval that just ended and uploads its quads
+    private void update(long elapsedNanos)
+    {
+        double seconds = elapsedNanos * 1e-9;
+        text.setLength(0);
+
+        long steps = metrics.getSteps();
+        text.append(String.format(Locale.ROOT, "steps/s  %,.0f\n", (steps - lastSteps) / seconds));
+        lastSteps = steps;
+
+        long allocated = metrics.getAllocatedBytes();
+        if (allocated >= 0)
+            text.append(String.format(Locale.ROOT, "alloc    %.2f MB/s\n", (allocated - lastAllocated) / seconds / 1e6));
+        lastAllocated = allocated;
+
+        text.append(String.format(Locale.ROOT, "\n%-14s %8s %8s %8s\n", "ms", "p50", "p99", "p99.9"));
+        for (Metrics.Phase phase : Metrics.Phase.values())
+        {
+            long[] previous = previousCounts[phase.ordinal()];
+            metrics.getHistogram(phase).snapshot(counts);
+            for (int i = 0; i < counts.length; i++)
+            {
+                long current = counts[i];
+                counts[i] = current - previous[i];
+                previous[i] = current;
+            }
+
+            text.append(String.format(Locale.ROOT, "%-14s", phase.getLabel()));
+            for (double quantile : QUANTILES)
+                text.append(String.format(Locale.ROOT, " %8.2f", LatencyHistogram.quantile(counts, quantile) * 1e-6));
+            text.append('\n');
+        }
+
+        vertices.clear();
+        quads = Math.min(MAX_QUADS, STBEasyFont.stb_easy_font_print(MARGIN, MARGIN, text, null, vertices));
+
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        vertices.limit(quads * QUAD_BYTES);
+        glBufferSubData(GL_ARRAY_BUFFER, 0, vertices);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    public void cleanup()
+    {
+        glDeleteBuffers(eboId);
+        glDeleteBuffers(vboId);
+        glDeleteVertexArrays(vaoId);
+        shader.delete();
+    }
+}
@@ -1,27 +1,92 @@
 package com.pendulum;
 
+import java.nio.ByteBuffer;
+
 public class Pendulum 
 {
     private final int NUM_PENDULUMS;       // Number of pendulums
     private final double DELTA_TIME;         // Time step (delta t)
-    private final double GRAVITY = -10.0;    // Gravitational acceleration (m/s^2)
+
+    private final ChainDynamics dynamics;     // Equations of motion shared with ensembles
+    private final Integrator integrator;      // Time-stepping scheme
 
     private final double[] angles;            // Angles in radians
     private final double[] angularVelocities; // Angular velocities
 
+    private final SolverWorkspace workspace;  // Scratch buffers reused by every step
+
+    // Adaptive stepping: update() covers DELTA_TIME in 2^level substeps of DELTA_TIME / 2^level
+    private static final int MAX_LEVEL = 20;
+    private static final double ERROR_CONSTANT = 16;  // Energy error of a step at stepScale, over stepScale^p
+
+    private double tolerance = 0;             // Relative energy error aimed for, 0 for fixed steps
+    private int level = 0;                    // Level of the most recent interval
+    private double referenceEnergy;           // Energy when the state was last set
+    private double energyScale;               // Divides energy differences to make them relative
+    private final double potentialScale;      // Largest potential energy of the chain, the least energyScale
+    private long acceptedSteps = 0;
+    private long rejectedSteps = 0;
+    private final double[] savedAngles;       // State before a substep, restored on rejection
+    private final double[] savedVelocities;
+
+    // Strategies for computing the angular accelerations of the chain
+    public enum Solver
+    {
+        GAUSSIAN,    // Dense mass matrix solved by pivoted Gaussian elimination, O(N^3)
+        CHOLESKY,    // Packed symmetric mass matrix solved by in-place LDL^T, O(N^3 / 3)
+        ARTICULATED  // Recursive articulated-body chain solver, O(N)
+    }
+
     public Pendulum(int numPendulums, double deltaTime, double initialAngle)
     {
-        NUM_PENDULUMS = numPendulums;
+        this(numPendulums, deltaTime, initialAngle, Solver.CHOLESKY);
+    }
+
+    public Pendulum(int numPendulums, double deltaTime, double initialAngle, Solver solver)
+    {
+        this(numPendulums, deltaTime, initialAngle, solver, Integrator.LEAPFROG);
+    }
+
+    public Pendulum(int numPendulums, double deltaTime, double initialAngle, Solver solver, Integrator integrator)
+    {
+        this(new ChainDynamics(numPendulums, solver), deltaTime, initialAngle, integrator);
+    }
+
+    /**
+     * A chain of non-uniform segments.
+     *
+     * @param masses  Mass of the bob at the end of each segment, pivot first.
+     * @param lengths Length of each segment, pivot first; the same length as masses.
+     */
+    public Pendulum(double[] masses, double[] lengths, double deltaTime, double initialAngle, Solver solver,
+                    Integrator integrator)
+    {
+        this(new ChainDynamics(masses, lengths, solver), deltaTime, initialAngle, integrator);
+    }
+
+    private Pendulum(ChainDynamics dynamics, double deltaTime, double initialAngle, Integrator integrator)
+    {
+        NUM_PENDULUMS = dynamics.getNumPendulums();
         DELTA_TIME = deltaTime;
+        this.dynamics = dynamics;
+        this.integrator = integrator;
 
         angles = new double[NUM_PENDULUMS];
         angularVelocities = new double[NUM_PENDULUMS];
+        workspace = dynamics.createWorkspace();
 
         for (int i = 0; i < NUM_PENDULUMS; i++)
         {
             angles[i] = initialAngle;
             angularVelocities[i] = 0;
         }
+
+        savedAngles = new double[NUM_PENDULUMS];
+        savedVelocities = new double[NUM_PENDULUMS];
+
+        // The largest potential energy of the chain, so a total energy near zero still gives a sane ratio
+        potentialScale = dynamics.getPotentialScale();
+        resetEnergy();
     }
 
     public int getNumPendulums()
@@ -29,129 +94,292 @@ public class Pendulum
         return NUM_PENDULUMS;
     }
 
-    // --- PHYSICS SIMULATION --- //
+    public Solver getSolver()
+    {
+        return dynamics.getSolver();
+    }
 
-    public void update()
+    public Integrator getIntegrator()
     {
-        leapfrogStep();
+        return integrator;
     }
 
-    private void leapfrogStep()
+    public double getDeltaTime()
     {
-        double[] acc = computeAccelerations();
-        double[] halfStepVelocity = new double[NUM_PENDULUMS];
+        return DELTA_TIME;
+    }
 
-        // Half-step velocity update
-        for (int i = 0; i < NUM_PENDULUMS; i++)
-        {
-            halfStepVelocity[i] = angularVelocities[i] + acc[i] * DELTA_TIME / 2.0;
-        }
+    // Mass of the bob at the end of each segment, pivot first
+    public double[] getMasses()
+    {
+        return dynamics.getMasses();
+    }
 
-        // Full-step angle update
-        for (int i = 0; i < NUM_PENDULUMS; i++)
-        {
-            angles[i] = wrapAngle(angles[i] + halfStepVelocity[i] * DELTA_TIME);
-        }
+    // Length of each segment, pivot first
+    public double[] getLengths()
+    {
+        return dynamics.getLengths();
+    }
 
-        // Recalculate acceleration
-        double[] newAcc = computeAccelerations();
+    // Whether every mass and length is 1
+    public boolean isUniform()
+    {
+        return dynamics.isUniform();
+    }
 
-        // Complete velocity step
+    // --- STATE ACCESS --- //
+
+    // Copies the angles (radians) into out, which must hold getNumPendulums() values
+    public void getAngles(double[] out)
+    {
+        System.arraycopy(angles, 0, out, 0, NUM_PENDULUMS);
+    }
+
+    // Copies the angular velocities into out, which must hold getNumPendulums() values
+    public void getAngularVelocities(double[] out)
+    {
+        System.arraycopy(angularVelocities, 0, out, 0, NUM_PENDULUMS);
+    }
+
+    // Overwrites the angles (radians); values are wrapped into [-pi, pi)
+    public void setAngles(double[] values)
+    {
+        checkLength(values);
         for (int i = 0; i < NUM_PENDULUMS; i++)
-        {
-            angularVelocities[i] = halfStepVelocity[i] + newAcc[i] * DELTA_TIME / 2.0;
-        }
+            angles[i] = ChainDynamics.wrapAngle(values[i]);
+        resetEnergy();
     }
 
-    private double[] computeAccelerations()
+    // Overwrites the angular velocities
+    public void setAngularVelocities(double[] values)
     {
-        double[][] A = buildMatrixA();
-        double[] b = buildVectorB();
-        return solveLinearSystem(A, b);
+        checkLength(values);
+        System.arraycopy(values, 0, angularVelocities, 0, NUM_PENDULUMS);
+        resetEnergy();
     }
 
-    // --- LINEAR SYSTEM SOLVER --- //
+    /**
+     * Takes over the state of a run that was advanced elsewhere from this
+     * pendulum's state, such as a LyapunovEstimator stepping the same chain. Unlike
+     * the setters it keeps the energy reference, so getEnergyDrift() still covers
+     * the whole run. Only for fixed steps.
+     */
+    void continueFrom(double[] newAngles, double[] newVelocities)
+    {
+        checkLength(newAngles);
+        checkLength(newVelocities);
+        System.arraycopy(newAngles, 0, angles, 0, NUM_PENDULUMS);
+        System.arraycopy(newVelocities, 0, angularVelocities, 0, NUM_PENDULUMS);
+    }
 
-    private double[][] buildMatrixA()
+    private void checkLength(double[] values)
     {
-        double[][] A = new double[NUM_PENDULUMS][NUM_PENDULUMS];
-        for (int i = 0; i < NUM_PENDULUMS; i++)
+        if (values.length != NUM_PENDULUMS)
+            throw new IllegalArgumentException("Expected " + NUM_PENDULUMS + " values, got " + values.length);
+    }
+
+    // --- PHYSICS SIMULATION --- //
+
+    /**
+     * Advances the chain by DELTA_TIME: in one integrator step, or with adaptive
+     * stepping on, in as many equal substeps as the fastest motion at either end
+     * of the interval needs.
+     */
+    public void update()
+    {
+        if (tolerance > 0)
+            adaptiveUpdate();
+        else
+            integrator.step(dynamics, angles, angularVelocities, DELTA_TIME, workspace);
+    }
+
+    /**
+     * Covers DELTA_TIME with 2^level equal substeps, the level chosen from the
+     * states at both ends of the interval so the choice is time-reversible.
+     *
+     * Every state has a step level: the coarsest one whose substeps stay within
+     * stepScale / frequency, where frequency is the faster of the largest angular
+     * velocity and the square root of the largest angular acceleration. The
+     * interval runs at the level of its start state and is redone one level finer
+     * until the end state asks for no finer level, so the level used is the
+     * larger of the two ends. Run backwards from the end state, with the
+     * velocities negated, the same level comes out (the level depends on |v| and
+     * on accelerations that are even in v), and the symmetric integrators retrace
+     * the interval. Nothing is carried over from earlier intervals.
+     *
+     * stepScale comes from the tolerance through the integrator's order p: the
+     * energy error of a symmetric order p scheme is bounded and scales as
+     * (h * frequency)^p, so stepScale = (tolerance / ERROR_CONSTANT)^(1/p) keeps
+     * the relative energy error near the tolerance for the Yoshida schemes.
+     * It is not enforced; getEnergyDrift() reports what a run reached.
+     */
+    private void adaptiveUpdate()
+    {
+        final double stepScale = Math.pow(tolerance / ERROR_CONSTANT, 1.0 / integrator.getOrder());
+
+        System.arraycopy(angles, 0, savedAngles, 0, NUM_PENDULUMS);
+        System.arraycopy(angularVelocities, 0, savedVelocities, 0, NUM_PENDULUMS);
+
+        level = stepLevel(stepScale);
+        while (true)
         {
-            for (int j = 0; j < NUM_PENDULUMS; j++)
+            final long substeps = 1L << level;
+            final double h = DELTA_TIME / substeps;
+            for (long s = 0; s < substeps; s++)
+                integrator.step(dynamics, angles, angularVelocities, h, workspace);
+
+            if (level == MAX_LEVEL || stepLevel(stepScale) <= level)
             {
-                A[i][j] = (NUM_PENDULUMS - Math.max(i, j)) * Math.cos(angles[i] - angles[j]);
+                acceptedSteps += substeps;
+                return;
             }
+
+            // The end state needs finer substeps: redo the interval one level down
+            System.arraycopy(savedAngles, 0, angles, 0, NUM_PENDULUMS);
+            System.arraycopy(savedVelocities, 0, angularVelocities, 0, NUM_PENDULUMS);
+            rejectedSteps += substeps;
+            level++;
         }
-        return A;
     }
 
-    private double[] buildVectorB()
+    // Step level of the current state, 0 to MAX_LEVEL
+    private int stepLevel(double stepScale)
     {
-        double[] b = new double[NUM_PENDULUMS];
+        double[] acc = dynamics.computeAccelerations(angles, angularVelocities, workspace);
+        double fastest = 0, strongest = 0;
         for (int i = 0; i < NUM_PENDULUMS; i++)
         {
-            double sum = 0;
-            for (int j = 0; j < NUM_PENDULUMS; j++)
-            {
-                int weight = NUM_PENDULUMS - Math.max(i, j);
-                double delta = angles[i] - angles[j];
-                sum -= weight * Math.sin(delta) * Math.pow(angularVelocities[j], 2);
-            }
-            sum -= GRAVITY * (NUM_PENDULUMS - i) * Math.sin(angles[i]);
-            b[i] = sum;
+            fastest = Math.max(fastest, Math.abs(angularVelocities[i]));
+            strongest = Math.max(strongest, Math.abs(acc[i]));
         }
-        return b;
+        double frequency = Math.max(fastest, Math.sqrt(strongest));
+
+        // Smallest level with DELTA_TIME / 2^level <= stepScale / frequency
+        double ratio = DELTA_TIME * frequency / stepScale;
+        if (ratio <= 1)
+            return 0;
+        if (!(ratio < Math.scalb(1.0, MAX_LEVEL)))
+            return MAX_LEVEL;
+        int exponent = Math.getExponent(ratio);
+        return ratio == Math.scalb(1.0, exponent) ? exponent : exponent + 1;
     }
 
-    private double[] solveLinearSystem(double[][] A, double[] b)
+    // --- ADAPTIVE STEPPING --- //
+
+    /**
+     * Turns adaptive stepping on with the given target for the relative energy
+     * error, or off with 0. Energies are relative to the larger of the total
+     * energy when the state was created or last set and the largest potential
+     * energy of the chain. The target sets the substep sizes through the
+     * integrator's order (see adaptiveUpdate); it is not a hard bound.
+     */
+    public void setEnergyTolerance(double tolerance)
     {
-        int N = b.length;
-        double[][] M = new double[N][N + 1];
+        if (!(tolerance >= 0))
+            throw new IllegalArgumentException("Tolerance must not be negative: " + tolerance);
 
-        for (int i = 0; i < N; i++)
-        {
-            System.arraycopy(A[i], 0, M[i], 0, N);
-            M[i][N] = b[i];
-        }
+        this.tolerance = tolerance;
+    }
 
-        // Gaussian elimination
-        for (int i = 0; i < N; i++)
-        {
-            int maxRow = i;
-            for (int k = i + 1; k < N; k++)
-            {
-                if (Math.abs(M[k][i]) > Math.abs(M[maxRow][i]))
-                    maxRow = k;
-            }
+    public double getEnergyTolerance()
+    {
+        return tolerance;
+    }
 
-            double[] temp = M[i];
-            M[i] = M[maxRow];
-            M[maxRow] = temp;
+    // Size of the most recent adaptive substep, DELTA_TIME with fixed steps
+    public double getStepSize()
+    {
+        return tolerance > 0 ? DELTA_TIME / (1L << level) : DELTA_TIME;
+    }
 
-            if (Math.abs(M[i][i]) < 1e-10)
-                continue;
+    // Adaptive substeps taken
+    public long getAcceptedSteps()
+    {
+        return acceptedSteps;
+    }
 
-            for (int k = i + 1; k < N; k++)
-            {
-                double factor = M[k][i] / M[i][i];
-                for (int j = i; j < N + 1; j++)
-                {
-                    M[k][j] -= factor * M[i][j];
-                }
-            }
-        }
+    // Adaptive substeps thrown away when an interval was redone with finer substeps
+    public long getRejectedSteps()
+    {
+        return rejectedSteps;
+    }
 
-        double[] x = new double[N];
-        for (int i = N - 1; i >= 0; i--)
-        {
-            double sum = 0;
-            for (int j = i + 1; j < N; j++)
-                sum += M[i][j] * x[j];
+    /**
+     * Integrator stages whose implicit velocity had not converged when the
+     * iteration limit was reached, since the pendulum was created. Non-zero means
+     * the reversible compositions lost their exact symmetry on some steps, and the
+     * time step should shrink.
+     */
+    public long getUnconvergedStages()
+    {
+        return workspace.unconvergedStages;
+    }
 
-            x[i] = Math.abs(M[i][i]) < 1e-10 ? 0 : (M[i][N] - sum) / M[i][i];
-        }
+    /**
+     * Acceleration evaluations since the pendulum was created, the unit of work
+     * that adaptive and fixed steps are compared in. With the CHOLESKY solver
+     * this includes the cheap re-solves of the implicit stages.
+     */
+    public long getSolverCalls()
+    {
+        return workspace.evaluations;
+    }
 
-        return x;
+    // Total kinetic plus potential energy of the current state
+    public double getEnergy()
+    {
+        return dynamics.energy(angles, angularVelocities, workspace);
+    }
+
+    // Relative energy change since the state was created or last set
+    public double getEnergyDrift()
+    {
+        return (getEnergy() - referenceEnergy) / energyScale;
+    }
+
+    // A new energy reference, and the scale that relative drifts and tolerances divide by
+    private void resetEnergy()
+    {
+        referenceEnergy = dynamics.energy(angles, angularVelocities, workspace);
+        energyScale = Math.max(Math.abs(referenceEnergy), potentialScale);
+    }
+
+    // --- CHECKPOINTS --- //
+
+    // Adaptive stepping state after the two state arrays: 3 doubles, 1 int and 2 longs
+    static final int ADAPTIVE_STATE_BYTES = 3 * Double.BYTES + Integer.BYTES + 2 * Long.BYTES;
+
+    // Bytes written by writeState
+    int getStateBytes()
+    {
+        return 2 * NUM_PENDULUMS * Double.BYTES + ADAPTIVE_STATE_BYTES;
+    }
+
+    /**
+     * Appends everything update() depends on to the buffer, so readState gives a
+     * bit-exact continuation. The integrators are stateless and the workspace is
+     * scratch overwritten by every evaluation, so neither needs saving.
+     */
+    void writeState(ByteBuffer out)
+    {
+        Checkpoint.putDoubles(out, angles);
+        Checkpoint.putDoubles(out, angularVelocities);
+        out.putDouble(tolerance).putDouble(referenceEnergy).putDouble(energyScale);
+        out.putInt(level);
+        out.putLong(acceptedSteps).putLong(rejectedSteps);
+    }
+
+    // Restores the state written by writeState, without wrapping or recomputing anything
+    void readState(ByteBuffer in)
+    {
+        Checkpoint.getDoubles(in, angles);
+        Checkpoint.getDoubles(in, angularVelocities);
+        tolerance = in.getDouble();
+        referenceEnergy = in.getDouble();
+        energyScale = in.getDouble();
+        level = in.getInt();
+        acceptedSteps = in.getLong();
+        rejectedSteps = in.getLong();
     }
 
     // --- UTILITIES --- //
@@ -165,17 +393,20 @@ public class Pendulum
         coords[0][1] = y;
         for (int i = 0; i < NUM_PENDULUMS; i++)
         {
-            x += Math.sin(angles[i]);
-            y += Math.cos(angles[i]);
+            x += dynamics.getLength(i) * Math.sin(angles[i]);
+            y += dynamics.getLength(i) * Math.cos(angles[i]);
             coords[i+1][0] = x;
             coords[i+1][1] = y;
         }
         return coords;
     }
 
-    private double wrapAngle(double angle)
+    /**
+     * Writes the joint positions into a flat buffer without allocating:
+     * x and y interleaved, pivot first, (N + 1) * 2 values in total.
+     */
+    public void getEndPointCoordinates(double[] coords)
     {
-        double twoPi = 2 * Math.PI;
-        return ((angle + Math.PI) % twoPi + twoPi) % twoPi - Math.PI;
+        dynamics.endPointCoordinates(angles, coords);
     }
 }
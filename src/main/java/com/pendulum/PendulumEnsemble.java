@@ -0,0 +1,359 @@
+package com.pendulum;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * A batch of independent N-segment chains stepped in parallel.
+ *
+ * State is kept in struct-of-arrays form: one contiguous primitive buffer for all
+ * angles and one for all angular velocities, laid out segment-major so that
+ * segment s of chain c lives at index s * size + c. Neighbouring chains are
+ * therefore adjacent in memory for every segment.
+ *
+ * Stepping splits the chains into chunks whose state fits comfortably in a
+ * per-core cache. Each chunk is gathered chain by chain into a worker-local
+ * buffer, advanced with the same Integrator and ChainDynamics as Pendulum, and
+ * scattered back. Chunks are scheduled on a fork/join pool.
+ *
+ * With setVectorized(true), the CHOLESKY solver and the LEAPFROG integrator,
+ * full groups of SIMD lanes are stepped by VectorEnsembleKernel instead, which
+ * needs the "simd" build profile and --add-modules jdk.incubator.vector at run
+ * time. Without them the ensemble silently keeps the scalar path.
+ */
+public class PendulumEnsemble
+{
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_KERNEL = "com.pendulum.VectorEnsembleKernel";
+
+    // Target bytes of chain state per chunk, about half of a typical per-core L2 cache
+    private static final int CHUNK_BYTES = 256 * 1024;
+
+    private final int SIZE;                  // Number of chains
+    private final int NUM_PENDULUMS;         // Segments per chain
+    private final double DELTA_TIME;         // Time step (delta t)
+    private final int CHUNK_SIZE;            // Chains per parallel work item
+
+    private final ChainDynamics dynamics;
+    private final Integrator integrator;
+
+    private final double[] angles;            // angles[segment * SIZE + chain]
+    private final double[] angularVelocities; // angularVelocities[segment * SIZE + chain]
+
+    private final ForkJoinPool pool;
+    private final ThreadLocal<Worker> workers;
+
+    private volatile boolean vectorized = false;
+
+    // Throughput accounting
+    private long totalChainSteps = 0;
+    private long totalNanos = 0;
+    private double lastThroughput = 0;
+
+    // Per-thread scratch memory: one chain's state plus its solver workspace
+    private static final class Worker
+    {
+        final double[] angles;
+        final double[] angularVelocities;
+        final SolverWorkspace workspace;
+        EnsembleKernel vectorKernel;      // Created on first vectorized use
+
+        Worker(ChainDynamics dynamics)
+        {
+            angles = new double[dynamics.getNumPendulums()];
+            angularVelocities = new double[dynamics.getNumPendulums()];
+            workspace = dynamics.createWorkspace();
+        }
+    }
+
+    public PendulumEnsemble(int size, int numPendulums, double deltaTime, double initialAngle)
+    {
+        this(size, numPendulums, deltaTime, initialAngle, Pendulum.Solver.CHOLESKY,
+             Runtime.getRuntime().availableProcessors());
+    }
+
+    public PendulumEnsemble(int size, int numPendulums, double deltaTime, double initialAngle,
+                            Pendulum.Solver solver, int parallelism)
+    {
+        this(size, numPendulums, deltaTime, initialAngle, solver, Integrator.LEAPFROG, parallelism);
+    }
+
+    public PendulumEnsemble(int size, int numPendulums, double deltaTime, double initialAngle,
+                            Pendulum.Solver solver, Integrator integrator, int parallelism)
+    {
+        this(size, checkSegments(numPendulums), deltaTime, initialAngle,
+             new ChainDynamics(numPendulums, solver), integrator, parallelism);
+    }
+
+    /**
+     * An ensemble of identical non-uniform chains.
+     *
+     * @param masses  Mass of the bob at the end of each segment, pivot first.
+     * @param lengths Length of each segment, pivot first; the same length as masses.
+     */
+    public PendulumEnsemble(int size, double[] masses, double[] lengths, double deltaTime, double initialAngle,
+                            Pendulum.Solver solver, Integrator integrator, int parallelism)
+    {
+        this(size, masses.length, deltaTime, initialAngle, new ChainDynamics(masses, lengths, solver), integrator,
+             parallelism);
+    }
+
+    private PendulumEnsemble(int size, int numPendulums, double deltaTime, double initialAngle,
+                             ChainDynamics dynamics, Integrator integrator, int parallelism)
+    {
+        if (size <= 0)
+            throw new IllegalArgumentException("Ensemble needs at least one chain with one segment.");
+        if ((long) size * numPendulums > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Ensemble state does not fit in a single array: " + size + " x " + numPendulums);
+
+        SIZE = size;
+        NUM_PENDULUMS = numPendulums;
+        DELTA_TIME = deltaTime;
+        CHUNK_SIZE = Math.max(1, CHUNK_BYTES / (2 * Double.BYTES * numPendulums));
+
+        this.dynamics = dynamics;
+        this.integrator = integrator;
+
+        angles = new double[size * numPendulums];
+        angularVelocities = new double[size * numPendulums];
+        Arrays.fill(angles, initialAngle);
+
+        pool = new ForkJoinPool(parallelism);
+        workers = ThreadLocal.withInitial(() -> new Worker(dynamics));
+    }
+
+    private static int checkSegments(int numPendulums)
+    {
+        if (numPendulums <= 0)
+            throw new IllegalArgumentException("Ensemble needs at least one chain with one segment.");
+        return numPendulums;
+    }
+
+    // --- PHYSICS SIMULATION --- //
+
+    /**
+     * Advances every chain by the given number of integrator steps.
+     * Blocks until all chunks are done.
+     */
+    public void step(int steps)
+    {
+        int chunks = (SIZE + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+        long start = System.nanoTime();
+        pool.submit(() -> IntStream.range(0, chunks).parallel().forEach(chunk -> stepChunk(chunk, steps))).join();
+        long elapsed = System.nanoTime() - start;
+
+        long chainSteps = (long) SIZE * steps;
+        totalChainSteps += chainSteps;
+        totalNanos += elapsed;
+        lastThroughput = elapsed > 0 ? chainSteps * 1e9 / elapsed : 0;
+    }
+
+    private void stepChunk(int chunk, int steps)
+    {
+        Worker worker = workers.get();
+        int first = chunk * CHUNK_SIZE;
+        int last = Math.min(first + CHUNK_SIZE, SIZE);
+
+        if (vectorized)
+        {
+            if (worker.vectorKernel == null)
+                worker.vectorKernel = createVectorKernel(dynamics, DELTA_TIME);
+            first = worker.vectorKernel.step(angles, angularVelocities, SIZE, first, last, steps);
+        }
+
+        // Scalar path for everything the vector kernel did not cover
+        for (int chain = first; chain < last; chain++)
+        {
+            gather(chain, worker.angles, worker.angularVelocities);
+
+            for (int s = 0; s < steps; s++)
+                integrator.step(dynamics, worker.angles, worker.angularVelocities, DELTA_TIME, worker.workspace);
+
+            scatter(chain, worker.angles, worker.angularVelocities);
+        }
+    }
+
+    // --- SIMD KERNEL --- //
+
+    /**
+     * Requests the SIMD kernel for stepping. It is only used with the CHOLESKY
+     * solver, the LEAPFROG integrator and when the Vector API kernel can be loaded;
+     * otherwise the scalar path stays active. Must not be called while step() is running.
+     *
+     * @return Whether the SIMD kernel is now active.
+     */
+    public boolean setVectorized(boolean enabled)
+    {
+        vectorized = enabled
+            && dynamics.getSolver() == Pendulum.Solver.CHOLESKY
+            && integrator == Integrator.LEAPFROG
+            && isVectorKernelAvailable();
+        return vectorized;
+    }
+
+    public boolean isVectorized()
+    {
+        return vectorized;
+    }
+
+    // True when the incubator module is resolved and the kernel class was compiled in
+    public static boolean isVectorKernelAvailable()
+    {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty())
+            return false;
+
+        try
+        {
+            Class.forName(VECTOR_KERNEL, false, PendulumEnsemble.class.getClassLoader());
+            return true;
+        }
+        catch (ClassNotFoundException | LinkageError e)
+        {
+            return false;
+        }
+    }
+
+    // Loaded reflectively so that this class links without the incubator module
+    private static EnsembleKernel createVectorKernel(ChainDynamics dynamics, double deltaTime)
+    {
+        try
+        {
+            return (EnsembleKernel) Class.forName(VECTOR_KERNEL)
+                .getDeclaredConstructor(ChainDynamics.class, double.class)
+                .newInstance(dynamics, deltaTime);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new IllegalStateException("Unable to create the SIMD ensemble kernel.", e);
+        }
+    }
+
+    // --- STATE ACCESS --- //
+
+    // Copies the state of one chain into the given arrays of length getNumPendulums()
+    public void gather(int chain, double[] chainAngles, double[] chainVelocities)
+    {
+        for (int i = 0, index = chain; i < NUM_PENDULUMS; i++, index += SIZE)
+        {
+            chainAngles[i] = angles[index];
+            chainVelocities[i] = angularVelocities[index];
+        }
+    }
+
+    // Overwrites the state of one chain from the given arrays of length getNumPendulums()
+    public void scatter(int chain, double[] chainAngles, double[] chainVelocities)
+    {
+        for (int i = 0, index = chain; i < NUM_PENDULUMS; i++, index += SIZE)
+        {
+            angles[index] = chainAngles[i];
+            angularVelocities[index] = chainVelocities[i];
+        }
+    }
+
+    public double getAngle(int chain, int segment)
+    {
+        return angles[segment * SIZE + chain];
+    }
+
+    public void setAngle(int chain, int segment, double angle)
+    {
+        angles[segment * SIZE + chain] = angle;
+    }
+
+    public double getAngularVelocity(int chain, int segment)
+    {
+        return angularVelocities[segment * SIZE + chain];
+    }
+
+    public void setAngularVelocity(int chain, int segment, double angularVelocity)
+    {
+        angularVelocities[segment * SIZE + chain] = angularVelocity;
+    }
+
+    // Bytes written by writeState
+    long getStateBytes()
+    {
+        return 2L * SIZE * NUM_PENDULUMS * Double.BYTES;
+    }
+
+    // Appends all angles, then all angular velocities, in their segment-major layout
+    void writeState(ByteBuffer out)
+    {
+        Checkpoint.putDoubles(out, angles);
+        Checkpoint.putDoubles(out, angularVelocities);
+    }
+
+    // Restores the state written by writeState for an ensemble of the same shape
+    void readState(ByteBuffer in)
+    {
+        Checkpoint.getDoubles(in, angles);
+        Checkpoint.getDoubles(in, angularVelocities);
+    }
+
+    // --- GETTERS --- //
+
+    public int getSize()
+    {
+        return SIZE;
+    }
+
+    public int getNumPendulums()
+    {
+        return NUM_PENDULUMS;
+    }
+
+    public double getDeltaTime()
+    {
+        return DELTA_TIME;
+    }
+
+    public Pendulum.Solver getSolver()
+    {
+        return dynamics.getSolver();
+    }
+
+    public Integrator getIntegrator()
+    {
+        return integrator;
+    }
+
+    // Mass of the bob at the end of each segment, pivot first
+    public double[] getMasses()
+    {
+        return dynamics.getMasses();
+    }
+
+    // Length of each segment, pivot first
+    public double[] getLengths()
+    {
+        return dynamics.getLengths();
+    }
+
+    // Chain-steps per second achieved by the last call to step()
+    public double getLastThroughput()
+    {
+        return lastThroughput;
+    }
+
+    // Chain-steps per second averaged over every call to step()
+    public double getAverageThroughput()
+    {
+        return totalNanos > 0 ? totalChainSteps * 1e9 / totalNanos : 0;
+    }
+
+    public long getTotalChainSteps()
+    {
+        return totalChainSteps;
+    }
+
+    // --- CLEANUP --- //
+
+    // Stops the worker threads; the ensemble must not be stepped afterwards
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,268 @@
+package com.pendulum;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a pendulum on its own thread, paced against the wall clock.
+ *
+ * The physics thread keeps the simulated time at simulationSpeed times the
+ * elapsed wall time and publishes a StateSnapshot through a TripleBuffer after
+ * every batch of steps. Each snapshot also carries the state published before
+ * it, since the physics thread publishes several times per frame and the render
+ * thread only sees the newest. readInterpolated() never blocks: it blends that
+ * pair at a render time one step behind the simulation, so motion stays smooth
+ * whatever the two rates are.
+ *
+ * Only one thread may call readInterpolated(). With Metrics, every batch is
+ * recorded as a PHYSICS_BATCH phase and counted towards the step total.
+ *
+ * Checkpoints are captured by the physics thread itself between two batches,
+ * on request from the render thread, so the state is always consistent and
+ * stepping only pauses for the copy.
+ */
+public class PhysicsThread implements Runnable
+{
+    // Upper bound on steps per batch so a slow machine still publishes regularly
+    private static final int MAX_STEPS_PER_BATCH = 1000;
+
+    private final Pendulum pendulum;
+    private final double simulationSpeed;    // Simulated seconds per wall-clock second
+    private final TripleBuffer<StateSnapshot> snapshots;
+    private final Thread thread;
+    private final Metrics metrics;           // null if not instrumented
+    private final double startTime;          // Simulated time at start(), non-zero when resumed
+    private final AtomicReference<CheckpointRequest> checkpointRequest = new AtomicReference<>();
+
+    private volatile boolean running = false;
+    private volatile Throwable failure = null;
+    private long startNanos;
+
+    // Owned by the physics thread
+    private double simulationTime = 0;
+    private long steps = 0;
+    private final StateSnapshot published;   // Copy of the newest snapshot, the predecessor of the next
+
+    // Owned by the render thread: copy of the newest snapshot
+    private final StateSnapshot current;
+
+    public PhysicsThread(Pendulum pendulum, double simulationSpeed)
+    {
+        this(pendulum, simulationSpeed, null);
+    }
+
+    // A pending checkpoint: the trail to store with it and where to deliver it
+    private static final class CheckpointRequest
+    {
+        final Checkpoint.Trail trail;
+        final CompletableFuture<Checkpoint> result = new CompletableFuture<>();
+
+        CheckpointRequest(Checkpoint.Trail trail)
+        {
+            this.trail = trail;
+        }
+    }
+
+    public PhysicsThread(Pendulum pendulum, double simulationSpeed, Metrics metrics)
+    {
+        this(pendulum, simulationSpeed, metrics, 0, 0);
+    }
+
+    /**
+     * @param startTime  Simulated time the pendulum has already reached, e.g. from a Checkpoint.
+     * @param startSteps Steps the pendulum has already taken.
+     */
+    public PhysicsThread(Pendulum pendulum, double simulationSpeed, Metrics metrics, double startTime, long startSteps)
+    {
+        this.pendulum = pendulum;
+        this.simulationSpeed = simulationSpeed;
+        this.metrics = metrics;
+        this.startTime = startTime;
+        simulationTime = startTime;
+        steps = startSteps;
+
+        int n = pendulum.getNumPendulums();
+        snapshots = new TripleBuffer<>(() -> new StateSnapshot(n));
+        published = new StateSnapshot(n);
+        current = new StateSnapshot(n);
+
+        // Publish the initial state so the renderer has something to draw
+        published.capture(pendulum, startTime, startSteps);
+        snapshots.back().copyFrom(published);
+        snapshots.publish();
+        current.copyFrom(snapshots.acquire());
+
+        thread = new Thread(this, "physics");
+        thread.setDaemon(true);
+        if (metrics != null)
+            metrics.trackThread(thread);
+    }
+
+    // --- Lifecycle --- //
+
+    public void start()
+    {
+        startNanos = System.nanoTime();
+        running = true;
+        thread.start();
+    }
+
+    // Stops the physics thread and waits for it to finish its current batch
+    public void stop()
+    {
+        running = false;
+        LockSupport.unpark(thread);
+        try
+        {
+            thread.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        // A request that came in after the last batch; the pendulum is no longer stepped
+        serveCheckpoint();
+    }
+
+    @Override
+    public void run()
+    {
+        try
+        {
+            final double deltaTime = pendulum.getDeltaTime();
+
+            while (running)
+            {
+                long batchStart = Metrics.now();
+                double target = startTime + (batchStart - startNanos) * 1e-9 * simulationSpeed;
+
+                int batch = 0;
+                while (simulationTime + deltaTime <= target && batch < MAX_STEPS_PER_BATCH)
+                {
+                    pendulum.update();
+                    simulationTime += deltaTime;
+                    steps++;
+                    batch++;
+                }
+
+                if (batch > 0)
+                {
+                    StateSnapshot snapshot = snapshots.back();
+                    snapshot.capture(pendulum, simulationTime, steps, published);
+                    published.copyFrom(snapshot);
+                    snapshots.publish();
+
+                    if (metrics != null)
+                        metrics.recordSteps(batch, batchStart);
+                }
+                else
+                {
+                    // Ahead of the wall clock: sleep until the next step is due
+                    double wait = (simulationTime + deltaTime - target) / simulationSpeed;
+                    LockSupport.parkNanos((long) (wait * TimeUnit.SECONDS.toNanos(1)));
+                }
+
+                serveCheckpoint();
+            }
+        }
+        catch (Throwable t)
+        {
+            failure = t;
+        }
+    }
+
+    // --- Checkpoints --- //
+
+    /**
+     * Asks the physics thread for a checkpoint of the pendulum, taken after its
+     * current batch, together with the given trail (or null). Only one thread may
+     * make requests.
+     *
+     * @return The checkpoint to come, or null if an earlier request is still
+     *         pending; its checkpoint is the one this request would have produced.
+     */
+    public CompletableFuture<Checkpoint> requestCheckpoint(Checkpoint.Trail trail)
+    {
+        if (checkpointRequest.get() != null)
+            return null;
+
+        CheckpointRequest request = new CheckpointRequest(trail);
+        checkpointRequest.set(request);
+        LockSupport.unpark(thread);
+        return request.result;
+    }
+
+    // Captures a checkpoint directly; only once stop() has returned
+    public Checkpoint checkpoint(Checkpoint.Trail trail)
+    {
+        if (thread.isAlive())
+            throw new IllegalStateException("The physics thread is still running; use requestCheckpoint().");
+        return Checkpoint.capture(pendulum, simulationTime, steps, trail);
+    }
+
+    // Captures the pending checkpoint, if any; only while the pendulum is not being stepped
+    private void serveCheckpoint()
+    {
+        CheckpointRequest request = checkpointRequest.getAndSet(null);
+        if (request == null)
+            return;
+
+        try
+        {
+            request.result.complete(Checkpoint.capture(pendulum, simulationTime, steps, request.trail));
+        }
+        catch (RuntimeException e)
+        {
+            request.result.completeExceptionally(e);
+        }
+    }
+
+    // --- Render side --- //
+
+    /**
+     * Fills coords[i] = {x, y} for every joint, interpolated between the newest
+     * snapshot and the one published just before it. Allocation-free; must always
+     * be called from the same thread.
+     *
+     * @throws IllegalStateException If the physics thread has failed.
+     */
+    public void readInterpolated(double[][] coords)
+    {
+        if (failure != null)
+            throw new IllegalStateException("Physics thread failed.", failure);
+
+        if (snapshots.hasFresh())
+            current.copyFrom(snapshots.acquire());
+
+        // Render one step behind the simulation so there is usually a state on each side
+        double renderTime = startTime + (System.nanoTime() - startNanos) * 1e-9 * simulationSpeed
+                            - pendulum.getDeltaTime();
+        double span = current.getSimulationTime() - current.getPreviousTime();
+        double alpha = span > 0 ? (renderTime - current.getPreviousTime()) / span : 1;
+        alpha = Math.max(0, Math.min(1, alpha));
+
+        double[] a = current.getPreviousCoordinates();
+        double[] b = current.getCoordinates();
+        for (int i = 0; i < coords.length; i++)
+        {
+            coords[i][0] = a[2 * i] + (b[2 * i] - a[2 * i]) * alpha;
+            coords[i][1] = a[2 * i + 1] + (b[2 * i + 1] - a[2 * i + 1]) * alpha;
+        }
+    }
+
+    // Simulated time of the newest snapshot seen by the render thread
+    public double getSimulationTime()
+    {
+        return current.getSimulationTime();
+    }
+
+    // Steps of the newest snapshot seen by the render thread
+    public long getSteps()
+    {
+        return current.getSteps();
+    }
+}
@@ -0,0 +1,171 @@
+package com.pendulum;
+
+import static org.lwjgl.opengl.GL11.GL_RENDERER;
+import static org.lwjgl.opengl.GL11.GL_VENDOR;
+import static org.lwjgl.opengl.GL11.GL_VERSION;
+import static org.lwjgl.opengl.GL11.glGetInteger;
+import static org.lwjgl.opengl.GL11.glGetString;
+import static org.lwjgl.opengl.GL20.GL_LINK_STATUS;
+import static org.lwjgl.opengl.GL20.glGetProgrami;
+import static org.lwjgl.opengl.GL41.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryStack;
+
+/**
+ * On-disk cache of linked shader programs, via glGetProgramBinary.
+ *
+ * Each entry is named by the SHA-256 of both shader sources together with the
+ * GL vendor, renderer and version strings, so an edited shader or a driver
+ * update simply misses the cache. A file holds the binary format followed by
+ * the binary. Anything that goes wrong, from a missing file to a driver that
+ * rejects an old binary, falls back to compiling from source; a rejected entry
+ * is deleted and rewritten after that compile.
+ *
+ * The cache lives in ~/.cache/pendulum/shaders unless the system property
+ * pendulum.shaderCache names another directory; "off" disables it. It is only
+ * used with OpenGL 4.1 or GL_ARB_get_program_binary and at least one binary
+ * format.
+ */
+final class ProgramBinaryCache
+{
+    private static final String PROPERTY = "pendulum.shaderCache";
+    private static final int HEADER_BYTES = Integer.BYTES;   // Binary format
+
+    private ProgramBinaryCache() {}
+
+    // Cache directory, or null if caching is disabled or unsupported by the context
+    static Path directory()
+    {
+        String setting = System.getProperty(PROPERTY);
+        if ("off".equals(setting))
+            return null;
+
+        GLCapabilities caps = GL.getCapabilities();
+        if (!(caps.OpenGL41 || caps.GL_ARB_get_program_binary) || glGetInteger(GL_NUM_PROGRAM_BINARY_FORMATS) == 0)
+            return null;
+
+        return setting != null
+            ? Paths.get(setting)
+            : Paths.get(System.getProperty("user.home"), ".cache", "pendulum", "shaders");
+    }
+
+    // Cache key of a program built from the given sources on the current driver
+    static String key(String vertexSource, String fragmentSource)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : new String[] { vertexSource, fragmentSource, glGetString(GL_VENDOR),
+                                              glGetString(GL_RENDERER), glGetString(GL_VERSION) })
+            {
+                digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest())
+                hex.append(String.format("%02x", b & 0xFF));
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    /**
+     * Loads a cached binary into the given, freshly created program.
+     *
+     * @return Whether the program is now linked from the cache.
+     */
+    static boolean load(Path directory, String key, int program)
+    {
+        Path file = directory.resolve(key + ".bin");
+        if (!Files.isRegularFile(file))
+            return false;
+
+        try
+        {
+            byte[] bytes = Files.readAllBytes(file);
+            if (bytes.length <= HEADER_BYTES)
+                throw new IOException("Truncated program binary.");
+
+            ByteBuffer buffer = BufferUtils.createByteBuffer(bytes.length).put(bytes);
+            buffer.flip();
+            int format = buffer.order(ByteOrder.LITTLE_ENDIAN).getInt(0);
+            buffer.position(HEADER_BYTES);
+
+            glProgramBinary(program, format, buffer);
+            if (glGetProgrami(program, GL_LINK_STATUS) != 0)
+                return true;
+        }
+        catch (IOException e)
+        {
+            // Fall through: unreadable entries are dropped like rejected ones
+        }
+
+        // The driver rejected the binary, e.g. after an update with the same version string
+        try
+        {
+            Files.deleteIfExists(file);
+        }
+        catch (IOException ignored)
+        {
+            // Overwritten after the source compile anyway
+        }
+        return false;
+    }
+
+    // Stores the binary of a program linked with GL_PROGRAM_BINARY_RETRIEVABLE_HINT
+    static void store(Path directory, String key, int program)
+    {
+        int length = glGetProgrami(program, GL_PROGRAM_BINARY_LENGTH);
+        if (length <= 0)
+            return;
+
+        ByteBuffer binary = BufferUtils.createByteBuffer(length);
+        int format;
+        try (MemoryStack stack = MemoryStack.stackPush())
+        {
+            IntBuffer written = stack.mallocInt(1);
+            IntBuffer formatBuffer = stack.mallocInt(1);
+            glGetProgramBinary(program, written, formatBuffer, binary);
+            binary.limit(written.get(0));
+            format = formatBuffer.get(0);
+        }
+
+        byte[] bytes = new byte[HEADER_BYTES + binary.remaining()];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(format);
+        binary.get(bytes, HEADER_BYTES, bytes.length - HEADER_BYTES);
+
+        try
+        {
+            // Write a temporary file and move it in place, so readers never see half an entry
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, key, ".tmp");
+            Files.write(temporary, bytes);
+            Files.move(temporary, directory.resolve(key + ".bin"), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            // The cache is an optimisation; the program is already linked
+            System.err.println("Warning: Couldn't cache shader program: " + e.getMessage());
+        }
+    }
+}
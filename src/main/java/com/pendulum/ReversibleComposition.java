@@ -0,0 +1,192 @@
+package com.pendulum;
+
+/**
+ * Higher-order integrators built by composing a symmetric second-order step.
+ *
+ * A step of size h runs the base step with sizes w_1 h, w_2 h, ..., w_s h. With
+ * a time-symmetric base and suitably chosen weights (Yoshida 1990, Forest and
+ * Ruth 1990) the composition gains two or four orders of accuracy.
+ *
+ * The accelerations of the chain depend on the angular velocities, so the base
+ * steps are the generalized Stoermer-Verlet schemes, which treat the velocity
+ * argument implicitly to stay symmetric:
+ *
+ *   velocity form (kick-drift-kick):
+ *     v' = v + h/2 a(q, v'),  q1 = q + h v',  v1 = v' + h/2 a(q1, v')
+ *
+ *   position form (drift-kick-drift):
+ *     q' = q + h/2 v,  v1 = v + h a(q', (v + v1) / 2),  q1 = q' + h/2 v1
+ *
+ * The base steps work in angles and angular velocities rather than canonical
+ * momenta, so they are symmetric and time-reversible but not symplectic; the
+ * compositions inherit the order and the reversibility, not a symplectic structure.
+ *
+ * The implicit velocity is found by fixed-point iteration. All iterations of one
+ * stage share the angles, so the CHOLESKY solver reuses its factorization and only
+ * re-solves the right-hand side. A stage still moving after MAX_ITERATIONS is
+ * kept, but it is no longer exactly symmetric, so it is counted in the workspace
+ * (see Pendulum.getUnconvergedStages) instead of passing silently.
+ */
+final class ReversibleComposition implements Integrator
+{
+    // Fixed-point iteration stops once the velocity update is this small. At the default
+    // 0.0025 s step of a 20-segment chain an iteration shrinks the update by only 8 to 25x
+    // while the chain whips, so the cap leaves room for the slowest stages.
+    private static final double TOLERANCE = 1e-14;
+    private static final int MAX_ITERATIONS = 30;
+
+    private final String name;
+    private final int order;
+    private final double[] weights;
+    private final boolean positionForm;
+
+    private ReversibleComposition(String name, int order, double[] weights, boolean positionForm)
+    {
+        this.name = name;
+        this.order = order;
+        this.weights = weights;
+        this.positionForm = positionForm;
+    }
+
+    // --- Schemes --- //
+
+    // Weights of the 4th-order triple jump shared by Yoshida and Forest-Ruth
+    private static double[] tripleJump()
+    {
+        double w1 = 1.0 / (2.0 - Math.cbrt(2.0));
+        double w0 = 1.0 - 2.0 * w1;
+        return new double[] { w1, w0, w1 };
+    }
+
+    static ReversibleComposition yoshida4()
+    {
+        return new ReversibleComposition("yoshida4", 4, tripleJump(), false);
+    }
+
+    static ReversibleComposition yoshida6()
+    {
+        double w1 = -1.17767998417887;
+        double w2 = 0.235573213359357;
+        double w3 = 0.784513610477560;
+        double w0 = 1.0 - 2.0 * (w1 + w2 + w3);
+        return new ReversibleComposition("yoshida6", 6, new double[] { w3, w2, w1, w0, w1, w2, w3 }, false);
+    }
+
+    static ReversibleComposition forestRuth()
+    {
+        return new ReversibleComposition("forest-ruth", 4, tripleJump(), true);
+    }
+
+    // --- Integrator --- //
+
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public int getOrder()
+    {
+        return order;
+    }
+
+    @Override
+    public void step(ChainDynamics dynamics, double[] angles, double[] angularVelocities, double deltaTime,
+                     SolverWorkspace workspace)
+    {
+        for (double weight : weights)
+        {
+            if (positionForm)
+                driftKickDrift(dynamics, angles, angularVelocities, weight * deltaTime, workspace);
+            else
+                kickDriftKick(dynamics, angles, angularVelocities, weight * deltaTime, workspace);
+        }
+    }
+
+    // --- Base steps --- //
+
+    private void kickDriftKick(ChainDynamics dynamics, double[] angles, double[] angularVelocities, double h,
+                               SolverWorkspace workspace)
+    {
+        final int N = dynamics.getNumPendulums();
+        double[] half = workspace.stageVelocity;
+
+        // Implicit half kick: v' = v + h/2 a(q, v')
+        double[] acc = dynamics.computeAccelerations(angles, angularVelocities, workspace);
+        for (int i = 0; i < N; i++)
+            half[i] = angularVelocities[i] + acc[i] * h / 2.0;
+
+        boolean converged = false;
+        for (int iteration = 1; iteration < MAX_ITERATIONS && !converged; iteration++)
+        {
+            acc = dynamics.recomputeAccelerations(angles, half, workspace);
+
+            double change = 0, scale = 1;
+            for (int i = 0; i < N; i++)
+            {
+                double next = angularVelocities[i] + acc[i] * h / 2.0;
+                change = Math.max(change, Math.abs(next - half[i]));
+                scale = Math.max(scale, Math.abs(next));
+                half[i] = next;
+            }
+            converged = change <= TOLERANCE * scale;
+        }
+        if (!converged)
+            workspace.unconvergedStages++;
+
+        // Drift
+        for (int i = 0; i < N; i++)
+            angles[i] = ChainDynamics.wrapAngle(angles[i] + half[i] * h);
+
+        // Explicit half kick: v1 = v' + h/2 a(q1, v')
+        acc = dynamics.computeAccelerations(angles, half, workspace);
+        for (int i = 0; i < N; i++)
+            angularVelocities[i] = half[i] + acc[i] * h / 2.0;
+    }
+
+    private void driftKickDrift(ChainDynamics dynamics, double[] angles, double[] angularVelocities, double h,
+                                SolverWorkspace workspace)
+    {
+        final int N = dynamics.getNumPendulums();
+        double[] next = workspace.halfStepVelocity;
+        double[] midpoint = workspace.stageVelocity;
+
+        // Half drift
+        for (int i = 0; i < N; i++)
+            angles[i] += angularVelocities[i] * h / 2.0;
+
+        // Implicit kick: v1 = v + h a(q', (v + v1) / 2)
+        double[] acc = dynamics.computeAccelerations(angles, angularVelocities, workspace);
+        for (int i = 0; i < N; i++)
+            next[i] = angularVelocities[i] + acc[i] * h;
+
+        boolean converged = false;
+        for (int iteration = 1; iteration < MAX_ITERATIONS && !converged; iteration++)
+        {
+            for (int i = 0; i < N; i++)
+                midpoint[i] = (angularVelocities[i] + next[i]) / 2.0;
+
+            acc = dynamics.recomputeAccelerations(angles, midpoint, workspace);
+
+            double change = 0, scale = 1;
+            for (int i = 0; i < N; i++)
+            {
+                double v = angularVelocities[i] + acc[i] * h;
+                change = Math.max(change, Math.abs(v - next[i]));
+                scale = Math.max(scale, Math.abs(v));
+                next[i] = v;
+            }
+            converged = change <= TOLERANCE * scale;
+        }
+        if (!converged)
+            workspace.unconvergedStages++;
+
+        // Half drift with the new velocities
+        for (int i = 0; i < N; i++)
+        {
+            angularVelocities[i] = next[i];
+            angles[i] = ChainDynamics.wrapAngle(angles[i] + next[i] * h / 2.0);
+        }
+    }
+}
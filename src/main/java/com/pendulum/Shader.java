@@ -6,15 +6,18 @@ import org.joml.Vector2f;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
 import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL41;
+import org.lwjgl.system.MemoryStack;
 
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.IntBuffer;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.function.IntConsumer;
 
 public class Shader 
 {
@@ -25,7 +28,11 @@ public class Shader
     private String vertex_shader;
     private String fragment_shader;
 
-    private final Map<String, Integer> uniformCache = new HashMap<>();
+    // Locations of every active uniform, resolved once by compile()
+    private final Map<String, Integer> uniformLocations = new HashMap<>();
+
+    // Typed handles handed out so far, shared by the name-based setters
+    private final Map<String, Uniform> uniformHandles = new HashMap<>();
 
     // Toggle uniform not-found warnings
     private boolean verbose = true;
@@ -34,18 +41,21 @@ public class Shader
         this.verbose = verbose;
     }
 
-    private final String shader_file_path = "pendulum/src/main/resource/shader/"; // Base path for shader files
+    private final String shader_file_path = "/shader/"; // Classpath base path for shader files
+
+    // Name of the shader, used in messages
+    private final String shader_name;
 
     
     /**
-     * Constructor that takes separate file paths for the vertex and fragment shaders.
-     * Loads the content of each file into the respective shader code variables.
+     * Constructor that takes the name of a shader pair on the classpath.
+     * Loads shader/NAME.vert and shader/NAME.frag into the respective shader code variables.
      *
-     * @param vertex_file_path   The path to the vertex shader source file.
-     * @param fragment_file_path The path to the fragment shader source file.
+     * @param shader_name The name of the shader files, without extension.
      */
     public Shader(String shader_name) 
     {
+        this.shader_name = shader_name;
         final String path = shader_file_path + shader_name;
 
         try 
@@ -61,41 +71,101 @@ public class Shader
     }
 
     /**
-     * Loads the shader source from a file.
+     * Loads the shader source from a classpath resource.
      *
-     * @param file_path The shader source file path.
+     * @param file_path The shader source resource path.
      * @return The shader source code as a string.
-     * @throws IOException If there's an error reading the file.
+     * @throws IOException If there's an error reading the resource.
      */
     private String loadShaderSource(String file_path) throws IOException 
     {
-        // Check if the file exists before attempting to read it
-        if (!Files.exists(Paths.get(file_path))) 
+        try (InputStream in = Shader.class.getResourceAsStream(file_path)) 
         {
-            throw new RuntimeException("Shader file not found: " + file_path);
-        }
+            // Check if the resource exists before attempting to read it
+            if (in == null) 
+            {
+                throw new RuntimeException("Shader file not found on the classpath: " + file_path);
+            }
 
-        return Files.readString(Paths.get(file_path), StandardCharsets.UTF_8);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
     }
 
     /**
      * Compiles and links the vertex and fragment shaders into a single shader program.
+     * Reuses a cached program binary when one matches the sources and the driver.
      */
     public void compile() 
     {
+        Path cache = ProgramBinaryCache.directory();
+        String key = cache != null ? ProgramBinaryCache.key(vertex_shader, fragment_shader) : null;
+
+        program_ID = GL20.glCreateProgram();
+        if (cache != null && ProgramBinaryCache.load(cache, key, program_ID)) 
+        {
+            resolveUniforms();
+            return;
+        }
+
+        // Binary missing or rejected: start over with a clean program
+        GL20.glDeleteProgram(program_ID);
+        program_ID = GL20.glCreateProgram();
+
         int vertex_ID = compileShader(vertex_shader, GL20.GL_VERTEX_SHADER);
         int fragment_ID = compileShader(fragment_shader, GL20.GL_FRAGMENT_SHADER);
 
-        program_ID = GL20.glCreateProgram();
         GL20.glAttachShader(program_ID, vertex_ID);
         GL20.glAttachShader(program_ID, fragment_ID);
 
+        if (cache != null) 
+            GL41.glProgramParameteri(program_ID, GL41.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL20.GL_TRUE);
+
         GL20.glLinkProgram(program_ID);
 
         checkLinkingErrors();
 
+        GL20.glDetachShader(program_ID, vertex_ID);
+        GL20.glDetachShader(program_ID, fragment_ID);
         GL20.glDeleteShader(vertex_ID);
         GL20.glDeleteShader(fragment_ID);
+
+        if (cache != null) 
+            ProgramBinaryCache.store(cache, key, program_ID);
+
+        resolveUniforms();
+    }
+
+
+    /**
+     * Records the location of every active uniform and attaches the shared
+     * per-frame uniform block, if the program declares it.
+     */
+    private void resolveUniforms() 
+    {
+        uniformLocations.clear();
+        uniformHandles.clear();
+
+        int count = GL20.glGetProgrami(program_ID, GL20.GL_ACTIVE_UNIFORMS);
+        try (MemoryStack stack = MemoryStack.stackPush()) 
+        {
+            IntBuffer size = stack.mallocInt(1);
+            IntBuffer type = stack.mallocInt(1);
+            for (int i = 0; i < count; i++) 
+            {
+                String name = GL20.glGetActiveUniform(program_ID, i, size, type);
+                if (name.endsWith("[0]")) 
+                    name = name.substring(0, name.length() - 3);
+
+                // Members of uniform blocks have no location
+                int location = GL20.glGetUniformLocation(program_ID, name);
+                if (location != -1) 
+                    uniformLocations.put(name, location);
+            }
+        }
+
+        int block = GL31.glGetUniformBlockIndex(program_ID, UniformBuffer.FRAME_BLOCK);
+        if (block != GL31.GL_INVALID_INDEX) 
+            GL31.glUniformBlockBinding(program_ID, block, UniformBuffer.FRAME_BINDING);
     }
 
 
@@ -143,66 +213,125 @@ public class Shader
         {
             String log = GL20.glGetProgramInfoLog(program_ID);
             System.err.println("Shader linking error:\n" + log);
-            throw new RuntimeException("Shader linking failed.");
+            throw new RuntimeException("Shader linking failed (" + shader_name + ").");
         }
     }
 
     /**
-     * Retrieves the location of a uniform variable in the shader program.
-     * Caches the location for future use to avoid repeated lookups.
+     * Retrieves the location of a uniform variable in the shader program,
+     * as resolved by compile().
      * 
      * @param name
      * @return The location of the uniform variable, or -1 if not found.
      */
     public int getUniformLocation(String name) 
     {
-        return uniformCache.computeIfAbsent(name, key -> 
+        Integer location = uniformLocations.get(name);
+        if (location == null) 
         {
-            int location = GL20.glGetUniformLocation(program_ID, key);
-            if (location == -1 && verbose) 
-            {
-                System.err.println("Warning: Uniform '" + key + "' not found.");
-            }
-            return location;
-        });
+            if (verbose) 
+                System.err.println("Warning: Uniform '" + name + "' not found.");
+
+            // Remember the miss so the warning is printed once
+            uniformLocations.put(name, -1);
+            return -1;
+        }
+        return location;
     }
 
-    /**
-     * Executes the provided action if the uniform variable is found in the shader program.
-     * 
-     * @param name   The name of the uniform variable.
-     * @param action The action to perform with the uniform location.
-     */
-    private void withUniform(String name, IntConsumer action) 
+
+    // --- Typed uniform handles ---
+
+    // Handle for a float uniform; look it up once and keep it
+    public Uniform.Float1 getUniform1f(String name) 
     {
-        int location = getUniformLocation(name);
+        Uniform handle = uniformHandles.get(name);
+        if (handle == null) 
+            handle = addHandle(new Uniform.Float1(name, getUniformLocation(name)));
+        return cast(handle, Uniform.Float1.class);
+    }
 
-        // Only execute the action if the uniform location is valid (not -1)
-        if (location != -1) 
+    // Handle for an int, bool or sampler uniform
+    public Uniform.Int1 getUniform1i(String name) 
+    {
+        Uniform handle = uniformHandles.get(name);
+        if (handle == null) 
+            handle = addHandle(new Uniform.Int1(name, getUniformLocation(name)));
+        return cast(handle, Uniform.Int1.class);
+    }
+
+    // Handle for a vec2 uniform
+    public Uniform.Float2 getUniform2f(String name) 
+    {
+        Uniform handle = uniformHandles.get(name);
+        if (handle == null) 
+            handle = addHandle(new Uniform.Float2(name, getUniformLocation(name)));
+        return cast(handle, Uniform.Float2.class);
+    }
+
+    // Handle for a vec3 uniform
+    public Uniform.Float3 getUniform3f(String name) 
+    {
+        Uniform handle = uniformHandles.get(name);
+        if (handle == null) 
+            handle = addHandle(new Uniform.Float3(name, getUniformLocation(name)));
+        return cast(handle, Uniform.Float3.class);
+    }
+
+    // Handle for a vec4 uniform
+    public Uniform.Float4 getUniform4f(String name) 
+    {
+        Uniform handle = uniformHandles.get(name);
+        if (handle == null) 
+            handle = addHandle(new Uniform.Float4(name, getUniformLocation(name)));
+        return cast(handle, Uniform.Float4.class);
+    }
+
+    // Handle for a mat4 uniform
+    public Uniform.Matrix4 getUniformMatrix4f(String name) 
+    {
+        Uniform handle = uniformHandles.get(name);
+        if (handle == null) 
+            handle = addHandle(new Uniform.Matrix4(name, getUniformLocation(name)));
+        return cast(handle, Uniform.Matrix4.class);
+    }
+
+    private Uniform addHandle(Uniform handle) 
+    {
+        uniformHandles.put(handle.getName(), handle);
+        return handle;
+    }
+
+    private static <T extends Uniform> T cast(Uniform handle, Class<T> type) 
+    {
+        if (!type.isInstance(handle)) 
         {
-            action.accept(location);
+            throw new IllegalArgumentException("Uniform '" + handle.getName() + "' is already used as "
+                                               + handle.getClass().getSimpleName());
         }
+        return type.cast(handle);
     }
 
 
      // --- Setters for uniform values ---
+     // Convenience by name; the render loop should keep handles instead.
 
     // Sets a float uniform in the shader program.
     public void setUniform1f(String name, float v) 
     {
-        withUniform(name, loc -> GL20.glUniform1f(loc, v));
+        getUniform1f(name).set(v);
     }
 
-    // Sets a 1D vector uniform in the shader program.
+    // Sets an int uniform in the shader program.
     public void setUniform1i(String name, int v) 
     {
-        withUniform(name, loc -> GL20.glUniform1i(loc, v));
+        getUniform1i(name).set(v);
     }
 
-    // Sets a 1D vector uniform in the shader program.
+    // Sets a 2D vector uniform in the shader program.
     public void setUniform2f(String name, float x, float y) 
     {
-        withUniform(name, loc -> GL20.glUniform2f(loc, x, y));
+        getUniform2f(name).set(x, y);
     }
 
     // Sets a 2D vector uniform in the shader program.
@@ -211,16 +340,18 @@ public class Shader
         setUniform2f(name, v.x, v.y);
     }
 
-    // Sets a 2D vector uniform in the shader program.
+    // Sets a 2D integer vector uniform in the shader program.
     public void setUniform2i(String name, int x, int y) 
     {
-        withUniform(name, loc -> GL20.glUniform2i(loc, x, y));
+        int location = getUniformLocation(name);
+        if (location != -1) 
+            GL20.glUniform2i(location, x, y);
     }
 
-    // Sets a 2D vector uniform in the shader program.
+    // Sets a 3D vector uniform in the shader program.
     public void setUniform3f(String name, float x, float y, float z) 
     {
-        withUniform(name, loc -> GL20.glUniform3f(loc, x, y, z));
+        getUniform3f(name).set(x, y, z);
     }
 
     // Sets a 3D vector uniform in the shader program.
@@ -229,10 +360,10 @@ public class Shader
         setUniform3f(name, v.x, v.y, v.z);
     }
 
-    // Sets a 3D vector uniform in the shader program.
+    // Sets a 4D vector uniform in the shader program.
     public void setUniform4f(String name, float x, float y, float z, float w) 
     {
-        withUniform(name, loc -> GL20.glUniform4f(loc, x, y, z, w));
+        getUniform4f(name).set(x, y, z, w);
     }
 
     // Sets a 4D vector uniform in the shader program.
@@ -244,12 +375,7 @@ public class Shader
     // Sets a 4x4 matrix uniform in the shader program.
     public void setUniformMatrix4f(String name, Matrix4f matrix) 
     {
-        withUniform(name, loc -> 
-        {
-            float[] buffer = new float[16];
-            matrix.get(buffer);
-            GL20.glUniformMatrix4fv(loc, false, buffer);
-        });
+        getUniformMatrix4f(name).set(matrix);
     }
 
 
@@ -0,0 +1,62 @@
+package com.pendulum;
+
+/**
+ * Preallocated scratch memory for one pendulum chain.
+ *
+ * All buffers are sized once at construction, so stepping a chain through this
+ * workspace allocates nothing. Buffers that the chosen solver never touches are
+ * left empty. Dense matrices are stored flat in row-major order: element (i, j)
+ * of an N x N matrix lives at index i * N + j.
+ */
+final class SolverWorkspace
+{
+    final int size;                // Number of segments the buffers are sized for
+
+    // --- Trigonometry cache, refreshed once per evaluation --- //
+    final double[] sin;
+    final double[] cos;
+
+    // --- Dense solvers --- //
+    final double[] matrix;         // Full mass matrix A, eliminated in place (Gaussian)
+    final double[] lower;          // Packed lower triangle of A, factorized in place (Cholesky)
+    final double[] factorScratch;  // Scratch rows for the LDL^T factorization
+    final double[] rhs;            // Right-hand side b
+
+    // --- Stepping --- //
+    final double[] acceleration;   // Angular accelerations of the last evaluation
+    final double[] halfStepVelocity;
+    final double[] stageVelocity;  // Implicit velocity of a symmetric integrator stage
+    long unconvergedStages;        // Stages whose implicit velocity hit the iteration limit
+    long evaluations;              // Acceleration evaluations, full or right-hand side only
+
+    // --- Articulated-body solver --- //
+    final double[] couplingX;      // u = J n, coupling of a joint to its rod
+    final double[] couplingY;
+    final double[] inertia;        // D = n . J n, inertia felt by a rod
+    final double[] bias;           // n . z, bias force normal to a rod
+
+    SolverWorkspace(int size, Pendulum.Solver solver)
+    {
+        this.size = size;
+
+        sin = new double[size];
+        cos = new double[size];
+
+        boolean gaussian = solver == Pendulum.Solver.GAUSSIAN;
+        boolean cholesky = solver == Pendulum.Solver.CHOLESKY;
+        matrix = new double[gaussian ? size * size : 0];
+        lower = new double[cholesky ? SymmetricSolver.packedSize(size) : 0];
+        factorScratch = new double[cholesky ? SymmetricSolver.scratchSize(size) : 0];
+        rhs = new double[size];
+
+        acceleration = new double[size];
+        halfStepVelocity = new double[size];
+        stageVelocity = new double[size];
+
+        int chain = solver == Pendulum.Solver.ARTICULATED ? size : 0;
+        couplingX = new double[chain];
+        couplingY = new double[chain];
+        inertia = new double[chain];
+        bias = new double[chain];
+    }
+}
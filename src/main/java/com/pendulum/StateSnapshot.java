@@ -0,0 +1,76 @@
+package com.pendulum;
+
+/**
+ * A consistent copy of a pendulum's state, exchanged between the physics thread
+ * and the renderer. It also carries the state published just before it, so a
+ * reader that skips snapshots can still interpolate between two consecutive ones.
+ */
+public class StateSnapshot
+{
+    private final double[] coordinates;           // Joint positions, x and y interleaved, pivot first
+    private double simulationTime;                // Simulated seconds since the start
+    private long steps;                           // Integrator steps taken so far
+
+    private final double[] previousCoordinates;   // Joint positions of the snapshot published before this one
+    private double previousTime;                  // Its simulated time
+
+    public StateSnapshot(int numPendulums)
+    {
+        coordinates = new double[(numPendulums + 1) * 2];
+        previousCoordinates = new double[coordinates.length];
+    }
+
+    // Captures the current joint positions of the pendulum, following the given snapshot
+    void capture(Pendulum pendulum, double simulationTime, long steps, StateSnapshot predecessor)
+    {
+        System.arraycopy(predecessor.coordinates, 0, previousCoordinates, 0, coordinates.length);
+        previousTime = predecessor.simulationTime;
+        pendulum.getEndPointCoordinates(coordinates);
+        this.simulationTime = simulationTime;
+        this.steps = steps;
+    }
+
+    // Captures the first state of a run, which has no predecessor: both states are the same
+    void capture(Pendulum pendulum, double simulationTime, long steps)
+    {
+        pendulum.getEndPointCoordinates(coordinates);
+        System.arraycopy(coordinates, 0, previousCoordinates, 0, coordinates.length);
+        this.simulationTime = simulationTime;
+        previousTime = simulationTime;
+        this.steps = steps;
+    }
+
+    void copyFrom(StateSnapshot other)
+    {
+        System.arraycopy(other.coordinates, 0, coordinates, 0, coordinates.length);
+        System.arraycopy(other.previousCoordinates, 0, previousCoordinates, 0, coordinates.length);
+        simulationTime = other.simulationTime;
+        previousTime = other.previousTime;
+        steps = other.steps;
+    }
+
+    public double[] getCoordinates()
+    {
+        return coordinates;
+    }
+
+    public double getSimulationTime()
+    {
+        return simulationTime;
+    }
+
+    public long getSteps()
+    {
+        return steps;
+    }
+
+    public double[] getPreviousCoordinates()
+    {
+        return previousCoordinates;
+    }
+
+    public double getPreviousTime()
+    {
+        return previousTime;
+    }
+}
@@ -0,0 +1,169 @@
+package com.pendulum;
+
+/**
+ * In-place LDL^T factorization for symmetric positive definite systems.
+ *
+ * Matrices are stored as a packed lower triangle in row-major order: element
+ * (i, j) with j <= i lives at index i * (i + 1) / 2 + j. After factorization the
+ * strictly lower part holds the unit lower triangular L and the diagonal holds D.
+ * No pivoting is performed; a matrix that is not positive definite fails loudly.
+ */
+final class SymmetricSolver
+{
+    // Rows per block in the blocked factorization
+    static final int BLOCK_SIZE = 32;
+
+    // Smallest size for which factorize() switches to the blocked variant
+    static final int BLOCKED_THRESHOLD = 128;
+
+    // A pivot must keep at least this fraction of its original diagonal entry
+    private static final double PIVOT_TOLERANCE = 1e-12;
+
+    private SymmetricSolver() {}
+
+    // Number of doubles needed to store the lower triangle of an n x n matrix
+    static int packedSize(int n)
+    {
+        return n * (n + 1) / 2;
+    }
+
+    // Number of doubles of scratch memory needed by factorize() for an n x n matrix
+    static int scratchSize(int n)
+    {
+        return n >= BLOCKED_THRESHOLD ? BLOCK_SIZE * n : n;
+    }
+
+    static int index(int i, int j)
+    {
+        return i * (i + 1) / 2 + j;
+    }
+
+    /**
+     * Factorizes the packed matrix in place, picking the blocked variant for large n.
+     *
+     * @param lower   Packed lower triangle of A, overwritten with L and D.
+     * @param n       Matrix size.
+     * @param scratch At least scratchSize(n) doubles.
+     */
+    static void factorize(double[] lower, int n, double[] scratch)
+    {
+        if (n >= BLOCKED_THRESHOLD)
+            factorizeBlocked(lower, n, scratch);
+        else
+            factorizeUnblocked(lower, n, scratch);
+    }
+
+    /**
+     * Row-by-row LDL^T. For row i the scratch holds w_j = L_ij * D_j, so every
+     * inner loop is a dot product over two contiguous packed rows.
+     */
+    static void factorizeUnblocked(double[] lower, int n, double[] scratch)
+    {
+        double[] w = scratch;
+        for (int i = 0; i < n; i++)
+        {
+            int ri = index(i, 0);
+            for (int j = 0; j < i; j++)
+            {
+                int rj = index(j, 0);
+                double sum = lower[ri + j];
+                for (int k = 0; k < j; k++)
+                    sum -= w[k] * lower[rj + k];
+                w[j] = sum;
+            }
+
+            double diagonal = lower[ri + i];
+            for (int j = 0; j < i; j++)
+            {
+                double l = w[j] / lower[index(j, j)];
+                lower[ri + j] = l;
+                diagonal -= w[j] * l;
+            }
+
+            lower[ri + i] = checkPivot(diagonal, lower[ri + i], i);
+        }
+    }
+
+    /**
+     * Blocked LDL^T. Scratch row (i - start) holds w_ik = L_ik * D_k for the rows
+     * of the current block. Rows are processed BLOCK_SIZE at a time: each earlier row j is
+     * streamed through the cache once per block instead of once per row, which
+     * keeps the working set of the dot products small for large n.
+     */
+    static void factorizeBlocked(double[] lower, int n, double[] scratch)
+    {
+        for (int start = 0; start < n; start += BLOCK_SIZE)
+        {
+            int end = Math.min(start + BLOCK_SIZE, n);
+
+            for (int j = 0; j < end; j++)
+            {
+                int rj = index(j, 0);
+
+                // Row j belongs to this block: all of its L entries are final, so finish D_j
+                if (j >= start)
+                {
+                    int oj = (j - start) * n;
+                    double diagonal = lower[rj + j];
+                    for (int k = 0; k < j; k++)
+                        diagonal -= scratch[oj + k] * lower[rj + k];
+                    lower[rj + j] = checkPivot(diagonal, lower[rj + j], j);
+                }
+
+                double dj = lower[rj + j];
+                for (int i = Math.max(start, j + 1); i < end; i++)
+                {
+                    int ri = index(i, 0);
+                    int oi = (i - start) * n;
+                    double sum = lower[ri + j];
+                    for (int k = 0; k < j; k++)
+                        sum -= scratch[oi + k] * lower[rj + k];
+                    scratch[oi + j] = sum;
+                    lower[ri + j] = sum / dj;
+                }
+            }
+        }
+    }
+
+    /**
+     * Solves L D L^T x = b with a factorized matrix. b and x may be the same array.
+     */
+    static void solve(double[] lower, int n, double[] b, double[] x)
+    {
+        if (x != b)
+            System.arraycopy(b, 0, x, 0, n);
+
+        // Forward substitution: L y = b
+        for (int i = 0; i < n; i++)
+        {
+            int ri = index(i, 0);
+            double sum = x[i];
+            for (int k = 0; k < i; k++)
+                sum -= lower[ri + k] * x[k];
+            x[i] = sum;
+        }
+
+        // Diagonal: D z = y
+        for (int i = 0; i < n; i++)
+            x[i] /= lower[index(i, i)];
+
+        // Back substitution: L^T x = z, sweeping the packed rows from the bottom
+        for (int i = n - 1; i > 0; i--)
+        {
+            int ri = index(i, 0);
+            double xi = x[i];
+            for (int k = 0; k < i; k++)
+                x[k] -= lower[ri + k] * xi;
+        }
+    }
+
+    private static double checkPivot(double pivot, double original, int row)
+    {
+        if (!(pivot > PIVOT_TOLERANCE * Math.abs(original)))
+        {
+            throw new IllegalStateException(
+                "Matrix is not positive definite: pivot " + pivot + " at row " + row);
+        }
+        return pivot;
+    }
+}
@@ -0,0 +1,157 @@
+package com.pendulum;
+
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL11.GL_LINE_STRIP;
+import static org.lwjgl.opengl.GL11.glDrawArrays;
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_DYNAMIC_DRAW;
+import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glBufferSubData;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
+import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
+import static org.lwjgl.opengl.GL30.glBindVertexArray;
+import static org.lwjgl.opengl.GL30.glDeleteVertexArrays;
+import static org.lwjgl.opengl.GL30.glGenVertexArrays;
+
+/**
+ * A fading trail of the most recent positions of one point.
+ *
+ * The history lives in a single vertex buffer used as a ring: push() uploads
+ * only the newest sample into its slot, and render() draws the whole trail as
+ * at most two line strips, oldest part first. The ring has one extra vertex
+ * that mirrors slot 0, so the strip that ends at the last slot connects to the
+ * first one without a third draw.
+ *
+ * The fade is computed in pendulum.vert from the slot index (gl_VertexID) and
+ * the u_trail_head and u_trail_length uniforms: the oldest sample is fully
+ * transparent and the newest is nearly opaque.
+ */
+public class TrailRenderer
+{
+    private final int LENGTH;   // Samples in the ring
+
+    private final int vaoId;
+    private final int vboId;
+    private final float[] sample = new float[2];
+    private final float[] history;   // Copy of the ring for checkpoints, x and y per slot
+
+    // Fade uniforms of the pendulum shader
+    private final Uniform.Int1 headUniform;
+    private final Uniform.Int1 lengthUniform;
+
+    private int head = -1;      // Slot of the newest sample
+    private int count = 0;      // Samples pushed so far, at most LENGTH
+
+    /**
+     * @param shader The pendulum shader the trail is drawn with.
+     */
+    public TrailRenderer(int length, Shader shader)
+    {
+        if (length < 2)
+            throw new IllegalArgumentException("A trail needs at least two samples.");
+
+        LENGTH = length;
+        history = new float[length * 2];
+        headUniform = shader.getUniform1i("u_trail_head");
+        lengthUniform = shader.getUniform1i("u_trail_length");
+
+        vaoId = glGenVertexArrays();
+        glBindVertexArray(vaoId);
+
+        vboId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        glBufferData(GL_ARRAY_BUFFER, (long) (length + 1) * 2 * Float.BYTES, GL_DYNAMIC_DRAW);
+
+        glEnableVertexAttribArray(0); // location = 0
+        glVertexAttribPointer(0, 2, GL_FLOAT, false, 2 * Float.BYTES, 0);
+
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
+    }
+
+    // Appends a sample, overwriting the oldest one once the ring is full
+    public void push(double x, double y)
+    {
+        head = (head + 1) % LENGTH;
+        count = Math.min(count + 1, LENGTH);
+
+        sample[0] = (float) x;
+        sample[1] = (float) y;
+        history[2 * head] = sample[0];
+        history[2 * head + 1] = sample[1];
+
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        glBufferSubData(GL_ARRAY_BUFFER, (long) head * 2 * Float.BYTES, sample);
+        if (head == 0)
+            glBufferSubData(GL_ARRAY_BUFFER, (long) LENGTH * 2 * Float.BYTES, sample);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Draws the trail with the bound pendulum shader, then turns the trail fade
+     * off again so later draws with the same shader are unaffected.
+     */
+    public void render()
+    {
+        if (count < 2)
+            return;
+
+        headUniform.set(head);
+        lengthUniform.set(LENGTH);
+
+        glBindVertexArray(vaoId);
+        if (count == LENGTH && head < LENGTH - 1)
+        {
+            // Oldest samples: the slots after head, up to the mirror of slot 0
+            glDrawArrays(GL_LINE_STRIP, head + 1, LENGTH - head);
+        }
+        glDrawArrays(GL_LINE_STRIP, count == LENGTH ? 0 : head + 1 - count, Math.min(count, head + 1));
+        glBindVertexArray(0);
+
+        lengthUniform.set(0);
+    }
+
+    // Forgets every sample
+    public void clear()
+    {
+        head = -1;
+        count = 0;
+    }
+
+    // Copies the ring for a checkpoint
+    public Checkpoint.Trail saveTrail()
+    {
+        return new Checkpoint.Trail(1, LENGTH, head, count, history.clone());
+    }
+
+    // Replaces the ring with a saved one of the same length, re-uploading every slot
+    public void restoreTrail(Checkpoint.Trail trail)
+    {
+        if (trail.getJoints() != 1 || trail.getLength() != LENGTH)
+            throw new IllegalArgumentException("Trail of " + trail.getJoints() + " x " + trail.getLength()
+                                               + " samples does not fit a ring of " + LENGTH);
+
+        System.arraycopy(trail.getHistory(), 0, history, 0, history.length);
+        head = trail.getHead();
+        count = trail.getCount();
+
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        glBufferSubData(GL_ARRAY_BUFFER, 0, history);
+        glBufferSubData(GL_ARRAY_BUFFER, (long) LENGTH * 2 * Float.BYTES, new float[] { history[0], history[1] });
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    public int getLength()
+    {
+        return LENGTH;
+    }
+
+    public void cleanup()
+    {
+        glDeleteBuffers(vboId);
+        glDeleteVertexArrays(vaoId);
+    }
+}
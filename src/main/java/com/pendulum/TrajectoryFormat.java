@@ -0,0 +1,111 @@
+package com.pendulum;
+
+import java.nio.ByteOrder;
+
+import com.pendulum.TrajectoryWriter.Encoding;
+
+/**
+ * Layout of the binary trajectory files written by TrajectoryWriter.
+ *
+ * All values are little-endian.
+ *
+ *   header    HEADER_BYTES, see the offsets below
+ *   lengths   one double per segment, pivot first
+ *   chunk*    one per keyframe interval of frames
+ *   index     one long file offset per chunk
+ *
+ * A chunk starts with CHUNK_HEADER_BYTES (frame count, delta width), then its
+ * keyframe, then the remaining frames. Within one chunk every frame after the
+ * keyframe has the same size, so frame f of a chunk starts at a computable
+ * offset and any frame of the file can be located in O(1) through the index.
+ *
+ * State encodings:
+ *   RAW        angles and velocities as doubles in every frame
+ *   QUANTIZED  angles and velocities as ints in every frame
+ *   DELTA      the keyframe is QUANTIZED; every later frame stores the residual
+ *              of a linear prediction from the two frames before it,
+ *              q[f] - (2 q[f-1] - q[f-2]) (just q[f] - q[f-1] for the first one),
+ *              in 1 to 4 bytes per value: the smallest width that fits the chunk.
+ *              Decoding a frame replays at most one keyframe interval of residuals.
+ *
+ * Angles are quantized to 2^32 steps per turn, so wrapping at +-pi is exact
+ * integer overflow. Velocities are quantized in steps of the header's velocity
+ * scale and saturate at the int range.
+ *
+ * When ENDPOINTS is set every frame is followed by (N + 1) * 2 floats holding the
+ * joint positions as returned by Pendulum.getEndPointCoordinates. Otherwise the
+ * reader recomputes them from the angles and the segment lengths.
+ */
+final class TrajectoryFormat
+{
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    static final int MAGIC = 0x5254504E;   // "NPTR"
+    static final int VERSION = 1;
+
+    // Header field offsets
+    static final int HEADER_BYTES = 64;
+    static final int OFFSET_MAGIC = 0;
+    static final int OFFSET_VERSION = 4;
+    static final int OFFSET_SEGMENTS = 8;
+    static final int OFFSET_ENCODING = 12;
+    static final int OFFSET_FLAGS = 16;
+    static final int OFFSET_KEYFRAME_INTERVAL = 20;
+    static final int OFFSET_FRAME_INTERVAL = 24;
+    static final int OFFSET_VELOCITY_SCALE = 32;
+    static final int OFFSET_FRAME_COUNT = 40;
+    static final int OFFSET_INDEX = 48;
+
+    static final int FLAG_ENDPOINTS = 1;
+
+    static final int CHUNK_HEADER_BYTES = 8;
+
+    static final double ANGLE_STEP = 2 * Math.PI / 4294967296.0;
+
+    private TrajectoryFormat() {}
+
+    static int quantizeAngle(double angle)
+    {
+        return (int) Math.round(angle / ANGLE_STEP);
+    }
+
+    static double dequantizeAngle(int value)
+    {
+        return value * ANGLE_STEP;
+    }
+
+    static int quantizeVelocity(double velocity, double scale)
+    {
+        long value = Math.round(velocity / scale);
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+    }
+
+    static double dequantizeVelocity(int value, double scale)
+    {
+        return value * scale;
+    }
+
+    // Bytes of the segment lengths between the header and the first chunk
+    static int lengthsBytes(int segments)
+    {
+        return segments * Double.BYTES;
+    }
+
+    // Bytes of joint positions stored after each frame
+    static int endPointBytes(int segments, boolean endPoints)
+    {
+        return endPoints ? (segments + 1) * 2 * Float.BYTES : 0;
+    }
+
+    // Bytes of state in a keyframe
+    static int keyframeStateBytes(int segments, Encoding encoding)
+    {
+        return 2 * segments * (encoding == Encoding.RAW ? Double.BYTES : Integer.BYTES);
+    }
+
+    // Bytes of state in a frame that follows the keyframe of its chunk
+    static int frameStateBytes(int segments, Encoding encoding, int deltaWidth)
+    {
+        return encoding == Encoding.DELTA ? 2 * segments * deltaWidth : keyframeStateBytes(segments, encoding);
+    }
+}
@@ -0,0 +1,363 @@
+package com.pendulum;
+
+import static com.pendulum.TrajectoryFormat.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.pendulum.TrajectoryWriter.Encoding;
+
+/**
+ * Random-access playback of a file written by TrajectoryWriter.
+ *
+ * Only the header and the chunk index are read onto the heap. Frame data is
+ * memory-mapped one chunk at a time, so seeking to any frame costs one index
+ * lookup, at most one mapping and the decoding of at most one keyframe interval
+ * of frames, however long the recording is. Sequential playback stays within
+ * the same mapped chunk for keyframeInterval frames and, for DELTA files,
+ * continues from the last decoded frame.
+ *
+ * Not thread-safe; open one reader per thread.
+ */
+public class TrajectoryReader implements AutoCloseable
+{
+    private final FileChannel channel;
+    private final int segments;
+    private final double[] lengths;     // Segment lengths, all 1 for version 1 files
+    private final Encoding encoding;
+    private final boolean endPoints;
+    private final int keyframeInterval;
+    private final double frameInterval;
+    private final double velocityScale;
+    private final long frameCount;
+    private final long[] index;
+    private final long indexOffset;
+
+    // The chunk that is currently mapped
+    private int mappedChunk = -1;
+    private MappedByteBuffer chunk;
+    private int deltaWidth;
+
+    // DELTA: the last decoded frame and the one before it, quantized
+    private final int[] decoded;
+    private final int[] decodedPrevious;
+    private long decodedFrame = -1;
+
+    // Scratch for interpolation
+    private final double[] nextAngles;
+    private final double[] nextVelocities;
+    private final double[] coordinates;
+    private final double[] nextCoordinates;
+
+    public TrajectoryReader(Path path) throws IOException
+    {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ORDER);
+            readFully(header, 0);
+
+            if (header.getInt(OFFSET_MAGIC) != MAGIC)
+                throw new IOException("Not a trajectory file: " + path);
+            int version = header.getInt(OFFSET_VERSION);
+            if (version != VERSION)
+                throw new IOException("Unsupported trajectory version " + version);
+
+            segments = header.getInt(OFFSET_SEGMENTS);
+            lengths = new double[segments];
+            ByteBuffer table = ByteBuffer.allocate(lengthsBytes(segments)).order(ORDER);
+            readFully(table, HEADER_BYTES);
+            for (int i = 0; i < segments; i++)
+                lengths[i] = table.getDouble(i * Double.BYTES);
+            encoding = Encoding.values()[header.getInt(OFFSET_ENCODING)];
+            endPoints = (header.getInt(OFFSET_FLAGS) & FLAG_ENDPOINTS) != 0;
+            keyframeInterval = header.getInt(OFFSET_KEYFRAME_INTERVAL);
+            frameInterval = header.getDouble(OFFSET_FRAME_INTERVAL);
+            velocityScale = header.getDouble(OFFSET_VELOCITY_SCALE);
+            frameCount = header.getLong(OFFSET_FRAME_COUNT);
+            indexOffset = header.getLong(OFFSET_INDEX);
+
+            if (indexOffset == 0)
+                throw new IOException("Trajectory file was not closed properly: " + path);
+
+            int chunks = (int) ((frameCount + keyframeInterval - 1) / keyframeInterval);
+            ByteBuffer indexBuffer = ByteBuffer.allocate(chunks * Long.BYTES).order(ORDER);
+            readFully(indexBuffer, indexOffset);
+            index = new long[chunks];
+            for (int i = 0; i < chunks; i++)
+                index[i] = indexBuffer.getLong(i * Long.BYTES);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+
+        decoded = new int[2 * segments];
+        decodedPrevious = new int[2 * segments];
+        nextAngles = new double[segments];
+        nextVelocities = new double[segments];
+        coordinates = new double[(segments + 1) * 2];
+        nextCoordinates = new double[(segments + 1) * 2];
+    }
+
+    // --- Getters --- //
+
+    public int getSegments()
+    {
+        return segments;
+    }
+
+    // Length of each segment, pivot first
+    public double[] getLengths()
+    {
+        return lengths.clone();
+    }
+
+    public long getFrameCount()
+    {
+        return frameCount;
+    }
+
+    // Simulated seconds between consecutive frames
+    public double getFrameInterval()
+    {
+        return frameInterval;
+    }
+
+    // Simulated seconds covered by the recording
+    public double getDuration()
+    {
+        return Math.max(0, frameCount - 1) * frameInterval;
+    }
+
+    public boolean hasEndPoints()
+    {
+        return endPoints;
+    }
+
+    public Encoding getEncoding()
+    {
+        return encoding;
+    }
+
+    // --- Frame access --- //
+
+    /**
+     * Decodes one frame into the given arrays of length getSegments().
+     */
+    public void readFrame(long frame, double[] angles, double[] velocities) throws IOException
+    {
+        int offset = locate(frame);
+        if (encoding == Encoding.DELTA)
+            decodeDelta(frame);
+
+        for (int i = 0; i < segments; i++)
+        {
+            switch (encoding)
+            {
+                case RAW:
+                    angles[i] = chunk.getDouble(offset + i * Double.BYTES);
+                    velocities[i] = chunk.getDouble(offset + (segments + i) * Double.BYTES);
+                    break;
+
+                case QUANTIZED:
+                    angles[i] = dequantizeAngle(chunk.getInt(offset + i * Integer.BYTES));
+                    velocities[i] = dequantizeVelocity(chunk.getInt(offset + (segments + i) * Integer.BYTES), velocityScale);
+                    break;
+
+                default:
+                    angles[i] = dequantizeAngle(decoded[i]);
+                    velocities[i] = dequantizeVelocity(decoded[segments + i], velocityScale);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Reads the joint positions of one frame, x and y interleaved, pivot first.
+     * Recomputed from the angles and the stored segment lengths when the file
+     * holds no end points.
+     */
+    public void readEndPoints(long frame, double[] coords) throws IOException
+    {
+        if (!endPoints)
+        {
+            readFrame(frame, nextAngles, nextVelocities);
+            toEndPoints(nextAngles, coords);
+            return;
+        }
+
+        int offset = locate(frame) + stateBytes(frame);
+        for (int i = 0; i < coords.length; i++)
+            coords[i] = chunk.getFloat(offset + i * Float.BYTES);
+    }
+
+    // --- Playback --- //
+
+    /**
+     * Samples the state at any simulated time, interpolating linearly between the
+     * two surrounding frames (angles along the shorter arc). Times outside the
+     * recording are clamped, so playback can run at any speed.
+     */
+    public void sample(double time, double[] angles, double[] velocities) throws IOException
+    {
+        double position = clampPosition(time);
+        long frame = (long) Math.floor(position);
+        double alpha = position - frame;
+
+        readFrame(frame, angles, velocities);
+        if (alpha == 0 || frame + 1 >= frameCount)
+            return;
+
+        readFrame(frame + 1, nextAngles, nextVelocities);
+        for (int i = 0; i < segments; i++)
+        {
+            double delta = Math.IEEEremainder(nextAngles[i] - angles[i], 2 * Math.PI);
+            angles[i] = ChainDynamics.wrapAngle(angles[i] + delta * alpha);
+            velocities[i] += (nextVelocities[i] - velocities[i]) * alpha;
+        }
+    }
+
+    /**
+     * Samples the joint positions at any simulated time into coords[i] = {x, y}.
+     */
+    public void sampleEndPoints(double time, double[][] coords) throws IOException
+    {
+        double position = clampPosition(time);
+        long frame = (long) Math.floor(position);
+        double alpha = position - frame;
+        long next = Math.min(frame + 1, frameCount - 1);
+
+        double[] a = coordinates;
+        double[] b = nextCoordinates;
+        readEndPoints(frame, a);
+        readEndPoints(next, b);
+        for (int i = 0; i < coords.length; i++)
+        {
+            coords[i][0] = a[2 * i] + (b[2 * i] - a[2 * i]) * alpha;
+            coords[i][1] = a[2 * i + 1] + (b[2 * i + 1] - a[2 * i + 1]) * alpha;
+        }
+    }
+
+    // --- Internals --- //
+
+    private double clampPosition(double time)
+    {
+        if (frameCount == 0)
+            throw new IllegalStateException("Trajectory has no frames.");
+        return Math.max(0, Math.min(frameCount - 1, time / frameInterval));
+    }
+
+    // Maps the chunk holding the frame and returns the frame's offset within it
+    private int locate(long frame) throws IOException
+    {
+        if (frame < 0 || frame >= frameCount)
+            throw new IndexOutOfBoundsException("Frame " + frame + " of " + frameCount);
+
+        int chunkIndex = (int) (frame / keyframeInterval);
+        if (chunkIndex != mappedChunk)
+        {
+            long start = index[chunkIndex];
+            long end = chunkIndex + 1 < index.length ? index[chunkIndex + 1] : indexOffset;
+            chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            chunk.order(ORDER);
+            deltaWidth = chunk.getInt(Integer.BYTES);
+            mappedChunk = chunkIndex;
+        }
+
+        return frameOffset((int) (frame % keyframeInterval));
+    }
+
+    // Offset of the given frame of the mapped chunk
+    private int frameOffset(int within)
+    {
+        int keyframeBytes = keyframeStateBytes(segments, encoding) + endPointBytes(segments, endPoints);
+        int frameBytes = frameStateBytes(segments, encoding, deltaWidth) + endPointBytes(segments, endPoints);
+        return within == 0 ? CHUNK_HEADER_BYTES : CHUNK_HEADER_BYTES + keyframeBytes + (within - 1) * frameBytes;
+    }
+
+    /**
+     * Brings decoded up to the given frame of the mapped chunk, continuing from
+     * the last decoded frame when possible and from the keyframe otherwise.
+     */
+    private void decodeDelta(long frame)
+    {
+        long keyframe = frame - frame % keyframeInterval;
+        if (decodedFrame < keyframe || decodedFrame > frame)
+        {
+            for (int k = 0; k < decoded.length; k++)
+                decoded[k] = chunk.getInt(CHUNK_HEADER_BYTES + k * Integer.BYTES);
+            decodedFrame = keyframe;
+        }
+
+        while (decodedFrame < frame)
+        {
+            int within = (int) (++decodedFrame - keyframe);
+            int offset = frameOffset(within);
+            for (int k = 0; k < decoded.length; k++)
+            {
+                // Integer overflow wraps the angles around +-pi exactly as they were encoded
+                int previous = decoded[k];
+                int prediction = within == 1 ? previous : 2 * previous - decodedPrevious[k];
+                decodedPrevious[k] = previous;
+                decoded[k] = prediction + getDelta(offset, k);
+            }
+        }
+    }
+
+    private int stateBytes(long frame)
+    {
+        return frame % keyframeInterval == 0
+            ? keyframeStateBytes(segments, encoding)
+            : frameStateBytes(segments, encoding, deltaWidth);
+    }
+
+    private int getDelta(int offset, int value)
+    {
+        switch (deltaWidth)
+        {
+            case 1:  return chunk.get(offset + value);
+            case 2:  return chunk.getShort(offset + value * Short.BYTES);
+            case 3:  return (chunk.getShort(offset + value * 3) & 0xFFFF) | chunk.get(offset + value * 3 + 2) << 16;
+            default: return chunk.getInt(offset + value * Integer.BYTES);
+        }
+    }
+
+    private void toEndPoints(double[] angles, double[] coords)
+    {
+        double x = 0, y = 0;
+        coords[0] = x;
+        coords[1] = y;
+        for (int i = 0; i < segments; i++)
+        {
+            x += lengths[i] * Math.sin(angles[i]);
+            y += lengths[i] * Math.cos(angles[i]);
+            coords[2 * i + 2] = x;
+            coords[2 * i + 3] = y;
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long offset) throws IOException
+    {
+        int read = 0;
+        while (buffer.hasRemaining())
+        {
+            int n = channel.read(buffer, offset + read);
+            if (n < 0)
+                throw new IOException("Unexpected end of trajectory file.");
+            read += n;
+        }
+        buffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+}
@@ -0,0 +1,328 @@
+package com.pendulum;
+
+import static com.pendulum.TrajectoryFormat.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Streams a pendulum trajectory to a chunked binary file, see TrajectoryFormat.
+ *
+ * Frames are collected in memory until a chunk of keyframeInterval frames is
+ * complete, then encoded into a reusable direct buffer and written through a
+ * FileChannel in a single call. The chunk index and the frame count are written
+ * by close(); a file that was not closed cannot be read.
+ */
+public class TrajectoryWriter implements AutoCloseable
+{
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 64;
+    public static final double DEFAULT_VELOCITY_SCALE = 1e-6;
+
+    // How the state of each frame is stored, see TrajectoryFormat
+    public enum Encoding
+    {
+        RAW,        // 16 bytes per segment per frame, lossless
+        QUANTIZED,  // 8 bytes per segment per frame
+        DELTA       // 2 to 8 bytes per segment per frame, predicted from the previous frames
+    }
+
+    private final FileChannel channel;
+    private final int segments;
+    private final double[] lengths;      // Segment lengths, stored so readers can rebuild joint positions
+    private Pendulum checkedPendulum;    // Last pendulum whose lengths matched, to check each one once
+    private final Encoding encoding;
+    private final boolean endPoints;
+    private final int keyframeInterval;
+    private final double velocityScale;
+
+    // Frames of the current chunk, not yet encoded
+    private final double[] rawStates;    // RAW: 2N doubles per frame
+    private final int[] quantizedStates; // QUANTIZED/DELTA: 2N ints per frame
+    private final float[] positions;     // (N + 1) * 2 floats per frame
+    private final double[] coordinates;  // Scratch for append(Pendulum)
+    private final double[] angles;
+    private final double[] angularVelocities;
+    private int chunkFrames = 0;
+
+    private final ByteBuffer chunkBuffer;
+    private long[] index = new long[64];
+    private int chunkCount = 0;
+    private long frameCount = 0;
+    private long position;
+
+    // A recording of a chain of unit segments
+    public TrajectoryWriter(Path path, int segments, double frameInterval, Encoding encoding, boolean endPoints)
+        throws IOException
+    {
+        this(path, unitLengths(segments), frameInterval, encoding, endPoints, DEFAULT_KEYFRAME_INTERVAL,
+             DEFAULT_VELOCITY_SCALE);
+    }
+
+    // A recording of a chain of unit segments, see below
+    public TrajectoryWriter(Path path, int segments, double frameInterval, Encoding encoding, boolean endPoints,
+                            int keyframeInterval, double velocityScale) throws IOException
+    {
+        this(path, unitLengths(segments), frameInterval, encoding, endPoints, keyframeInterval, velocityScale);
+    }
+
+    // A recording of a chain with the given segment lengths, e.g. Pendulum.getLengths()
+    public TrajectoryWriter(Path path, double[] lengths, double frameInterval, Encoding encoding, boolean endPoints)
+        throws IOException
+    {
+        this(path, lengths, frameInterval, encoding, endPoints, DEFAULT_KEYFRAME_INTERVAL, DEFAULT_VELOCITY_SCALE);
+    }
+
+    /**
+     * @param lengths          Length of each segment, pivot first; one per segment.
+     * @param frameInterval    Simulated seconds between consecutive frames.
+     * @param keyframeInterval Frames per chunk; each chunk starts with a keyframe.
+     * @param velocityScale    Quantization step of the velocities (rad/s per unit).
+     */
+    public TrajectoryWriter(Path path, double[] lengths, double frameInterval, Encoding encoding, boolean endPoints,
+                            int keyframeInterval, double velocityScale) throws IOException
+    {
+        final int segments = lengths.length;
+        if (segments <= 0 || keyframeInterval <= 0 || !(frameInterval > 0) || !(velocityScale > 0))
+            throw new IllegalArgumentException("Invalid trajectory parameters.");
+        for (double length : lengths)
+        {
+            if (!(length > 0) || Double.isInfinite(length))
+                throw new IllegalArgumentException("Segment lengths must be positive and finite: " + length);
+        }
+
+        this.segments = segments;
+        this.lengths = lengths.clone();
+        this.encoding = encoding;
+        this.endPoints = endPoints;
+        this.keyframeInterval = keyframeInterval;
+        this.velocityScale = velocityScale;
+
+        rawStates = new double[encoding == Encoding.RAW ? keyframeInterval * 2 * segments : 0];
+        quantizedStates = new int[encoding == Encoding.RAW ? 0 : keyframeInterval * 2 * segments];
+        positions = new float[endPoints ? keyframeInterval * (segments + 1) * 2 : 0];
+        coordinates = new double[(segments + 1) * 2];
+        angles = new double[segments];
+        angularVelocities = new double[segments];
+
+        // Widest possible chunk: keyframe plus full-width frames
+        int frameBytes = keyframeStateBytes(segments, encoding) + endPointBytes(segments, endPoints);
+        chunkBuffer = ByteBuffer.allocateDirect(CHUNK_HEADER_BYTES + keyframeInterval * frameBytes).order(ORDER);
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                   StandardOpenOption.TRUNCATE_EXISTING);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ORDER);
+        header.putInt(OFFSET_MAGIC, MAGIC);
+        header.putInt(OFFSET_VERSION, VERSION);
+        header.putInt(OFFSET_SEGMENTS, segments);
+        header.putInt(OFFSET_ENCODING, encoding.ordinal());
+        header.putInt(OFFSET_FLAGS, endPoints ? FLAG_ENDPOINTS : 0);
+        header.putInt(OFFSET_KEYFRAME_INTERVAL, keyframeInterval);
+        header.putDouble(OFFSET_FRAME_INTERVAL, frameInterval);
+        header.putDouble(OFFSET_VELOCITY_SCALE, velocityScale);
+        writeFully(header, 0);
+
+        ByteBuffer table = ByteBuffer.allocate(lengthsBytes(segments)).order(ORDER);
+        for (double length : lengths)
+            table.putDouble(length);
+        table.flip();
+        position = HEADER_BYTES + writeFully(table, HEADER_BYTES);
+    }
+
+    private static double[] unitLengths(int segments)
+    {
+        double[] lengths = new double[Math.max(0, segments)];
+        Arrays.fill(lengths, 1);
+        return lengths;
+    }
+
+    // --- Recording --- //
+
+    /**
+     * Appends the current state of the pendulum as the next frame.
+     *
+     * @throws IllegalArgumentException If the pendulum's segment lengths differ
+     *                                  from the recording's, which would make
+     *                                  recomputed joint positions wrong.
+     */
+    public void append(Pendulum pendulum) throws IOException
+    {
+        if (pendulum != checkedPendulum)
+        {
+            if (!Arrays.equals(pendulum.getLengths(), lengths))
+                throw new IllegalArgumentException("Pendulum segment lengths " + Arrays.toString(pendulum.getLengths())
+                                                   + " differ from the recording's " + Arrays.toString(lengths));
+            checkedPendulum = pendulum;
+        }
+
+        pendulum.getAngles(angles);
+        pendulum.getAngularVelocities(angularVelocities);
+        if (endPoints)
+            pendulum.getEndPointCoordinates(coordinates);
+        append(angles, angularVelocities, coordinates);
+    }
+
+    /**
+     * Appends one frame.
+     *
+     * @param coords Joint positions, x and y interleaved, pivot first; ignored
+     *               unless the file stores end points.
+     */
+    public void append(double[] frameAngles, double[] frameVelocities, double[] coords) throws IOException
+    {
+        int base = chunkFrames * 2 * segments;
+        for (int i = 0; i < segments; i++)
+        {
+            if (encoding == Encoding.RAW)
+            {
+                rawStates[base + i] = frameAngles[i];
+                rawStates[base + segments + i] = frameVelocities[i];
+            }
+            else
+            {
+                quantizedStates[base + i] = quantizeAngle(frameAngles[i]);
+                quantizedStates[base + segments + i] = quantizeVelocity(frameVelocities[i], velocityScale);
+            }
+        }
+
+        if (endPoints)
+        {
+            int offset = chunkFrames * coordinates.length;
+            for (int i = 0; i < coordinates.length; i++)
+                positions[offset + i] = (float) coords[i];
+        }
+
+        frameCount++;
+        if (++chunkFrames == keyframeInterval)
+            flushChunk();
+    }
+
+    private void flushChunk() throws IOException
+    {
+        if (chunkFrames == 0)
+            return;
+
+        int width = encoding == Encoding.DELTA ? deltaWidth() : 0;
+        int values = 2 * segments;
+
+        ByteBuffer buffer = chunkBuffer;
+        buffer.clear();
+        buffer.putInt(chunkFrames);
+        buffer.putInt(width);
+
+        for (int frame = 0; frame < chunkFrames; frame++)
+        {
+            int base = frame * values;
+            if (encoding == Encoding.RAW)
+            {
+                for (int k = 0; k < values; k++)
+                    buffer.putDouble(rawStates[base + k]);
+            }
+            else if (encoding == Encoding.QUANTIZED || frame == 0)
+            {
+                for (int k = 0; k < values; k++)
+                    buffer.putInt(quantizedStates[base + k]);
+            }
+            else
+            {
+                for (int k = 0; k < values; k++)
+                    putDelta(buffer, residual(frame, k), width);
+            }
+
+            if (endPoints)
+            {
+                int offset = frame * coordinates.length;
+                for (int i = 0; i < coordinates.length; i++)
+                    buffer.putFloat(positions[offset + i]);
+            }
+        }
+        buffer.flip();
+
+        if (chunkCount == index.length)
+            index = Arrays.copyOf(index, index.length * 2);
+        index[chunkCount++] = position;
+
+        position += writeFully(buffer, position);
+        chunkFrames = 0;
+    }
+
+    // Prediction residual of value k in the given frame (frame >= 1), wrapping on overflow
+    private int residual(int frame, int k)
+    {
+        int values = 2 * segments;
+        int previous = quantizedStates[(frame - 1) * values + k];
+        int prediction = frame == 1 ? previous : 2 * previous - quantizedStates[(frame - 2) * values + k];
+        return quantizedStates[frame * values + k] - prediction;
+    }
+
+    // Smallest byte width that holds every residual of the current chunk
+    private int deltaWidth()
+    {
+        int values = 2 * segments;
+        int largest = 0;
+        for (int frame = 1; frame < chunkFrames; frame++)
+        {
+            for (int k = 0; k < values; k++)
+            {
+                int delta = residual(frame, k);
+                largest = Math.max(largest, delta == Integer.MIN_VALUE ? Integer.MAX_VALUE : Math.abs(delta));
+            }
+        }
+        return largest <= Byte.MAX_VALUE ? 1 : largest <= Short.MAX_VALUE ? 2 : largest <= 0x7FFFFF ? 3 : 4;
+    }
+
+    private static void putDelta(ByteBuffer buffer, int delta, int width)
+    {
+        switch (width)
+        {
+            case 1:  buffer.put((byte) delta); break;
+            case 2:  buffer.putShort((short) delta); break;
+            case 3:  buffer.putShort((short) delta).put((byte) (delta >> 16)); break;
+            default: buffer.putInt(delta); break;
+        }
+    }
+
+    private int writeFully(ByteBuffer buffer, long offset) throws IOException
+    {
+        int written = 0;
+        while (buffer.hasRemaining())
+            written += channel.write(buffer, offset + written);
+        return written;
+    }
+
+    // --- Cleanup --- //
+
+    public long getFrameCount()
+    {
+        return frameCount;
+    }
+
+    // Writes the last partial chunk, the chunk index and the final header fields
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            flushChunk();
+
+            ByteBuffer buffer = ByteBuffer.allocate(chunkCount * Long.BYTES).order(ORDER);
+            for (int i = 0; i < chunkCount; i++)
+                buffer.putLong(index[i]);
+            buffer.flip();
+            long indexOffset = position;
+            position += writeFully(buffer, indexOffset);
+
+            ByteBuffer tail = ByteBuffer.allocate(2 * Long.BYTES).order(ORDER);
+            tail.putLong(frameCount).putLong(indexOffset).flip();
+            writeFully(tail, OFFSET_FRAME_COUNT);
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.pendulum;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Lock-free single-producer, single-consumer triple buffer.
+ *
+ * The writer fills its back buffer and publishes it; the reader acquires the
+ * most recently published buffer. Neither side ever waits for the other: the
+ * third buffer always gives the writer somewhere to write while the reader holds
+ * the front. Intermediate publications the reader never acquired are dropped.
+ *
+ * The shared state is one atomic int holding the index of the middle buffer and
+ * a flag telling whether it holds a publication the reader has not seen yet.
+ */
+public class TripleBuffer<T>
+{
+    private static final int INDEX_MASK = 0b011;
+    private static final int FRESH = 0b100;
+
+    private final Object[] buffers = new Object[3];
+    private final AtomicInteger middle = new AtomicInteger(1);
+
+    private int back = 0;     // Owned by the writer
+    private int front = 2;    // Owned by the reader
+
+    public TripleBuffer(Supplier<T> factory)
+    {
+        for (int i = 0; i < buffers.length; i++)
+            buffers[i] = factory.get();
+    }
+
+    // --- Writer side --- //
+
+    // The buffer the writer may fill; valid until the next publish()
+    @SuppressWarnings("unchecked")
+    public T back()
+    {
+        return (T) buffers[back];
+    }
+
+    // Hands the back buffer to the reader and takes the middle one in exchange
+    public void publish()
+    {
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    // --- Reader side --- //
+
+    // True when a publication newer than the current front buffer is waiting
+    public boolean hasFresh()
+    {
+        return (middle.get() & FRESH) != 0;
+    }
+
+    // Returns the most recently published buffer; valid until the next acquire()
+    @SuppressWarnings("unchecked")
+    public T acquire()
+    {
+        if (hasFresh())
+            front = middle.getAndSet(front) & INDEX_MASK;
+        return (T) buffers[front];
+    }
+}
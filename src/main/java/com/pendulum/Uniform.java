@@ -0,0 +1,195 @@
+package com.pendulum;
+
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.joml.Vector2fc;
+import org.joml.Vector3fc;
+import org.joml.Vector4fc;
+import org.lwjgl.opengl.GL20;
+
+/**
+ * Typed handle to one uniform of a linked shader program.
+ *
+ * Handles are obtained from Shader once, after compile(), and keep the
+ * location so setting a value needs no name lookup. Each handle remembers the
+ * last value it sent and skips glUniform calls that would not change anything;
+ * this is valid because uniform values are program state. Setting a uniform
+ * the program does not use (location -1) does nothing.
+ *
+ * As with glUniform, the owning shader must be bound when a value is set.
+ */
+public abstract class Uniform
+{
+    protected final String name;
+    protected final int location;
+    protected boolean initialized = false;   // Whether a value has been sent yet
+
+    Uniform(String name, int location)
+    {
+        this.name = name;
+        this.location = location;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getLocation()
+    {
+        return location;
+    }
+
+    // False if the program has no such active uniform
+    public boolean isActive()
+    {
+        return location != -1;
+    }
+
+    // --- Handle types --- //
+
+    // float
+    public static final class Float1 extends Uniform
+    {
+        private float value;
+
+        Float1(String name, int location)
+        {
+            super(name, location);
+        }
+
+        public void set(float v)
+        {
+            if (location == -1 || (initialized && Float.compare(v, value) == 0))
+                return;
+            GL20.glUniform1f(location, v);
+            value = v;
+            initialized = true;
+        }
+    }
+
+    // int, bool and sampler
+    public static final class Int1 extends Uniform
+    {
+        private int value;
+
+        Int1(String name, int location)
+        {
+            super(name, location);
+        }
+
+        public void set(int v)
+        {
+            if (location == -1 || (initialized && v == value))
+                return;
+            GL20.glUniform1i(location, v);
+            value = v;
+            initialized = true;
+        }
+    }
+
+    // vec2
+    public static final class Float2 extends Uniform
+    {
+        private float x, y;
+
+        Float2(String name, int location)
+        {
+            super(name, location);
+        }
+
+        public void set(float x, float y)
+        {
+            if (location == -1 || (initialized && Float.compare(x, this.x) == 0 && Float.compare(y, this.y) == 0))
+                return;
+            GL20.glUniform2f(location, x, y);
+            this.x = x;
+            this.y = y;
+            initialized = true;
+        }
+
+        public void set(Vector2fc v)
+        {
+            set(v.x(), v.y());
+        }
+    }
+
+    // vec3
+    public static final class Float3 extends Uniform
+    {
+        private float x, y, z;
+
+        Float3(String name, int location)
+        {
+            super(name, location);
+        }
+
+        public void set(float x, float y, float z)
+        {
+            if (location == -1 || (initialized && Float.compare(x, this.x) == 0
+                                   && Float.compare(y, this.y) == 0 && Float.compare(z, this.z) == 0))
+                return;
+            GL20.glUniform3f(location, x, y, z);
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            initialized = true;
+        }
+
+        public void set(Vector3fc v)
+        {
+            set(v.x(), v.y(), v.z());
+        }
+    }
+
+    // vec4
+    public static final class Float4 extends Uniform
+    {
+        private float x, y, z, w;
+
+        Float4(String name, int location)
+        {
+            super(name, location);
+        }
+
+        public void set(float x, float y, float z, float w)
+        {
+            if (location == -1 || (initialized && Float.compare(x, this.x) == 0 && Float.compare(y, this.y) == 0
+                                   && Float.compare(z, this.z) == 0 && Float.compare(w, this.w) == 0))
+                return;
+            GL20.glUniform4f(location, x, y, z, w);
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.w = w;
+            initialized = true;
+        }
+
+        public void set(Vector4fc v)
+        {
+            set(v.x(), v.y(), v.z(), v.w());
+        }
+    }
+
+    // mat4
+    public static final class Matrix4 extends Uniform
+    {
+        private final Matrix4f value = new Matrix4f();
+        private final float[] buffer = new float[16];
+
+        Matrix4(String name, int location)
+        {
+            super(name, location);
+        }
+
+        public void set(Matrix4fc matrix)
+        {
+            if (location == -1 || (initialized && value.equals(matrix)))
+                return;
+            matrix.get(buffer);
+            GL20.glUniformMatrix4fv(location, false, buffer);
+            value.set(matrix);
+            initialized = true;
+        }
+    }
+}
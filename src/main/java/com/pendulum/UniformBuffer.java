@@ -0,0 +1,84 @@
+package com.pendulum;
+
+import static org.lwjgl.opengl.GL15.GL_DYNAMIC_DRAW;
+import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glBufferSubData;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL30.glBindBufferBase;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+
+import java.nio.FloatBuffer;
+
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.lwjgl.BufferUtils;
+
+/**
+ * A uniform buffer object shared by every shader that declares its block.
+ *
+ * The per-frame block is declared in GLSL as
+ *
+ *   layout(std140) uniform Frame {
+ *       mat4 u_projection;
+ *   };
+ *
+ * Shader.compile() binds any block named FRAME_BLOCK to FRAME_BINDING, so
+ * writing the projection here once updates it for all programs. Writes of an
+ * unchanged value are skipped.
+ */
+public class UniformBuffer
+{
+    public static final String FRAME_BLOCK = "Frame";
+    public static final int FRAME_BINDING = 0;
+
+    // std140 offsets in the Frame block
+    public static final int PROJECTION_OFFSET = 0;
+    public static final int FRAME_BYTES = 16 * Float.BYTES;
+
+    private final int bufferId;
+    private final FloatBuffer scratch = BufferUtils.createFloatBuffer(16);
+    private final Matrix4f projection = new Matrix4f();
+    private boolean projectionSet = false;
+
+    // Creates the per-frame block buffer and binds it to FRAME_BINDING
+    public UniformBuffer()
+    {
+        this(FRAME_BYTES, FRAME_BINDING);
+    }
+
+    public UniformBuffer(int bytes, int binding)
+    {
+        bufferId = glGenBuffers();
+        glBindBuffer(GL_UNIFORM_BUFFER, bufferId);
+        glBufferData(GL_UNIFORM_BUFFER, bytes, GL_DYNAMIC_DRAW);
+        glBindBuffer(GL_UNIFORM_BUFFER, 0);
+        glBindBufferBase(GL_UNIFORM_BUFFER, binding, bufferId);
+    }
+
+    // Writes u_projection of the Frame block
+    public void setProjection(Matrix4fc matrix)
+    {
+        if (projectionSet && projection.equals(matrix))
+            return;
+
+        projection.set(matrix);
+        projectionSet = true;
+        setMatrix4f(PROJECTION_OFFSET, matrix);
+    }
+
+    // Writes a mat4 at the given std140 byte offset
+    public void setMatrix4f(int offset, Matrix4fc matrix)
+    {
+        matrix.get(scratch);
+        glBindBuffer(GL_UNIFORM_BUFFER, bufferId);
+        glBufferSubData(GL_UNIFORM_BUFFER, offset, scratch);
+        glBindBuffer(GL_UNIFORM_BUFFER, 0);
+    }
+
+    public void delete()
+    {
+        glDeleteBuffers(bufferId);
+    }
+}
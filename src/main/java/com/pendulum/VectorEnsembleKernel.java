@@ -0,0 +1,260 @@
+package com.pendulum;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD ensemble kernel built on the incubating JDK Vector API.
+ *
+ * Lane k of every vector holds chain (group + k), so one pass of the kernel steps
+ * as many chains as the preferred vector shape has doubles: 4 on AVX2, 8 on
+ * AVX-512. The physics mirrors ChainDynamics with the CHOLESKY solver operation
+ * for operation, including its mass and length tables; only the vectorized
+ * sin/cos may round differently.
+ *
+ * Intermediate values live in small lane-interleaved scratch arrays (entry e,
+ * lane k at e * LANES + k) that stay in L1, rather than in arrays of vectors.
+ *
+ * This class is only compiled with the "simd" Maven profile and only loaded when
+ * the jdk.incubator.vector module is present; see PendulumEnsemble.
+ */
+final class VectorEnsembleKernel implements EnsembleKernel
+{
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    // A pivot must keep at least this fraction of its original diagonal entry
+    private static final double PIVOT_TOLERANCE = 1e-12;
+
+    private final int NUM_PENDULUMS;
+    private final double DELTA_TIME;
+    private final double GRAVITY;
+    private final double[] WEIGHTS;        // Mass-matrix weights of ChainDynamics, packed
+    private final double[] MASS_LENGTHS;   // Gravity weights of ChainDynamics
+
+    // Lane-interleaved scratch
+    private final double[] angles;
+    private final double[] angularVelocities;
+    private final double[] halfStepVelocity;
+    private final double[] acceleration;
+    private final double[] sin;
+    private final double[] cos;
+    private final double[] lower;    // Packed lower triangle, one vector per entry
+    private final double[] rhs;
+    private final double[] factor;   // w_j = L_ij * D_j for the current row
+
+    VectorEnsembleKernel(ChainDynamics dynamics, double deltaTime)
+    {
+        NUM_PENDULUMS = dynamics.getNumPendulums();
+        DELTA_TIME = deltaTime;
+        GRAVITY = dynamics.getGravity();
+        WEIGHTS = dynamics.getWeights();
+        MASS_LENGTHS = dynamics.getMassLengths();
+
+        int n = NUM_PENDULUMS * LANES;
+        angles = new double[n];
+        angularVelocities = new double[n];
+        halfStepVelocity = new double[n];
+        acceleration = new double[n];
+        sin = new double[n];
+        cos = new double[n];
+        lower = new double[SymmetricSolver.packedSize(NUM_PENDULUMS) * LANES];
+        rhs = new double[n];
+        factor = new double[n];
+    }
+
+    @Override
+    public int step(double[] stateAngles, double[] stateVelocities, int size, int first, int last, int steps)
+    {
+        int group = first;
+        for (; group + LANES <= last; group += LANES)
+        {
+            for (int i = 0; i < NUM_PENDULUMS; i++)
+            {
+                DoubleVector.fromArray(SPECIES, stateAngles, i * size + group).intoArray(angles, i * LANES);
+                DoubleVector.fromArray(SPECIES, stateVelocities, i * size + group).intoArray(angularVelocities, i * LANES);
+            }
+
+            for (int s = 0; s < steps; s++)
+                leapfrogStep();
+
+            for (int i = 0; i < NUM_PENDULUMS; i++)
+            {
+                DoubleVector.fromArray(SPECIES, angles, i * LANES).intoArray(stateAngles, i * size + group);
+                DoubleVector.fromArray(SPECIES, angularVelocities, i * LANES).intoArray(stateVelocities, i * size + group);
+            }
+        }
+        return group;
+    }
+
+    // --- PHYSICS SIMULATION --- //
+
+    private void leapfrogStep()
+    {
+        computeAccelerations();
+
+        // Half-step velocity update and full-step angle update
+        for (int i = 0; i < NUM_PENDULUMS; i++)
+        {
+            int o = i * LANES;
+            DoubleVector acc = DoubleVector.fromArray(SPECIES, acceleration, o);
+            DoubleVector half = DoubleVector.fromArray(SPECIES, angularVelocities, o)
+                .add(acc.mul(DELTA_TIME).div(2.0));
+            half.intoArray(halfStepVelocity, o);
+            DoubleVector.fromArray(SPECIES, angles, o).add(half.mul(DELTA_TIME)).intoArray(angles, o);
+        }
+
+        // The remainder has no vector form in this API level; wrap lane by lane
+        for (int k = 0; k < angles.length; k++)
+            angles[k] = ChainDynamics.wrapAngle(angles[k]);
+
+        // Recalculate acceleration
+        computeAccelerations();
+
+        // Complete velocity step
+        for (int i = 0; i < NUM_PENDULUMS; i++)
+        {
+            int o = i * LANES;
+            DoubleVector acc = DoubleVector.fromArray(SPECIES, acceleration, o);
+            DoubleVector.fromArray(SPECIES, halfStepVelocity, o)
+                .add(acc.mul(DELTA_TIME).div(2.0))
+                .intoArray(angularVelocities, o);
+        }
+    }
+
+    private void computeAccelerations()
+    {
+        final int N = NUM_PENDULUMS;
+
+        for (int i = 0; i < N; i++)
+        {
+            DoubleVector theta = DoubleVector.fromArray(SPECIES, angles, i * LANES);
+            theta.lanewise(VectorOperators.SIN).intoArray(sin, i * LANES);
+            theta.lanewise(VectorOperators.COS).intoArray(cos, i * LANES);
+        }
+
+        buildSystem();
+        factorize();
+        solve();
+    }
+
+    // Packed lower mass matrix and right-hand side, as in ChainDynamics
+    private void buildSystem()
+    {
+        final int N = NUM_PENDULUMS;
+
+        int index = 0;
+        for (int i = 0; i < N; i++)
+        {
+            DoubleVector si = DoubleVector.fromArray(SPECIES, sin, i * LANES);
+            DoubleVector ci = DoubleVector.fromArray(SPECIES, cos, i * LANES);
+            for (int j = 0; j < i; j++)
+            {
+                DoubleVector sj = DoubleVector.fromArray(SPECIES, sin, j * LANES);
+                DoubleVector cj = DoubleVector.fromArray(SPECIES, cos, j * LANES);
+                ci.mul(cj).add(si.mul(sj)).mul(WEIGHTS[index]).intoArray(lower, index * LANES);
+                index++;
+            }
+            DoubleVector.broadcast(SPECIES, WEIGHTS[index]).intoArray(lower, index * LANES);
+            index++;
+
+            si.mul(-GRAVITY * MASS_LENGTHS[i]).intoArray(rhs, i * LANES);
+        }
+
+        index = 0;
+        for (int i = 0; i < N; i++, index++)
+        {
+            DoubleVector si = DoubleVector.fromArray(SPECIES, sin, i * LANES);
+            DoubleVector ci = DoubleVector.fromArray(SPECIES, cos, i * LANES);
+            DoubleVector vi = DoubleVector.fromArray(SPECIES, angularVelocities, i * LANES);
+            DoubleVector vi2 = vi.mul(vi);
+            DoubleVector bi = DoubleVector.fromArray(SPECIES, rhs, i * LANES);
+            for (int j = 0; j < i; j++, index++)
+            {
+                DoubleVector sj = DoubleVector.fromArray(SPECIES, sin, j * LANES);
+                DoubleVector cj = DoubleVector.fromArray(SPECIES, cos, j * LANES);
+                DoubleVector vj = DoubleVector.fromArray(SPECIES, angularVelocities, j * LANES);
+                DoubleVector term = si.mul(cj).sub(ci.mul(sj)).mul(WEIGHTS[index]);
+                bi = bi.sub(term.mul(vj.mul(vj)));
+                DoubleVector.fromArray(SPECIES, rhs, j * LANES).add(term.mul(vi2)).intoArray(rhs, j * LANES);
+            }
+            bi.intoArray(rhs, i * LANES);
+        }
+    }
+
+    // Lane-parallel version of SymmetricSolver.factorizeUnblocked
+    private void factorize()
+    {
+        final int N = NUM_PENDULUMS;
+        for (int i = 0; i < N; i++)
+        {
+            int ri = SymmetricSolver.index(i, 0);
+            for (int j = 0; j < i; j++)
+            {
+                int rj = SymmetricSolver.index(j, 0);
+                DoubleVector sum = DoubleVector.fromArray(SPECIES, lower, (ri + j) * LANES);
+                for (int k = 0; k < j; k++)
+                {
+                    DoubleVector wk = DoubleVector.fromArray(SPECIES, factor, k * LANES);
+                    sum = sum.sub(wk.mul(DoubleVector.fromArray(SPECIES, lower, (rj + k) * LANES)));
+                }
+                sum.intoArray(factor, j * LANES);
+            }
+
+            DoubleVector original = DoubleVector.fromArray(SPECIES, lower, (ri + i) * LANES);
+            DoubleVector diagonal = original;
+            for (int j = 0; j < i; j++)
+            {
+                DoubleVector wj = DoubleVector.fromArray(SPECIES, factor, j * LANES);
+                DoubleVector dj = DoubleVector.fromArray(SPECIES, lower, SymmetricSolver.index(j, j) * LANES);
+                DoubleVector l = wj.div(dj);
+                l.intoArray(lower, (ri + j) * LANES);
+                diagonal = diagonal.sub(wj.mul(l));
+            }
+
+            // Written as "not greater than" so NaN pivots fail as well
+            if (!diagonal.compare(VectorOperators.GT, original.abs().mul(PIVOT_TOLERANCE)).allTrue())
+                throw new IllegalStateException("Matrix is not positive definite at row " + i + " in at least one lane");
+
+            diagonal.intoArray(lower, (ri + i) * LANES);
+        }
+    }
+
+    // Lane-parallel version of SymmetricSolver.solve, writing into acceleration
+    private void solve()
+    {
+        final int N = NUM_PENDULUMS;
+        double[] x = acceleration;
+        System.arraycopy(rhs, 0, x, 0, N * LANES);
+
+        for (int i = 0; i < N; i++)
+        {
+            int ri = SymmetricSolver.index(i, 0);
+            DoubleVector sum = DoubleVector.fromArray(SPECIES, x, i * LANES);
+            for (int k = 0; k < i; k++)
+            {
+                DoubleVector l = DoubleVector.fromArray(SPECIES, lower, (ri + k) * LANES);
+                sum = sum.sub(l.mul(DoubleVector.fromArray(SPECIES, x, k * LANES)));
+            }
+            sum.intoArray(x, i * LANES);
+        }
+
+        for (int i = 0; i < N; i++)
+        {
+            DoubleVector d = DoubleVector.fromArray(SPECIES, lower, SymmetricSolver.index(i, i) * LANES);
+            DoubleVector.fromArray(SPECIES, x, i * LANES).div(d).intoArray(x, i * LANES);
+        }
+
+        for (int i = N - 1; i > 0; i--)
+        {
+            int ri = SymmetricSolver.index(i, 0);
+            DoubleVector xi = DoubleVector.fromArray(SPECIES, x, i * LANES);
+            for (int k = 0; k < i; k++)
+            {
+                DoubleVector l = DoubleVector.fromArray(SPECIES, lower, (ri + k) * LANES);
+                DoubleVector.fromArray(SPECIES, x, k * LANES).sub(l.mul(xi)).intoArray(x, k * LANES);
+            }
+        }
+    }
+}
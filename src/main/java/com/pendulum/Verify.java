@@ -0,0 +1,464 @@
+package com.pendulum;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Runnable checks of the simulation code, without a window or OpenGL context.
+ *
+ * Each check prints one line with the error it measured and the limit it has to
+ * stay within, and the exit status is 1 if any check fails. Covered are:
+ *   - the GAUSSIAN, CHOLESKY and ARTICULATED solvers agree on uniform and
+ *     non-uniform chains, including one long enough for the blocked LDL^T
+ *     factorization, and unit masses and lengths give the bits of a unit chain
+ *   - every implicit stage of the default YOSHIDA4 configuration converges,
+ *     and an adaptive run with its velocities reversed returns to its start
+ *   - checkpoints of a pendulum (fixed and adaptive steps) and of an ensemble
+ *     survive capture, write, read and restore, the restored runs continue bit
+ *     for bit, and damaged files are rejected
+ *   - the tangent accelerations and the linearised leapfrog step of
+ *     LyapunovEstimator match central differences, and its state follows a
+ *     LEAPFROG Pendulum bit for bit
+ *
+ * Example:
+ *   java -cp pendulum.jar com.pendulum.Verify
+ */
+public class Verify
+{
+    private static final double[] MASSES = { 1.5, 0.3, 2.0, 0.7, 1.1 };
+    private static final double[] LENGTHS = { 0.8, 1.7, 0.5, 1.2, 0.9 };
+
+    private static final double SOLVER_LIMIT = 1e-10;     // Relative difference between solvers
+    private static final double TANGENT_LIMIT = 1e-7;     // Relative error against central differences
+    private static final double REVERSAL_LIMIT = 1e-9;    // Angle error after an adaptive run and its reverse
+    private static final double DIFFERENCE_STEP = 1e-6;
+
+    private int checks = 0;
+    private int failures = 0;
+
+    public static void main(String[] args)
+    {
+        if (args.length > 0)
+        {
+            System.err.println("Usage: com.pendulum.Verify");
+            System.exit(2);
+        }
+
+        Verify verify = new Verify();
+        try
+        {
+            verify.checkSolvers();
+            verify.checkIntegrators();
+            verify.checkCheckpoints();
+            verify.checkTangents();
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+
+        System.out.printf(Locale.ROOT, "%d of %d checks passed%n", verify.checks - verify.failures, verify.checks);
+        if (verify.failures > 0)
+            System.exit(1);
+    }
+
+    // --- Solvers --- //
+
+    private void checkSolvers()
+    {
+        checkSolverAgreement("uniform, 5 segments", new ChainDynamics[] {
+            new ChainDynamics(5, Pendulum.Solver.GAUSSIAN),
+            new ChainDynamics(5, Pendulum.Solver.CHOLESKY),
+            new ChainDynamics(5, Pendulum.Solver.ARTICULATED) });
+        checkSolverAgreement("uniform, 20 segments", new ChainDynamics[] {
+            new ChainDynamics(20, Pendulum.Solver.GAUSSIAN),
+            new ChainDynamics(20, Pendulum.Solver.CHOLESKY),
+            new ChainDynamics(20, Pendulum.Solver.ARTICULATED) });
+        // Past SymmetricSolver's blocking threshold, so CHOLESKY takes the blocked path
+        checkSolverAgreement("uniform, 150 segments", new ChainDynamics[] {
+            new ChainDynamics(150, Pendulum.Solver.GAUSSIAN),
+            new ChainDynamics(150, Pendulum.Solver.CHOLESKY),
+            new ChainDynamics(150, Pendulum.Solver.ARTICULATED) });
+        checkSolverAgreement("non-uniform, 5 segments", new ChainDynamics[] {
+            new ChainDynamics(MASSES, LENGTHS, Pendulum.Solver.GAUSSIAN),
+            new ChainDynamics(MASSES, LENGTHS, Pendulum.Solver.CHOLESKY),
+            new ChainDynamics(MASSES, LENGTHS, Pendulum.Solver.ARTICULATED) });
+
+        // Explicit unit masses and lengths must not change a single bit
+        double[] ones = new double[7];
+        Arrays.fill(ones, 1);
+        for (Pendulum.Solver solver : Pendulum.Solver.values())
+        {
+            Pendulum unit = new Pendulum(7, 0.0025, Math.PI / 2, solver, Integrator.YOSHIDA4);
+            Pendulum explicit = new Pendulum(ones, ones, 0.0025, Math.PI / 2, solver, Integrator.YOSHIDA4);
+            for (int s = 0; s < 1000; s++)
+            {
+                unit.update();
+                explicit.update();
+            }
+            checkIdentical("unit masses and lengths, " + name(solver), unit, explicit);
+        }
+    }
+
+    // Accelerations at random states, relative to the largest of them
+    private void checkSolverAgreement(String label, ChainDynamics[] dynamics)
+    {
+        final int N = dynamics[0].getNumPendulums();
+        SolverWorkspace[] workspaces = new SolverWorkspace[dynamics.length];
+        for (int d = 0; d < dynamics.length; d++)
+            workspaces[d] = dynamics[d].createWorkspace();
+
+        Random random = new Random(N);
+        double[] angles = new double[N];
+        double[] velocities = new double[N];
+        double error = 0;
+        for (int trial = 0; trial < 100; trial++)
+        {
+            for (int i = 0; i < N; i++)
+            {
+                angles[i] = (random.nextDouble() * 2 - 1) * Math.PI;
+                velocities[i] = random.nextGaussian() * 3;
+            }
+
+            double[] reference = dynamics[0].computeAccelerations(angles, velocities, workspaces[0]).clone();
+            double scale = 1;
+            for (double a : reference)
+                scale = Math.max(scale, Math.abs(a));
+
+            for (int d = 1; d < dynamics.length; d++)
+            {
+                double[] acc = dynamics[d].computeAccelerations(angles, velocities, workspaces[d]);
+                for (int i = 0; i < N; i++)
+                    error = Math.max(error, Math.abs(acc[i] - reference[i]) / scale);
+            }
+        }
+        checkError("solvers agree, " + label, error, SOLVER_LIMIT);
+    }
+
+    // --- Integrators --- //
+
+    private void checkIntegrators()
+    {
+        // The configuration Main and Headless start with must not warn about itself
+        Pendulum pendulum = new Pendulum(20, 0.0025, Math.PI / 2, Pendulum.Solver.CHOLESKY, Integrator.YOSHIDA4);
+        for (int s = 0; s < 4000; s++)
+            pendulum.update();
+        check("all stages converge, default configuration", pendulum.getUnconvergedStages() == 0);
+
+        // Adaptive steps picked from both ends of each interval: run forward, reverse, run back
+        final int N = MASSES.length;
+        Pendulum adaptive = new Pendulum(MASSES, LENGTHS, 0.01, 2.0, Pendulum.Solver.CHOLESKY, Integrator.YOSHIDA4);
+        adaptive.setEnergyTolerance(1e-6);
+        double[] start = new double[N];
+        double[] velocities = new double[N];
+        adaptive.getAngles(start);
+        for (int s = 0; s < 100; s++)
+            adaptive.update();
+        adaptive.getAngularVelocities(velocities);
+        for (int i = 0; i < N; i++)
+            velocities[i] = -velocities[i];
+        adaptive.setAngularVelocities(velocities);
+        for (int s = 0; s < 100; s++)
+            adaptive.update();
+
+        double[] end = new double[N];
+        adaptive.getAngles(end);
+        double error = 0;
+        for (int i = 0; i < N; i++)
+            error = Math.max(error, Math.abs(ChainDynamics.wrapAngle(end[i] - start[i])));
+        checkError("adaptive run retraces itself", error, REVERSAL_LIMIT);
+    }
+
+    // --- Checkpoints --- //
+
+    private void checkCheckpoints() throws IOException
+    {
+        Path file = Files.createTempFile("verify", ".ckpt");
+        try
+        {
+            for (boolean adaptive : new boolean[] { false, true })
+            {
+                Pendulum pendulum = new Pendulum(MASSES, LENGTHS, 0.01, 2.0, Pendulum.Solver.CHOLESKY,
+                                                 Integrator.YOSHIDA4);
+                if (adaptive)
+                    pendulum.setEnergyTolerance(1e-7);
+                for (int s = 0; s < 300; s++)
+                    pendulum.update();
+
+                Checkpoint.capture(pendulum, 3.0, 300, null).write(file);
+                Checkpoint read = Checkpoint.read(file);
+                Pendulum restored = read.createPendulum();
+                String label = adaptive ? "adaptive pendulum" : "pendulum";
+                check("checkpoint keeps time and steps, " + label,
+                      read.getSimulationTime() == 3.0 && read.getSteps() == 300);
+
+                for (int s = 0; s < 1000; s++)
+                {
+                    pendulum.update();
+                    restored.update();
+                }
+                checkIdentical("restored run continues, " + label, pendulum, restored);
+                check("restored substep counts match, " + label,
+                      pendulum.getAcceptedSteps() == restored.getAcceptedSteps()
+                      && pendulum.getRejectedSteps() == restored.getRejectedSteps());
+            }
+
+            checkEnsembleCheckpoint(file);
+
+            // Flip one payload byte: the checksum has to catch it
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))
+            {
+                ByteBuffer b = ByteBuffer.allocate(1);
+                long offset = channel.size() / 2;
+                channel.read(b, offset);
+                b.put(0, (byte) (b.get(0) ^ 0x10));
+                b.rewind();
+                channel.write(b, offset);
+            }
+            boolean rejected = false;
+            try
+            {
+                Checkpoint.read(file);
+            }
+            catch (IOException e)
+            {
+                rejected = true;
+            }
+            check("damaged checkpoint is rejected", rejected);
+        }
+        finally
+        {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private void checkEnsembleCheckpoint(Path file) throws IOException
+    {
+        final int size = 64;
+        final int N = 3;
+        PendulumEnsemble ensemble = new PendulumEnsemble(size, N, 0.0025, 2.0, Pendulum.Solver.ARTICULATED,
+                                                         Integrator.LEAPFROG, 2);
+        PendulumEnsemble restored = null;
+        try
+        {
+            Random random = new Random(3);
+            for (int c = 0; c < size; c++)
+                ensemble.setAngle(c, N - 1, random.nextDouble() * 6 - 3);
+            ensemble.step(100);
+
+            Checkpoint.capture(ensemble, 0.25, 100, null).write(file);
+            restored = Checkpoint.read(file).createEnsemble(2);
+            ensemble.step(1000);
+            restored.step(1000);
+
+            double[] angles = new double[N], velocities = new double[N];
+            double[] restoredAngles = new double[N], restoredVelocities = new double[N];
+            boolean identical = true;
+            for (int c = 0; c < size; c++)
+            {
+                ensemble.gather(c, angles, velocities);
+                restored.gather(c, restoredAngles, restoredVelocities);
+                identical &= Arrays.equals(angles, restoredAngles) && Arrays.equals(velocities, restoredVelocities);
+            }
+            check("restored run continues, ensemble", identical);
+        }
+        finally
+        {
+            ensemble.shutdown();
+            if (restored != null)
+                restored.shutdown();
+        }
+    }
+
+    // --- Tangents --- //
+
+    private void checkTangents()
+    {
+        checkTangentAccelerations("non-uniform, 5 segments",
+                                  new ChainDynamics(MASSES, LENGTHS, Pendulum.Solver.CHOLESKY));
+        checkTangentAccelerations("uniform, 20 segments", new ChainDynamics(20, Pendulum.Solver.CHOLESKY));
+        checkTangentStep();
+        checkEstimatorState();
+    }
+
+    // tangentAccelerations against central differences of computeAccelerations
+    private void checkTangentAccelerations(String label, ChainDynamics dynamics)
+    {
+        final int N = dynamics.getNumPendulums();
+        final double h = DIFFERENCE_STEP;
+        SolverWorkspace workspace = dynamics.createWorkspace();
+
+        Random random = new Random(N);
+        double[] angles = new double[N], velocities = new double[N];
+        double[] plusAngles = new double[N], plusVelocities = new double[N];
+        double[] minusAngles = new double[N], minusVelocities = new double[N];
+        double[][] tangents = new double[2 * N][2 * N];
+        double[][] out = new double[2 * N][N];
+        double error = 0;
+        for (int trial = 0; trial < 10; trial++)
+        {
+            for (int i = 0; i < N; i++)
+            {
+                angles[i] = (random.nextDouble() * 2 - 1) * 3;
+                velocities[i] = random.nextGaussian() * 3;
+            }
+
+            // One tangent per coordinate direction
+            for (int k = 0; k < 2 * N; k++)
+            {
+                Arrays.fill(tangents[k], 0);
+                tangents[k][k] = 1;
+            }
+            double[] acc = dynamics.computeAccelerations(angles, velocities, workspace);
+            double scale = 1;
+            for (double a : acc)
+                scale = Math.max(scale, Math.abs(a));
+            dynamics.tangentAccelerations(velocities, tangents, 2 * N, out, workspace);
+
+            for (int k = 0; k < 2 * N; k++)
+            {
+                for (int i = 0; i < N; i++)
+                {
+                    plusAngles[i] = angles[i] + h * tangents[k][i];
+                    plusVelocities[i] = velocities[i] + h * tangents[k][N + i];
+                    minusAngles[i] = angles[i] - h * tangents[k][i];
+                    minusVelocities[i] = velocities[i] - h * tangents[k][N + i];
+                }
+                double[] plus = dynamics.computeAccelerations(plusAngles, plusVelocities, workspace).clone();
+                double[] minus = dynamics.computeAccelerations(minusAngles, minusVelocities, workspace);
+                for (int i = 0; i < N; i++)
+                    error = Math.max(error, Math.abs((plus[i] - minus[i]) / (2 * h) - out[k][i]) / scale);
+            }
+        }
+        checkError("tangent accelerations, " + label, error, TANGENT_LIMIT);
+    }
+
+    // One linearised leapfrog step of LyapunovEstimator against two perturbed steps
+    private void checkTangentStep()
+    {
+        final int N = MASSES.length;
+        final double h = DIFFERENCE_STEP;
+        final double deltaTime = 0.0025;
+        double[] angles = { 2.0, 2.5, 1.0, 3.0, -1.0 };
+        double[] velocities = { 0.1, -0.3, 0.2, 0, 0.5 };
+
+        // Without a renormalization the tangent is just carried through the step
+        LyapunovEstimator estimator = new LyapunovEstimator(MASSES, LENGTHS, deltaTime, 0, 1, Integer.MAX_VALUE);
+        estimator.setAngles(angles);
+        estimator.setAngularVelocities(velocities);
+        double[] direction = new double[2 * N];
+        double[] tangent = new double[2 * N];
+        estimator.getTangent(0, direction);
+        estimator.step(1);
+        estimator.getTangent(0, tangent);
+
+        double[][] ends = new double[2][2 * N];
+        double[] perturbed = new double[N];
+        double[] result = new double[N];
+        for (int side = 0; side < 2; side++)
+        {
+            double sign = side == 0 ? 1 : -1;
+            LyapunovEstimator shifted = new LyapunovEstimator(MASSES, LENGTHS, deltaTime, 0, 1, Integer.MAX_VALUE);
+            for (int i = 0; i < N; i++)
+                perturbed[i] = angles[i] + sign * h * direction[i];
+            shifted.setAngles(perturbed);
+            for (int i = 0; i < N; i++)
+                perturbed[i] = velocities[i] + sign * h * direction[N + i];
+            shifted.setAngularVelocities(perturbed);
+            shifted.step(1);
+
+            shifted.getAngles(result);
+            System.arraycopy(result, 0, ends[side], 0, N);
+            shifted.getAngularVelocities(result);
+            System.arraycopy(result, 0, ends[side], N, N);
+        }
+
+        double error = 0, scale = 1;
+        for (double t : tangent)
+            scale = Math.max(scale, Math.abs(t));
+        for (int i = 0; i < 2 * N; i++)
+        {
+            // Angles are wrapped, so difference them along the shorter arc
+            double difference = ends[0][i] - ends[1][i];
+            if (i < N)
+                difference = Math.IEEEremainder(difference, 2 * Math.PI);
+            error = Math.max(error, Math.abs(difference / (2 * h) - tangent[i]) / scale);
+        }
+        checkError("linearised leapfrog step", error, TANGENT_LIMIT);
+    }
+
+    // The estimator steps the chain exactly as a LEAPFROG Pendulum does
+    private void checkEstimatorState()
+    {
+        final int N = MASSES.length;
+        double[] angles = { 2.0, 2.5, 1.0, 3.0, -1.0 };
+        double[] velocities = { 0.1, -0.3, 0.2, 0, 0.5 };
+
+        Pendulum pendulum = new Pendulum(MASSES, LENGTHS, 0.0025, 0, Pendulum.Solver.CHOLESKY, Integrator.LEAPFROG);
+        pendulum.setAngles(angles);
+        pendulum.setAngularVelocities(velocities);
+        LyapunovEstimator estimator = new LyapunovEstimator(MASSES, LENGTHS, 0.0025, 0, 2 * N, 10);
+        estimator.setAngles(angles);
+        estimator.setAngularVelocities(velocities);
+        for (int s = 0; s < 1000; s++)
+        {
+            pendulum.update();
+            estimator.step(1);
+        }
+
+        double[] expected = new double[N], actual = new double[N];
+        pendulum.getAngles(expected);
+        estimator.getAngles(actual);
+        boolean identical = Arrays.equals(expected, actual);
+        pendulum.getAngularVelocities(expected);
+        estimator.getAngularVelocities(actual);
+        identical &= Arrays.equals(expected, actual);
+        check("estimator follows the leapfrog pendulum", identical);
+    }
+
+    // --- Reporting --- //
+
+    private void checkIdentical(String label, Pendulum expected, Pendulum actual)
+    {
+        final int N = expected.getNumPendulums();
+        double[] a = new double[N], b = new double[N];
+        expected.getAngles(a);
+        actual.getAngles(b);
+        boolean identical = Arrays.equals(a, b);
+        expected.getAngularVelocities(a);
+        actual.getAngularVelocities(b);
+        identical &= Arrays.equals(a, b);
+        check(label, identical);
+    }
+
+    private void checkError(String label, double error, double limit)
+    {
+        record(error <= limit, String.format(Locale.ROOT, "%-48s %.2e (limit %.0e)", label, error, limit));
+    }
+
+    private void check(String label, boolean passed)
+    {
+        record(passed, label);
+    }
+
+    private void record(boolean passed, String line)
+    {
+        checks++;
+        if (!passed)
+            failures++;
+        System.out.println((passed ? "ok    " : "FAIL  ") + line);
+    }
+
+    private static String name(Pendulum.Solver solver)
+    {
+        return solver.name().toLowerCase(Locale.ROOT);
+    }
+}
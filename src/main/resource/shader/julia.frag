@@ -3,8 +3,9 @@ out vec4 FragColor;
 
 uniform vec2 u_resolution;
 uniform vec2 u_c;
+uniform int u_max_iter;     // Iteration cap, at most max_iter
 
-const int max_iter = 300;
+const int max_iter = 300;   // Full quality, also the colour normalisation
 
 void main() {
     vec2 uv = (gl_FragCoord.xy / u_resolution) * 2.0 - 1.0;
@@ -13,7 +14,7 @@ void main() {
     // Basic Julia set
     vec2 z = uv;
     int i;
-    for (i = 0; i < max_iter; i++) {
+    for (i = 0; i < u_max_iter; i++) {
         float x = (z.x * z.x - z.y * z.y) + u_c.x;
         float y = (2.0 * z.x * z.y) + u_c.y;
         z = vec2(x, y);
@@ -22,7 +23,7 @@ void main() {
 
     // Smooth iteration count using log
     float m = dot(z, z);
-    float logIter = i < max_iter ? float(i) - log2(log2(m)) + 4.0 : float(max_iter);
+    float logIter = i < u_max_iter ? float(i) - log2(log2(m)) + 4.0 : float(max_iter);
     float norm = clamp(logIter / float(max_iter), 0.0, 1.0);
 
     // Logarithmic gradient
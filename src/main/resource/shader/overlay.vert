@@ -0,0 +1,14 @@
+#version 330 core
+
+// Glyph quad corners from stb_easy_font, in pixels from the top-left corner
+layout(location = 0) in vec2 aPos;
+
+uniform vec2 u_screen;   // Window size in pixels
+uniform vec2 u_offset;   // Pixel offset, for the drop shadow
+uniform float u_scale;   // Text magnification
+
+void main() {
+    vec2 pixel = aPos * u_scale + u_offset;
+    vec2 ndc = pixel / u_screen * 2.0 - 1.0;
+    gl_Position = vec4(ndc.x, -ndc.y, 0.0, 1.0);
+}
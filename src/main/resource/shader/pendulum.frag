@@ -1,10 +1,12 @@
 #version 330 core
 
+in float v_fade;
+
 out vec4 FragColor;
 
 uniform vec3 u_color;
 uniform float u_alpha;
 
 void main() {
-    FragColor = vec4(u_color, u_alpha);
+    FragColor = vec4(u_color, u_alpha * v_fade);
 }
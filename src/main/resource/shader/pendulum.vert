@@ -2,8 +2,25 @@
 
 layout(location = 0) in vec2 aPos;
 
-uniform mat4 u_projection;
+// Per-frame data shared by every program, see UniformBuffer
+layout(std140) uniform Frame {
+    mat4 u_projection;
+};
+
+// Trail ring buffers: slot of the newest sample and ring length, 0 when not drawing a trail
+uniform int u_trail_head;
+uniform int u_trail_length;
+
+out float v_fade;
 
 void main() {
     gl_Position = u_projection * vec4(aPos, 0.0, 1.0);
+
+    if (u_trail_length > 0) {
+        // The ring slot is the vertex index, so a sample's age needs no extra attribute
+        int age = (u_trail_head - gl_VertexID + 2 * u_trail_length) % u_trail_length;
+        v_fade = float(u_trail_length - 1 - age) / float(u_trail_length);
+    } else {
+        v_fade = 1.0;
+    }
 }
@@ -0,0 +1,12 @@
+#version 330 core
+
+in vec3 v_color;
+in float v_fade;
+
+out vec4 FragColor;
+
+uniform float u_alpha;
+
+void main() {
+    FragColor = vec4(v_color, u_alpha * v_fade);
+}
@@ -0,0 +1,32 @@
+#version 330 core
+
+// Joint positions, u_joints texels per ring slot: history[slot * u_joints + joint]
+uniform samplerBuffer u_history;
+
+// Per-frame data shared by every program, see UniformBuffer
+layout(std140) uniform Frame {
+    mat4 u_projection;
+};
+uniform int u_joints;   // Joints per slot, one instance each
+uniform int u_head;     // Slot of the newest sample
+uniform int u_count;    // Samples in the ring, at most u_length
+uniform int u_length;   // Ring length
+
+out vec3 v_color;
+out float v_fade;
+
+vec3 hsv2rgb(vec3 c) {
+    vec3 p = abs(fract(c.xxx + vec3(0.0, 2.0 / 3.0, 1.0 / 3.0)) * 6.0 - 3.0);
+    return c.z * mix(vec3(1.0), clamp(p - 1.0, 0.0, 1.0), c.y);
+}
+
+void main() {
+    // Vertex i of the strip is the i-th oldest sample, so the ring never needs a second draw
+    int age = u_count - 1 - gl_VertexID;
+    int slot = (u_head - age + u_length) % u_length;
+    vec2 pos = texelFetch(u_history, slot * u_joints + gl_InstanceID).xy;
+
+    gl_Position = u_projection * vec4(pos, 0.0, 1.0);
+    v_color = hsv2rgb(vec3(float(gl_InstanceID) / float(u_joints), 0.6, 1.0));
+    v_fade = float(u_length - 1 - age) / float(u_length);
+}